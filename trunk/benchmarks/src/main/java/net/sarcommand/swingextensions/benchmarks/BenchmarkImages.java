@@ -0,0 +1,85 @@
+package net.sarcommand.swingextensions.benchmarks;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Creates the test images used by the benchmarks. All images are rendered headlessly and contain a reproducible mix of
+ * noise, opaque shapes and translucent areas, so the effects actually have something to work on.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public class BenchmarkImages {
+    static {
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    /**
+     * Maps the image type names used as benchmark parameters to the BufferedImage constants.
+     *
+     * @param typeName name of the image type, e.g. "TYPE_INT_ARGB".
+     * @return the corresponding BufferedImage.TYPE_XXX constant.
+     */
+    public static int getImageType(final String typeName) {
+        try {
+            return BufferedImage.class.getField(typeName).getInt(null);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Unknown image type " + typeName, e);
+        }
+    }
+
+    /**
+     * Creates a test image of the given size and type.
+     *
+     * @param size      width and height of the image.
+     * @param imageType the image type.
+     * @return a new test image.
+     */
+    public static BufferedImage createImage(final int size, final int imageType) {
+        final BufferedImage image = new BufferedImage(size, size, imageType);
+        final Random random = new Random(size * 31L + imageType);
+
+        final Graphics2D g2 = image.createGraphics();
+        for (int i = 0; i < 64; i++) {
+            g2.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256),
+                    64 + random.nextInt(192)));
+            final int x = random.nextInt(size);
+            final int y = random.nextInt(size);
+            final int extent = 1 + random.nextInt(Math.max(1, size / 3));
+            if (i % 2 == 0)
+                g2.fillOval(x, y, extent, extent);
+            else
+                g2.fillRect(x, y, extent, extent / 2 + 1);
+        }
+        g2.dispose();
+
+        for (int i = 0; i < size * 4; i++)
+            image.setRGB(random.nextInt(size), random.nextInt(size), random.nextInt());
+        return image;
+    }
+
+    /**
+     * Creates a copy of the given image, preserving its type.
+     *
+     * @param image the image to copy.
+     * @return a copy of the image.
+     */
+    public static BufferedImage copy(final BufferedImage image) {
+        final BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        final Graphics2D g2 = copy.createGraphics();
+        g2.setComposite(AlphaComposite.Src);
+        g2.drawImage(image, 0, 0, null);
+        g2.dispose();
+        return copy;
+    }
+}
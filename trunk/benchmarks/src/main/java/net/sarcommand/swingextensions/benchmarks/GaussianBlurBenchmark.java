@@ -0,0 +1,62 @@
+package net.sarcommand.swingextensions.benchmarks;
+
+import net.sarcommand.swingextensions.image.ImageUtilities;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks ImageUtilities.applyGaussianBlur for filter radii from 2 to 64 pixels, both in place and into a new,
+ * padded image, on square images from 256 to 4096 pixels and several image types. The blur mode parameter allows
+ * comparing the exact kernel with the box approximation.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true"})
+public class GaussianBlurBenchmark {
+    @Param({"256", "1024", "4096"})
+    public int size;
+
+    @Param({"2", "8", "16", "32", "64"})
+    public int radius;
+
+    @Param({"TYPE_INT_ARGB", "TYPE_INT_ARGB_PRE", "TYPE_3BYTE_BGR"})
+    public String imageType;
+
+    @Param({"AUTOMATIC", "EXACT", "BOX_APPROXIMATION"})
+    public String mode;
+
+    protected BufferedImage _image;
+    protected ImageUtilities.BlurMode _mode;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        _image = BenchmarkImages.createImage(size, BenchmarkImages.getImageType(imageType));
+        _mode = ImageUtilities.BlurMode.valueOf(mode);
+    }
+
+    @Benchmark
+    public BufferedImage inPlace() {
+        return ImageUtilities.applyGaussianBlur(_image, radius, 1f, true, _mode);
+    }
+
+    @Benchmark
+    public BufferedImage padded() {
+        return ImageUtilities.applyGaussianBlur(_image, radius, 1f, false, _mode);
+    }
+}
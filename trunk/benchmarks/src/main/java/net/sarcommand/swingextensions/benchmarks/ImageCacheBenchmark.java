@@ -0,0 +1,105 @@
+package net.sarcommand.swingextensions.benchmarks;
+
+import net.sarcommand.swingextensions.applicationsupport.ImageCache;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks ImageCache.loadImage. The cold benchmark clears the cache before every invocation, so each call decodes
+ * the image from disk. The warm benchmarks measure cached lookups, once from a single thread and once from several
+ * threads at the same time to expose contention on the cache.
+ * <p/>
+ * The test images are written as PNG files to a temporary directory, which is added to the ImageCache's search path.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true"})
+public class ImageCacheBenchmark {
+    @Param({"256", "1024", "4096"})
+    public int size;
+
+    protected File _directory;
+    protected String _imageName;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        _directory = File.createTempFile("imageCacheBenchmark", "");
+        if (!_directory.delete() || !_directory.mkdir())
+            throw new IOException("Could not create temporary directory " + _directory);
+
+        _imageName = "benchmark_" + size + ".png";
+        final BufferedImage image = BenchmarkImages.createImage(size, BufferedImage.TYPE_INT_ARGB);
+        ImageIO.write(image, "png", new File(_directory, _imageName));
+
+        ImageCache.addAdditionalSearchPath(_directory.toURI());
+        ImageCache.loadImage(_imageName);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ImageCache.removeAdditionalSearchPath(_directory.toURI());
+        ImageCache.clearCache();
+        new File(_directory, _imageName).delete();
+        _directory.delete();
+    }
+
+    /**
+     * State used by the cold benchmark to clear the cache before each invocation.
+     */
+    @State(Scope.Thread)
+    public static class ColdCache {
+        @Setup(Level.Invocation)
+        public void clear() {
+            ImageCache.clearCache();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Threads(1)
+    public BufferedImage coldLoad(final ColdCache coldCache) {
+        return ImageCache.loadImage(_imageName);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(1)
+    public BufferedImage warmLookup1Thread() {
+        return ImageCache.loadImage(_imageName);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(4)
+    public BufferedImage warmLookup4Threads() {
+        return ImageCache.loadImage(_imageName);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(Threads.MAX)
+    public BufferedImage warmLookupMaxThreads() {
+        return ImageCache.loadImage(_imageName);
+    }
+}
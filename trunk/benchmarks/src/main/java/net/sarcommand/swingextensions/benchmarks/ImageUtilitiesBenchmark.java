@@ -0,0 +1,64 @@
+package net.sarcommand.swingextensions.benchmarks;
+
+import net.sarcommand.swingextensions.image.ImageUtilities;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the effects in ImageUtilities which don't depend on a filter radius: the simple 3x3 box blur, the
+ * saturation change and the glow effect (using a fixed radius). Each benchmark runs on square images from 256 to 4096
+ * pixels and several image types.
+ * <p/>
+ * The in-place operations modify the benchmark image on every invocation. This does not affect the results, as the
+ * cost of the operations does not depend on the image contents.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true"})
+public class ImageUtilitiesBenchmark {
+    @Param({"256", "1024", "4096"})
+    public int size;
+
+    @Param({"TYPE_INT_ARGB", "TYPE_INT_ARGB_PRE", "TYPE_INT_RGB", "TYPE_4BYTE_ABGR"})
+    public String imageType;
+
+    protected BufferedImage _image;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        _image = BenchmarkImages.createImage(size, BenchmarkImages.getImageType(imageType));
+    }
+
+    @Benchmark
+    public BufferedImage simpleBoxBlur() {
+        return ImageUtilities.applySimpleBoxBlur(_image);
+    }
+
+    @Benchmark
+    public BufferedImage changeRGBSaturation() {
+        ImageUtilities.changeRGBSaturation(_image, 0.5);
+        return _image;
+    }
+
+    @Benchmark
+    public BufferedImage glow() {
+        return ImageUtilities.applyGlow(_image, 8, Color.ORANGE, 1f, false);
+    }
+}
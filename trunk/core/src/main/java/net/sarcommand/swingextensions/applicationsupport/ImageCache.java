@@ -1,6 +1,9 @@
 package net.sarcommand.swingextensions.applicationsupport;
 
+import net.sarcommand.swingextensions.io.FileChannelImageInputStream;
+
 import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -179,6 +182,14 @@ public class ImageCache {
         }
     }
 
+    /**
+     * Discards all cached images, so subsequent lookups will load the images again.
+     */
+    public static synchronized void clearCache() {
+        if (__cache != null)
+            __cache.clear();
+    }
+
     /**
      * Adds another location which should be searched for images upon lookup.
      *
@@ -250,15 +261,31 @@ public class ImageCache {
         for (URI uri : searchPaths) {
             try {
                 if (uri.isAbsolute())
-                    return ImageIO.read(uri.toURL());
+                    return "file".equals(uri.getScheme()) ? readFile(new File(uri)) : ImageIO.read(uri.toURL());
                 InputStream stream = ImageCache.class.getClassLoader().getResourceAsStream(uri.toString());
                 if (stream != null)
                     return ImageIO.read(stream);
-                return ImageIO.read(new File(uri.toString()));
+                return readFile(new File(uri.toString()));
             } catch (IOException e) {
                 //ignored at this point
             }
         }
         return null;
     }
+
+    /**
+     * Reads an image from a local file through a FileChannel.
+     *
+     * @param file the image file.
+     * @return the image, or null if the file format is not supported.
+     * @throws IOException if the file could not be read.
+     */
+    protected static BufferedImage readFile(final File file) throws IOException {
+        final ImageInputStream stream = new FileChannelImageInputStream(file);
+        try {
+            return ImageIO.read(stream);
+        } finally {
+            stream.close();
+        }
+    }
 }
@@ -0,0 +1,214 @@
+package net.sarcommand.swingextensions.completion;
+
+import net.sarcommand.swingextensions.utilities.LoadingScheduler;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Collection;
+
+/**
+ * A CompletionModel which looks up completions on a background thread, so that models querying a database or a large
+ * index do not block the event dispatch thread while the user is typing. Lookups are delegated to another
+ * CompletionModel, which has to be thread safe.
+ * <p/>
+ * When installed on a CompletionSupport, completions are requested using requestCompletions(). A request waits for the
+ * debounce delay before it is executed on the shared LoadingScheduler, and each request supersedes the previous one: It
+ * is discarded if it has not been started yet, or its thread is interrupted if it is running. The callback is invoked
+ * on the event dispatch thread, and only for the most recent request. Since there is only one current request, each
+ * CompletionSupport should use a model instance of its own.
+ * <p/>
+ * The synchronous getPossibleCompletions() method simply delegates, so that this model can still be used wherever a
+ * CompletionModel is expected.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public class AsynchronousCompletionModel<T> implements CompletionModel<T> {
+    /**
+     * Default time in milliseconds a request waits for further keystrokes before being executed.
+     */
+    public static final int DEFAULT_DEBOUNCE_DELAY = 150;
+
+    /**
+     * Receives the results of an asynchronous lookup.
+     */
+    public static interface Callback {
+        /**
+         * Invoked on the event dispatch thread once completions have been found.
+         *
+         * @param token       the token the completions have been looked up for.
+         * @param completions the possible completions.
+         */
+        public void completionsAvailable(final String token, final Collection<String> completions);
+    }
+
+    protected final CompletionModel<T> _delegate;
+    protected final LoadingScheduler _scheduler;
+    protected final Timer _debounceTimer;
+
+    /**
+     * The most recent request, only accessed on the event dispatch thread.
+     */
+    protected Lookup _currentLookup;
+
+    /**
+     * Creates a new model using the shared LoadingScheduler and the default debounce delay.
+     *
+     * @param delegate the model performing the actual lookups.
+     */
+    public AsynchronousCompletionModel(final CompletionModel<T> delegate) {
+        this(delegate, LoadingScheduler.getSharedInstance(), DEFAULT_DEBOUNCE_DELAY);
+    }
+
+    /**
+     * Creates a new model.
+     *
+     * @param delegate      the model performing the actual lookups.
+     * @param scheduler     the scheduler executing the lookups.
+     * @param debounceDelay time in milliseconds a request waits for further keystrokes before being executed.
+     */
+    public AsynchronousCompletionModel(final CompletionModel<T> delegate, final LoadingScheduler scheduler,
+                                       final int debounceDelay) {
+        if (delegate == null)
+            throw new IllegalArgumentException("Parameter 'delegate' must not be null!");
+        if (scheduler == null)
+            throw new IllegalArgumentException("Parameter 'scheduler' must not be null!");
+        _delegate = delegate;
+        _scheduler = scheduler;
+        _debounceTimer = new Timer(0, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                if (_currentLookup != null)
+                    submit(_currentLookup);
+            }
+        });
+        _debounceTimer.setRepeats(false);
+        setDebounceDelay(debounceDelay);
+    }
+
+    public CompletionModel<T> getDelegate() {
+        return _delegate;
+    }
+
+    public int getDebounceDelay() {
+        return _debounceTimer.getInitialDelay();
+    }
+
+    public void setDebounceDelay(final int debounceDelay) {
+        if (debounceDelay < 0)
+            throw new IllegalArgumentException("Parameter 'debounceDelay' must not be negative!");
+        _debounceTimer.setInitialDelay(debounceDelay);
+    }
+
+    public Collection<String> getPossibleCompletions(final T target, final String token) {
+        return _delegate.getPossibleCompletions(target, token);
+    }
+
+    /**
+     * Requests the completions for a token, superseding any previous request. Has to be invoked on the event dispatch
+     * thread.
+     *
+     * @param target   the target component for which completions are requested.
+     * @param token    the incomplete input for which completions have to be found.
+     * @param debounce whether to wait for the debounce delay before executing the lookup. Requests explicitly triggered
+     *                 by the user should not be delayed.
+     * @param callback receives the completions unless the request is superseded or cancelled first.
+     */
+    public void requestCompletions(final T target, final String token, final boolean debounce,
+                                   final Callback callback) {
+        if (token == null)
+            throw new IllegalArgumentException("Parameter 'token' must not be null!");
+        if (callback == null)
+            throw new IllegalArgumentException("Parameter 'callback' must not be null!");
+        cancel();
+        _currentLookup = new Lookup(target, token, callback);
+        if (debounce && getDebounceDelay() > 0)
+            _debounceTimer.restart();
+        else
+            submit(_currentLookup);
+    }
+
+    /**
+     * Cancels the current request, if any. Has to be invoked on the event dispatch thread.
+     */
+    public void cancel() {
+        _debounceTimer.stop();
+        if (_currentLookup != null) {
+            _scheduler.cancel(this);
+            _currentLookup = null;
+        }
+    }
+
+    protected void submit(final Lookup lookup) {
+        _scheduler.schedule(this, LoadingScheduler.Priority.VISIBLE, lookup);
+    }
+
+    /**
+     * Invoked on the event dispatch thread once a lookup has finished.
+     *
+     * @param lookup      the finished lookup.
+     * @param completions the completions found.
+     */
+    protected void lookupFinished(final Lookup lookup, final Collection<String> completions) {
+        if (lookup != _currentLookup)
+            return;
+        _currentLookup = null;
+        lookup._callback.completionsAvailable(lookup._token, completions);
+    }
+
+    /**
+     * A single request, executed on the scheduler's worker thread. The worker thread is interrupted if the request is
+     * cancelled while running.
+     */
+    protected class Lookup implements Runnable, LoadingScheduler.Cancellable {
+        protected final T _target;
+        protected final String _token;
+        protected final Callback _callback;
+        protected volatile boolean _cancelled;
+        protected Thread _thread;
+
+        public Lookup(final T target, final String token, final Callback callback) {
+            _target = target;
+            _token = token;
+            _callback = callback;
+        }
+
+        public void run() {
+            synchronized (this) {
+                if (_cancelled)
+                    return;
+                _thread = Thread.currentThread();
+            }
+            try {
+                final Collection<String> completions = _delegate.getPossibleCompletions(_target, _token);
+                if (!_cancelled) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            lookupFinished(Lookup.this, completions);
+                        }
+                    });
+                }
+            } finally {
+                synchronized (this) {
+                    _thread = null;
+                }
+                /* Clear an interrupt caused by cancel(), the worker thread will be reused */
+                Thread.interrupted();
+            }
+        }
+
+        public synchronized void cancel() {
+            _cancelled = true;
+            if (_thread != null)
+                _thread.interrupt();
+        }
+    }
+}
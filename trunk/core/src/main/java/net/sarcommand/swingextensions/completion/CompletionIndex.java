@@ -0,0 +1,280 @@
+package net.sarcommand.swingextensions.completion;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable, compact index of completion tokens supporting fast prefix lookups. The tokens are stored in a sorted
+ * array along with a parallel array of lookup keys. For a case insensitive index, the keys are folded once when the
+ * index is built: They are converted to lower case and stripped of accents, roughly matching a Collator of primary
+ * strength. Finding the tokens starting with a prefix takes two binary searches, so lookups take logarithmic time
+ * regardless of the number of matches, and at most the requested number of matches is copied.
+ * <p/>
+ * Indices are built from a collection of tokens using build(Collection, boolean), which normalizes and sorts the tokens
+ * in parallel. Since an index is immutable, adding and removing tokens creates a new index by merging the sorted arrays,
+ * and an index may be queried by any number of threads concurrently.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public class CompletionIndex {
+    private static final Pattern __combiningMarks = Pattern.compile("\\p{M}+");
+
+    /**
+     * Orders entries by key, entries with the same key by token.
+     */
+    private static final Comparator<Entry> __entryComparator = new Comparator<Entry>() {
+        public int compare(final Entry o1, final Entry o2) {
+            final int result = o1._key.compareTo(o2._key);
+            return result != 0 ? result : o1._token.compareTo(o2._token);
+        }
+    };
+
+    protected final boolean _caseSensitive;
+    protected final String[] _keys;
+    protected final String[] _tokens;
+
+    /**
+     * Builds a new index. The tokens are normalized and sorted in parallel. For a case insensitive index, only the first
+     * of several tokens with the same folded key (in natural order) is kept.
+     *
+     * @param tokens        the tokens to index.
+     * @param caseSensitive whether lookups should be case sensitive.
+     * @return the new index.
+     */
+    public static CompletionIndex build(final Collection<String> tokens, final boolean caseSensitive) {
+        if (tokens == null)
+            throw new IllegalArgumentException("Parameter 'tokens' must not be null!");
+        final String[] tokenArray = tokens.toArray(new String[tokens.size()]);
+        final Entry[] entries = new Entry[tokenArray.length];
+        Arrays.parallelSetAll(entries, new IntFunction<Entry>() {
+            public Entry apply(final int index) {
+                final String token = tokenArray[index];
+                if (token == null)
+                    throw new IllegalArgumentException("Tokens must not be null!");
+                return new Entry(normalize(token, caseSensitive), token);
+            }
+        });
+        Arrays.parallelSort(entries, __entryComparator);
+
+        final String[] keys = new String[entries.length];
+        final String[] sortedTokens = new String[entries.length];
+        int count = 0;
+        for (Entry entry : entries) {
+            if (count > 0 && keys[count - 1].equals(entry._key))
+                continue;
+            keys[count] = entry._key;
+            sortedTokens[count] = entry._token;
+            count++;
+        }
+        return new CompletionIndex(caseSensitive, Arrays.copyOf(keys, count), Arrays.copyOf(sortedTokens, count));
+    }
+
+    /**
+     * Returns an empty index.
+     *
+     * @param caseSensitive whether lookups should be case sensitive.
+     * @return an empty index.
+     */
+    public static CompletionIndex empty(final boolean caseSensitive) {
+        return new CompletionIndex(caseSensitive, new String[0], new String[0]);
+    }
+
+    /**
+     * Returns the lookup key for the given string. For a case insensitive index, the string is converted to lower case
+     * and stripped of accents.
+     *
+     * @param string        the string to normalize.
+     * @param caseSensitive whether the index is case sensitive.
+     * @return the lookup key.
+     */
+    public static String normalize(final String string, final boolean caseSensitive) {
+        if (caseSensitive)
+            return string;
+        for (int i = 0, n = string.length(); i < n; i++) {
+            if (string.charAt(i) >= 128) {
+                final String decomposed = Normalizer.normalize(string, Normalizer.Form.NFD);
+                return __combiningMarks.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+            }
+        }
+        return string.toLowerCase(Locale.ROOT);
+    }
+
+    protected CompletionIndex(final boolean caseSensitive, final String[] keys, final String[] tokens) {
+        _caseSensitive = caseSensitive;
+        _keys = keys;
+        _tokens = tokens;
+    }
+
+    public boolean isCaseSensitive() {
+        return _caseSensitive;
+    }
+
+    public int size() {
+        return _tokens.length;
+    }
+
+    /**
+     * Returns all tokens in the order of their keys.
+     *
+     * @return an unmodifiable list of all tokens.
+     */
+    public List<String> getTokens() {
+        return Collections.unmodifiableList(Arrays.asList(_tokens));
+    }
+
+    /**
+     * Returns the number of tokens starting with the given prefix.
+     *
+     * @param prefix the prefix to look up.
+     * @return the number of matches.
+     */
+    public int getCompletionCount(final String prefix) {
+        final String key = normalize(prefix, _caseSensitive);
+        final int first = lowerBound(key);
+        return upperBound(key, first) - first;
+    }
+
+    /**
+     * Returns the first tokens starting with the given prefix, in the order of their keys.
+     *
+     * @param prefix the prefix to look up.
+     * @param limit  the maximum number of tokens to return.
+     * @return a list of at most 'limit' matching tokens.
+     */
+    public List<String> getCompletions(final String prefix, final int limit) {
+        if (prefix == null)
+            throw new IllegalArgumentException("Parameter 'prefix' must not be null!");
+        if (limit < 0)
+            throw new IllegalArgumentException("Parameter 'limit' must not be negative!");
+        final String key = normalize(prefix, _caseSensitive);
+        final int first = lowerBound(key);
+        final int last = upperBound(key, first);
+        final int count = Math.min(limit, last - first);
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOfRange(_tokens, first, first + count)));
+    }
+
+    /**
+     * Returns a new index containing the tokens of this index and the given tokens.
+     *
+     * @param tokens the tokens to add.
+     * @return the new index.
+     */
+    public CompletionIndex withTokens(final Collection<String> tokens) {
+        if (tokens.isEmpty())
+            return this;
+        return merge(build(tokens, _caseSensitive), false);
+    }
+
+    /**
+     * Returns a new index containing the tokens of this index except for the given ones.
+     *
+     * @param tokens the tokens to remove.
+     * @return the new index.
+     */
+    public CompletionIndex withoutTokens(final Collection<String> tokens) {
+        if (tokens.isEmpty())
+            return this;
+        return merge(build(tokens, _caseSensitive), true);
+    }
+
+    /**
+     * Merges the sorted arrays of this index and another index with the same case sensitivity.
+     *
+     * @param other    the index to merge with.
+     * @param subtract whether to remove the other index' keys from this index rather than to add them.
+     * @return the merged index.
+     */
+    protected CompletionIndex merge(final CompletionIndex other, final boolean subtract) {
+        final int capacity = subtract ? _keys.length : _keys.length + other._keys.length;
+        final String[] keys = new String[capacity];
+        final String[] tokens = new String[capacity];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < _keys.length || (!subtract && j < other._keys.length)) {
+            final int comparison;
+            if (i == _keys.length)
+                comparison = 1;
+            else if (j == other._keys.length)
+                comparison = -1;
+            else
+                comparison = _keys[i].compareTo(other._keys[j]);
+
+            if (comparison < 0) {
+                keys[count] = _keys[i];
+                tokens[count++] = _tokens[i++];
+            } else if (comparison > 0) {
+                if (!subtract) {
+                    keys[count] = other._keys[j];
+                    tokens[count++] = other._tokens[j];
+                }
+                j++;
+            } else {
+                if (!subtract) {
+                    keys[count] = _keys[i];
+                    tokens[count++] = _tokens[i];
+                }
+                i++;
+                j++;
+            }
+        }
+        return new CompletionIndex(_caseSensitive, Arrays.copyOf(keys, count), Arrays.copyOf(tokens, count));
+    }
+
+    /**
+     * Returns the index of the first key which is not smaller than the given key.
+     */
+    protected int lowerBound(final String key) {
+        int low = 0;
+        int high = _keys.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (_keys[middle].compareTo(key) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first key at or after 'first' which does not start with the given prefix. Since the keys
+     * starting with a prefix form a contiguous range beginning at its lower bound, this is a binary search as well.
+     */
+    protected int upperBound(final String prefix, final int first) {
+        int low = first;
+        int high = _keys.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (_keys[middle].startsWith(prefix))
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * A token along with its key, used while building an index.
+     */
+    protected static class Entry {
+        protected final String _key;
+        protected final String _token;
+
+        public Entry(final String key, final String token) {
+            _key = key;
+            _token = token;
+        }
+    }
+}
@@ -32,6 +32,10 @@ import java.util.HashMap;
  * specifying a suitable TokenProvider implementation. All keystrokes can be configured as well by using the according
  * setter methods.
  * <p/>
+ * By default, the completion model is queried on the event dispatch thread. Models performing expensive lookups should
+ * be wrapped in an AsynchronousCompletionModel: Completions will then be looked up in the background once the user
+ * stops typing, and results will only be applied if they still match the token at the caret.
+ * <p/>
  * Example:<br> <code> // You can use pretty much every text component<br> final JTextField testTF = new
  * JTextField(20);
  * <p/>
@@ -242,6 +246,8 @@ public class CompletionSupport {
         uninstallKey(_triggerCompletionKeyStroke);
 
         _target.getDocument().removeDocumentListener(_documentListener);
+        if (_model instanceof AsynchronousCompletionModel)
+            ((AsynchronousCompletionModel<?>) _model).cancel();
 
         _target = null;
     }
@@ -339,6 +345,8 @@ public class CompletionSupport {
      * @param model the model to be used when searching for text completions.
      */
     public void setModel(CompletionModel model) {
+        if (_model instanceof AsynchronousCompletionModel)
+            ((AsynchronousCompletionModel<?>) _model).cancel();
         _model = model;
     }
 
@@ -527,7 +535,32 @@ public class CompletionSupport {
      */
     public void updateCompletions(final boolean showPopup) {
         final String word = getTokenAtPosition();
-        final Collection<String> completions = _model.getPossibleCompletions(_target, word);
+        if (_model instanceof AsynchronousCompletionModel) {
+            /* CompletionSupport always passes the target text component to its model */
+            @SuppressWarnings({"unchecked"})
+            final AsynchronousCompletionModel<JTextComponent> model =
+                    (AsynchronousCompletionModel<JTextComponent>) _model;
+            model.requestCompletions(_target, word, !showPopup, new AsynchronousCompletionModel.Callback() {
+                public void completionsAvailable(final String token, final Collection<String> completions) {
+                    if (_target != null && token.equals(getTokenAtPosition()))
+                        applyCompletions(token, completions, showPopup);
+                }
+            });
+        } else {
+            final Collection<String> completions = _model.getPossibleCompletions(_target, word);
+            applyCompletions(word, completions, showPopup);
+        }
+    }
+
+    /**
+     * Reacts to the completions found for the current token, suggesting a single completion or showing the popup.
+     *
+     * @param word        the token at the caret position.
+     * @param completions the completions found for the token.
+     * @param showPopup   Indicates whether the popup should be shown regardless of the 'automaticallyShowPopup'
+     *                    property.
+     */
+    protected void applyCompletions(final String word, final Collection<String> completions, final boolean showPopup) {
         if (completions.size() > 0 && _state == State.NO_SUGGESTIONS) {
             installKey(_acceptKeyStroke, ACCEPT_KEY);
             installKey(_cancelKeyStroke, CANCEL_KEY);
@@ -1,12 +1,15 @@
 package net.sarcommand.swingextensions.completion;
 
-import java.text.Collator;
 import java.util.*;
 
 /**
- * A simple default implementation of the CompletionModel interface. This class is backed by a TreeSet which you can
- * fill with tokens. The lookup time should be pretty effective, even though the maximum dictionary size is obviously
- * somewhat limited.
+ * A simple default implementation of the CompletionModel interface. By default, this class is backed by a
+ * CompletionIndex which you can fill with tokens. Lookups take logarithmic time, and at most getMaximumCompletions()
+ * tokens will be returned, so that even dictionaries with millions of entries can be used. In case insensitive mode,
+ * tokens are case folded once when they are added rather than compared using a Collator.
+ * <p/>
+ * If a custom Comparator is passed to the constructor, the model will be backed by a TreeSet ordered by that
+ * comparator instead.
  * <p/>
  * <hr/> Copyright 2006-2012 Torsten Heup
  * <p/>
@@ -20,23 +23,44 @@ import java.util.*;
  * specific language governing permissions and limitations under the License.
  */
 public class SimpleCompletionModel implements CompletionModel {
+    /**
+     * Default maximum number of completions returned by getPossibleCompletions().
+     */
+    public static final int DEFAULT_MAXIMUM_COMPLETIONS = 100;
+
+    /**
+     * The tokens if a custom comparator has been specified, null otherwise.
+     */
     private TreeSet<String> _tokens;
 
+    /**
+     * The tokens if no custom comparator has been specified, null otherwise. Replaced whenever tokens are added or
+     * removed.
+     */
+    private volatile CompletionIndex _index;
+
+    private volatile int _maximumCompletions;
+
     public SimpleCompletionModel() {
         this((Comparator<String>) null);
     }
 
     public SimpleCompletionModel(final boolean caseSensitive) {
-        if (!caseSensitive) {
-            final Collator collator = Collator.getInstance();
-            collator.setStrength(Collator.PRIMARY);
-            _tokens = new TreeSet<String>(collator);
-        } else
-            _tokens = new TreeSet<String>();
+        _index = CompletionIndex.empty(caseSensitive);
+        _maximumCompletions = DEFAULT_MAXIMUM_COMPLETIONS;
+    }
+
+    public SimpleCompletionModel(final boolean caseSensitive, final Collection<String> tokens) {
+        _index = CompletionIndex.build(tokens, caseSensitive);
+        _maximumCompletions = DEFAULT_MAXIMUM_COMPLETIONS;
     }
 
     public SimpleCompletionModel(final Comparator<String> comparator) {
-        _tokens = new TreeSet<String>(comparator);
+        if (comparator != null)
+            _tokens = new TreeSet<String>(comparator);
+        else
+            _index = CompletionIndex.empty(true);
+        _maximumCompletions = DEFAULT_MAXIMUM_COMPLETIONS;
     }
 
     public SimpleCompletionModel(final String... tokens) {
@@ -48,8 +72,7 @@ public class SimpleCompletionModel implements CompletionModel {
     }
 
     public SimpleCompletionModel(final Collection<String> tokens) {
-        this((Comparator<String>) null);
-        addTokens(tokens);
+        this(true, tokens);
     }
 
     public SimpleCompletionModel(final Comparator<String> comparator, final Collection<String> tokens) {
@@ -57,33 +80,70 @@ public class SimpleCompletionModel implements CompletionModel {
         addTokens(tokens);
     }
 
-    public void addTokens(final Collection<String> tokens) {
-        _tokens.addAll(tokens);
+    /**
+     * Adds tokens to this model. Adding many tokens at once is much cheaper than adding them one by one.
+     *
+     * @param tokens the tokens to add.
+     */
+    public synchronized void addTokens(final Collection<String> tokens) {
+        if (_tokens != null)
+            _tokens.addAll(tokens);
+        else
+            _index = _index.withTokens(tokens);
+    }
+
+    public synchronized void removeTokens(final Collection<String> tokens) {
+        if (_tokens != null)
+            _tokens.removeAll(tokens);
+        else
+            _index = _index.withoutTokens(tokens);
     }
 
-    public void removeTokens(final Collection<String> tokens) {
-        _tokens.removeAll(tokens);
+    public int getMaximumCompletions() {
+        return _maximumCompletions;
+    }
+
+    /**
+     * Sets the maximum number of completions returned by getPossibleCompletions(). Only applies to models without a
+     * custom comparator.
+     *
+     * @param maximumCompletions the maximum number of completions.
+     */
+    public void setMaximumCompletions(final int maximumCompletions) {
+        if (maximumCompletions < 0)
+            throw new IllegalArgumentException("Parameter 'maximumCompletions' must not be negative!");
+        _maximumCompletions = maximumCompletions;
     }
 
     public Collection<String> getPossibleCompletions(final Object target, String token) {
-        String ceil = _tokens.ceiling(token);
-        final LinkedList<String> result = new LinkedList<String>();
-        if (ceil == null)
+        if (_tokens == null)
+            return _index.getCompletions(token, _maximumCompletions);
+
+        synchronized (this) {
+            String ceil = _tokens.ceiling(token);
+            final LinkedList<String> result = new LinkedList<String>();
+            if (ceil == null)
+                return result;
+            final Set<String> candidates = _tokens.tailSet(ceil);
+            for (String candidate : candidates) {
+                if (!candidate.startsWith(token))
+                    break;
+                result.add(candidate);
+            }
             return result;
-        final Set<String> candidates = _tokens.tailSet(ceil);
-        for (String candidate : candidates) {
-            if (!candidate.startsWith(token))
-                break;
-            result.add(candidate);
         }
-        return result;
     }
 
-    public void clear() {
-        _tokens.clear();
+    public synchronized void clear() {
+        if (_tokens != null)
+            _tokens.clear();
+        else
+            _index = CompletionIndex.empty(_index.isCaseSensitive());
     }
 
     public Collection<String> getTokens() {
+        if (_tokens == null)
+            return _index.getTokens();
         return Collections.unmodifiableCollection(_tokens);
     }
 }
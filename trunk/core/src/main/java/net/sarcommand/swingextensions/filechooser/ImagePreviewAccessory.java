@@ -10,10 +10,7 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 
 /**
  * A prebuilt FileChooserAccessory used for previewing images. This implementation will load images on a background
@@ -105,24 +102,37 @@ public class ImagePreviewAccessory extends AbstractFileChooserAccessory {
             _cardLayout.show(_accessoryPanel, NO_IMAGE_LABEL_LAYOUT_KEY);
             return;
         }
-        try {
-            final BufferedInputStream inStream = new BufferedInputStream(new FileInputStream(file));
-            if (_loaderTask == null || _loaderTask.isDisposed()) {
-                _loaderTask = new ImageLoaderTask() {
-                    public void imageLoaded(final BufferedImage image) {
-                        if (image != null) {
-                            _imagePanel.setImage(image);
-                            _imagePanel.setScaleMode(JImagePanel.ScaleMode.SCALE_BEST_FIT);
-                            _cardLayout.show(_accessoryPanel, IMAGE_PANEL_LAYOUT_KEY);
-                        } else
-                            _cardLayout.show(_accessoryPanel, NO_IMAGE_LABEL_LAYOUT_KEY);
-                    }
-                };
-            }
-            _cardLayout.show(_accessoryPanel, PROGRESS_INDICATOR_LAYOUT_KEY);
-            _loaderTask.loadImage(inStream);
-        } catch (FileNotFoundException e) {
-            __log.error("Could not read image " + file.getAbsolutePath(), e);
+        if (_loaderTask == null || _loaderTask.isDisposed()) {
+            _loaderTask = new ImageLoaderTask() {
+                public void imageLoaded(final BufferedImage image) {
+                    if (image != null) {
+                        _imagePanel.setImage(image);
+                        _imagePanel.setScaleMode(JImagePanel.ScaleMode.SCALE_BEST_FIT);
+                        _cardLayout.show(_accessoryPanel, IMAGE_PANEL_LAYOUT_KEY);
+                    } else
+                        _cardLayout.show(_accessoryPanel, NO_IMAGE_LABEL_LAYOUT_KEY);
+                }
+            };
         }
+        _cardLayout.show(_accessoryPanel, PROGRESS_INDICATOR_LAYOUT_KEY);
+        if (__log.isDebugEnabled())
+            __log.debug("Loading preview for " + file.getAbsolutePath());
+        _loaderTask.loadImage(file, getPreviewSize());
+    }
+
+    /**
+     * Returns the size available for displaying the preview image. Images will be decoded at a reduced resolution
+     * matching this size.
+     *
+     * @return the size available for the preview image.
+     */
+    protected Dimension getPreviewSize() {
+        final Dimension size = _imagePanel.getSize();
+        if (size.width < 1 || size.height < 1)
+            size.setSize(_accessoryPanel.getPreferredSize());
+        final Insets insets = _imagePanel.getInsets();
+        size.width = Math.max(1, size.width - insets.left - insets.right);
+        size.height = Math.max(1, size.height - insets.top - insets.bottom);
+        return size;
     }
 }
@@ -1,14 +1,15 @@
 package net.sarcommand.swingextensions.glasspane;
 
+import net.sarcommand.swingextensions.image.ImageBufferPool;
 import net.sarcommand.swingextensions.image.ImageUtilities;
+import net.sarcommand.swingextensions.utilities.AnimationClock;
+import net.sarcommand.swingextensions.utilities.LoadingScheduler;
 import net.sarcommand.swingextensions.utilities.SwingExtUtil;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
-import java.awt.image.BufferedImageOp;
-import java.awt.image.VolatileImage;
 
 /**
  * A glasspane implementation which will grey out your application and blur its graphics for a visual 'disabled' effect.
@@ -16,6 +17,18 @@ import java.awt.image.VolatileImage;
  * <p/>
  * You might want to take a look at the GlassPaneNotification class for adding progess indicators.
  * <p/>
+ * The content pane is captured at a fraction of its resolution, determined by the downscale factor. The small capture is
+ * blurred on a background thread and stretched to the size of the glasspane using bilinear filtering when painting. As
+ * the blur is computed on 1 / (factor * factor) of the pixels, the blurred image is usually available within a frame,
+ * even for full screen windows. Until then, only the gray overlay is painted. Buffers are obtained from the shared
+ * ImageBufferPool, so they can be reused while the window is being resized.
+ * <p/>
+ * If animation has been enabled, the glasspane fades in when being shown. Instead of blurring the content pane anew for
+ * each frame, a pyramid of PYRAMID_LEVELS captures with increasing blur radius is computed once on a background
+ * thread, and each frame cross-fades between two adjacent levels. Frames are driven by the shared AnimationClock, and a
+ * new frame is only requested once the previous one has been painted, so frames are dropped rather than queued if
+ * painting exceeds the frame budget. Once the fade has completed, all levels but the last one are released.
+ * <p/>
  * <hr/> Copyright 2006-2012 Torsten Heup
  * <p/>
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
@@ -31,14 +44,52 @@ import java.awt.image.VolatileImage;
  */
 public class BlurringGlassPane extends JPanel {
     /**
-     * A hardware accelerated image buffer used when blurring the content pane.
+     * Default factor by which the content pane is scaled down before blurring.
+     */
+    public static final int DEFAULT_DOWNSCALE_FACTOR = 4;
+
+    /**
+     * Default blur radius in pixels of the full resolution content pane.
+     */
+    public static final int DEFAULT_BLUR_RADIUS = 12;
+
+    /**
+     * Default duration of the fade-in animation in milliseconds.
+     */
+    public static final int DEFAULT_ANIMATION_DURATION = 250;
+
+    /**
+     * Number of blur strengths computed for the fade-in animation, including the unblurred capture.
+     */
+    public static final int PYRAMID_LEVELS = 4;
+
+    /**
+     * The blurred, scaled down capture of the content pane, obtained from the shared ImageBufferPool. The image may be
+     * larger than the capture, the actually used region is stored in _blurWidth and _blurHeight.
+     */
+    protected BufferedImage _blurBuffer;
+    protected int _blurWidth;
+    protected int _blurHeight;
+
+    /**
+     * Incremented whenever pending blur operations become obsolete.
      */
-    protected VolatileImage _imageBuffer;
+    protected int _generation;
+
+    protected int _downscaleFactor;
+    protected int _blurRadius;
+
+    protected boolean _animated;
+    protected int _animationDuration;
 
     /**
-     * The filter operation used to create the blur effect if _blurringContentPane has been set.
+     * Captures with increasing blur radius used while fading in, null if no animation is running.
      */
-    protected BufferedImageOp _blurFilter;
+    protected BufferedImage[] _pyramid;
+    protected float _animationProgress;
+    protected long _animationStart;
+    protected boolean _framePending;
+    protected AnimationClock.Listener _animationListener;
 
     /**
      * The GlassPaneNotification currently shown, if there is one.
@@ -59,14 +110,57 @@ public class BlurringGlassPane extends JPanel {
         _peerComponent = peerComponent;
     }
 
+    public int getDownscaleFactor() {
+        return _downscaleFactor;
+    }
+
+    /**
+     * Sets the factor by which the content pane is scaled down before blurring. Larger factors are faster and produce
+     * a softer result. A factor of 1 blurs the content pane at full resolution.
+     *
+     * @param downscaleFactor the downscale factor.
+     */
+    public void setDownscaleFactor(final int downscaleFactor) {
+        if (downscaleFactor < 1)
+            throw new IllegalArgumentException("Parameter 'downscaleFactor' must be positive!");
+        _downscaleFactor = downscaleFactor;
+        if (isShowing())
+            recreateImageBuffer();
+    }
+
+    public int getBlurRadius() {
+        return _blurRadius;
+    }
+
+    /**
+     * Sets the radius of the blur in pixels of the full resolution content pane.
+     *
+     * @param blurRadius the blur radius.
+     */
+    public void setBlurRadius(final int blurRadius) {
+        if (blurRadius < 1)
+            throw new IllegalArgumentException("Parameter 'blurRadius' must be positive!");
+        _blurRadius = blurRadius;
+        if (isShowing())
+            recreateImageBuffer();
+    }
+
     /**
-     * Initializes the glasspane by installing the required listeners and setting up the blur filter.
+     * Initializes the glasspane by installing the required listeners.
      */
     private void initialize() {
         setOpaque(false);
         setBackground(new Color(100, 100, 100, 50));
         setLayout(new GridBagLayout());
-        _blurFilter = ImageUtilities.createSimpleBoxBlurFilter();
+        _downscaleFactor = DEFAULT_DOWNSCALE_FACTOR;
+        _blurRadius = DEFAULT_BLUR_RADIUS;
+        _animationDuration = DEFAULT_ANIMATION_DURATION;
+        _animationProgress = 1f;
+        _animationListener = new AnimationClock.Listener() {
+            public void tick(final long frameTime) {
+                animationTick(frameTime);
+            }
+        };
 
         addMouseListener(new MouseAdapter() {
         });
@@ -77,11 +171,14 @@ public class BlurringGlassPane extends JPanel {
 
         addComponentListener(new ComponentAdapter() {
             public void componentHidden(ComponentEvent e) {
-                _imageBuffer = null;
+                releaseImageBuffer();
             }
 
             public void componentShown(ComponentEvent e) {
-                recreateImageBuffer();
+                if (_animated)
+                    createPyramid();
+                else
+                    recreateImageBuffer();
             }
 
             public void componentResized(ComponentEvent e) {
@@ -92,53 +189,290 @@ public class BlurringGlassPane extends JPanel {
     }
 
     /**
-     * Recreates the internal image buffer used to store the blurred version of the underlying content pane. This method
-     * will be invoked whenever:
+     * Captures the underlying content pane at reduced resolution and blurs the capture on a background thread. This
+     * method will be invoked whenever:
+     * <p/>
+     * <li>The glasspane is resized</li> <li>The glasspane is shown after being hidden</li> <li>The downscale factor
+     * or blur radius have been changed</li>
      * <p/>
-     * <li>The glasspane is resized</li> <li>The glasspane is shown after being hidden</li> <li>The contents of the
-     * hardware-accelerated buffer have been lost since the last repaint. This should never happen unless the
-     * screensaver turns on or you're switching to fullscreen Direct3d/OpenGL games</li>
+     * The previous blurred image remains visible until the new one is available.
      */
     protected void recreateImageBuffer() {
-        if (getWidth() > 0 && getHeight() > 0) {
-            final BufferedImage tempImage = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
-            _imageBuffer = createVolatileImage(getWidth(), getHeight());
-
-            final Component contentPane;
-            final Graphics2D tempGraphics = tempImage.createGraphics();
-
-            if (_peerComponent == null) {
-                final JMenuBar bar;
-                final Window w = SwingExtUtil.getWindowForComponent(this);
-
-                if (w == null)
-                    bar = null;
-                else if (w instanceof JFrame)
-                    bar = ((JFrame) w).getJMenuBar();
-                else if (w instanceof JDialog)
-                    bar = ((JDialog) w).getJMenuBar();
-                else
-                    bar = null;
+        stopAnimation();
+        final BufferedImage capture = capture();
+        if (capture == null)
+            return;
+
+        final int captureWidth = getCaptureWidth();
+        final int captureHeight = getCaptureHeight();
+        final int generation = ++_generation;
+        final int radius = Math.max(1, Math.round((float) _blurRadius / _downscaleFactor));
+        LoadingScheduler.getSharedInstance().schedule(this, LoadingScheduler.Priority.VISIBLE, new Runnable() {
+            public void run() {
+                try {
+                    ImageUtilities.applyRegionBlur(capture, captureWidth, captureHeight, radius);
+                } finally {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            blurCompleted(capture, captureWidth, captureHeight, generation);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Captures the underlying content pane and computes the blur pyramid used to fade in on a background thread. The
+     * animation starts as soon as the pyramid is available.
+     */
+    protected void createPyramid() {
+        stopAnimation();
+        final BufferedImage capture = capture();
+        if (capture == null)
+            return;
 
-                if (bar != null) {
-                    bar.paint(tempGraphics);
-                    tempGraphics.translate(0, bar.getHeight());
+        final int captureWidth = getCaptureWidth();
+        final int captureHeight = getCaptureHeight();
+        final int generation = ++_generation;
+        final float radius = (float) _blurRadius / _downscaleFactor;
+        _animationProgress = 0f;
+        LoadingScheduler.getSharedInstance().schedule(this, LoadingScheduler.Priority.VISIBLE, new Runnable() {
+            public void run() {
+                final ImageBufferPool pool = ImageBufferPool.getSharedInstance();
+                final BufferedImage[] pyramid = new BufferedImage[PYRAMID_LEVELS];
+                pyramid[0] = capture;
+                try {
+                    for (int i = 1; i < PYRAMID_LEVELS; i++) {
+                        final BufferedImage level = pool.acquire(captureWidth, captureHeight,
+                                BufferedImage.TYPE_INT_ARGB_PRE);
+                        final Graphics2D g2 = level.createGraphics();
+                        g2.drawImage(capture, 0, 0, captureWidth, captureHeight, 0, 0, captureWidth, captureHeight,
+                                null);
+                        g2.dispose();
+                        ImageUtilities.applyRegionBlur(level, captureWidth, captureHeight,
+                                Math.max(1, Math.round(radius * i / (PYRAMID_LEVELS - 1))));
+                        pyramid[i] = level;
+                    }
+                } finally {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            pyramidCompleted(pyramid, captureWidth, captureHeight, generation);
+                        }
+                    });
                 }
+            }
+        });
+    }
+
+    /**
+     * Invoked on the event dispatch thread once the blur pyramid has been computed. Starts the fade-in animation.
+     *
+     * @param pyramid    the pyramid levels, some of which may be null if the computation failed.
+     * @param width      width of the capture.
+     * @param height     height of the capture.
+     * @param generation the generation the pyramid has been requested in.
+     */
+    protected void pyramidCompleted(final BufferedImage[] pyramid, final int width, final int height,
+                                    final int generation) {
+        boolean complete = generation == _generation;
+        for (BufferedImage level : pyramid)
+            complete &= level != null;
+        if (!complete) {
+            releaseLevels(pyramid, PYRAMID_LEVELS);
+            if (generation == _generation) {
+                _animationProgress = 1f;
+                recreateImageBuffer();
+            }
+            return;
+        }
+
+        _pyramid = pyramid;
+        _blurWidth = width;
+        _blurHeight = height;
+        _animationProgress = 0f;
+        _animationStart = System.nanoTime();
+        _framePending = false;
+        AnimationClock.getSharedInstance().addListener(_animationListener);
+        repaint();
+    }
+
+    /**
+     * Advances the fade-in animation. A new frame is only requested if the previous one has already been painted.
+     *
+     * @param frameTime time of the current frame in nanoseconds.
+     */
+    protected void animationTick(final long frameTime) {
+        final float progress = _animationDuration <= 0 ? 1f : Math.min(1f,
+                (frameTime - _animationStart) / (_animationDuration * 1000000f));
+        if (progress >= 1f) {
+            finishAnimation();
+            return;
+        }
+        if (_framePending)
+            return;
+        _animationProgress = progress;
+        _framePending = true;
+        repaint();
+    }
+
+    /**
+     * Completes the fade-in animation, keeping the most blurred level as the glasspane's image and releasing all
+     * others.
+     */
+    protected void finishAnimation() {
+        AnimationClock.getSharedInstance().removeListener(_animationListener);
+        _animationProgress = 1f;
+        if (_pyramid != null) {
+            ImageBufferPool.getSharedInstance().release(_blurBuffer);
+            _blurBuffer = _pyramid[PYRAMID_LEVELS - 1];
+            releaseLevels(_pyramid, PYRAMID_LEVELS - 1);
+            _pyramid = null;
+        }
+        repaint();
+    }
+
+    /**
+     * Stops a running fade-in animation and releases the blur pyramid.
+     */
+    protected void stopAnimation() {
+        AnimationClock.getSharedInstance().removeListener(_animationListener);
+        _animationProgress = 1f;
+        if (_pyramid != null) {
+            releaseLevels(_pyramid, PYRAMID_LEVELS);
+            _pyramid = null;
+        }
+    }
+
+    private static void releaseLevels(final BufferedImage[] pyramid, final int count) {
+        final ImageBufferPool pool = ImageBufferPool.getSharedInstance();
+        for (int i = 0; i < count; i++)
+            pool.release(pyramid[i]);
+    }
+
+    public boolean isAnimated() {
+        return _animated;
+    }
+
+    /**
+     * Determines whether the glasspane should fade in when being shown.
+     *
+     * @param animated whether the fade-in animation should be enabled.
+     */
+    public void setAnimated(final boolean animated) {
+        _animated = animated;
+    }
+
+    public int getAnimationDuration() {
+        return _animationDuration;
+    }
+
+    /**
+     * Sets the duration of the fade-in animation.
+     *
+     * @param animationDuration the duration in milliseconds.
+     */
+    public void setAnimationDuration(final int animationDuration) {
+        if (animationDuration < 0)
+            throw new IllegalArgumentException("Parameter 'animationDuration' must not be negative!");
+        _animationDuration = animationDuration;
+    }
+
+    /**
+     * Captures the underlying content pane at reduced resolution.
+     *
+     * @return the capture, obtained from the shared ImageBufferPool, or null if the glasspane has no size.
+     */
+    protected BufferedImage capture() {
+        final int width = getWidth();
+        final int height = getHeight();
+        if (width <= 0 || height <= 0)
+            return null;
+
+        final int captureWidth = getCaptureWidth();
+        final int captureHeight = getCaptureHeight();
+        final BufferedImage capture = ImageBufferPool.getSharedInstance().acquire(captureWidth, captureHeight,
+                BufferedImage.TYPE_INT_ARGB_PRE);
+
+        final Graphics2D captureGraphics = capture.createGraphics();
+        captureGraphics.clipRect(0, 0, captureWidth, captureHeight);
+        captureGraphics.scale((double) captureWidth / width, (double) captureHeight / height);
+        paintContents(captureGraphics);
+        captureGraphics.dispose();
+        return capture;
+    }
+
+    protected int getCaptureWidth() {
+        return Math.max(1, (getWidth() + _downscaleFactor - 1) / _downscaleFactor);
+    }
+
+    protected int getCaptureHeight() {
+        return Math.max(1, (getHeight() + _downscaleFactor - 1) / _downscaleFactor);
+    }
+
+    /**
+     * Paints the content pane (and the menu bar, if there is one) or the peer component onto the given graphics.
+     *
+     * @param g graphics to paint on.
+     */
+    protected void paintContents(final Graphics2D g) {
+        final Component contentPane;
+        if (_peerComponent == null) {
+            final JMenuBar bar;
+            final Window w = SwingExtUtil.getWindowForComponent(this);
+
+            if (w == null)
+                bar = null;
+            else if (w instanceof JFrame)
+                bar = ((JFrame) w).getJMenuBar();
+            else if (w instanceof JDialog)
+                bar = ((JDialog) w).getJMenuBar();
+            else
+                bar = null;
 
-                final JRootPane parent = (JRootPane) getParent();
-                contentPane = parent.getContentPane();
-            } else
-                contentPane = _peerComponent;
+            if (bar != null) {
+                bar.paint(g);
+                g.translate(0, bar.getHeight());
+            }
 
-            contentPane.paint(tempGraphics);
-            tempGraphics.dispose();
+            final JRootPane parent = (JRootPane) getParent();
+            contentPane = parent.getContentPane();
+        } else
+            contentPane = _peerComponent;
 
-            final Graphics2D g2 = _imageBuffer.createGraphics();
-            g2.drawImage(tempImage, _blurFilter, 0, 0);
-            g2.dispose();
+        contentPane.paint(g);
+    }
 
-            repaint();
+    /**
+     * Invoked on the event dispatch thread once a capture has been blurred.
+     *
+     * @param blurred    the blurred capture.
+     * @param width      width of the capture.
+     * @param height     height of the capture.
+     * @param generation the generation the capture has been created in.
+     */
+    protected void blurCompleted(final BufferedImage blurred, final int width, final int height,
+                                 final int generation) {
+        final ImageBufferPool pool = ImageBufferPool.getSharedInstance();
+        if (generation != _generation) {
+            pool.release(blurred);
+            return;
         }
+        pool.release(_blurBuffer);
+        _blurBuffer = blurred;
+        _blurWidth = width;
+        _blurHeight = height;
+        repaint();
+    }
+
+    /**
+     * Hands the blurred image back to the image pool and discards pending blur operations.
+     */
+    protected void releaseImageBuffer() {
+        stopAnimation();
+        _generation++;
+        ImageBufferPool.getSharedInstance().release(_blurBuffer);
+        _blurBuffer = null;
     }
 
     /**
@@ -148,15 +482,29 @@ public class BlurringGlassPane extends JPanel {
      */
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        final Graphics2D g2 = (Graphics2D) g;
-        if (_imageBuffer != null) {
-            while (_imageBuffer.contentsLost())
-                recreateImageBuffer();
-            g2.drawImage(_imageBuffer, 0, 0, null);
-        }
+        _framePending = false;
+        final Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        final float progress = _animationProgress;
+
+        if (_pyramid != null) {
+            /* cross-fade between the two levels enclosing the current progress */
+            final float position = progress * (PYRAMID_LEVELS - 1);
+            final int level = Math.min(PYRAMID_LEVELS - 2, (int) position);
+            final float fraction = Math.min(1f, position - level);
+            g2.drawImage(_pyramid[level], 0, 0, getWidth(), getHeight(), 0, 0, _blurWidth, _blurHeight, null);
+            if (fraction > 0) {
+                g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, fraction));
+                g2.drawImage(_pyramid[level + 1], 0, 0, getWidth(), getHeight(), 0, 0, _blurWidth, _blurHeight,
+                        null);
+            }
+        } else if (_blurBuffer != null && progress >= 1f)
+            g2.drawImage(_blurBuffer, 0, 0, getWidth(), getHeight(), 0, 0, _blurWidth, _blurHeight, null);
 
+        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, progress));
         g2.setColor(getBackground());
         g2.fillRect(0, 0, getWidth(), getHeight());
+        g2.dispose();
     }
 
     public GlassPaneNotification getNotification() {
@@ -0,0 +1,430 @@
+package net.sarcommand.swingextensions.image;
+
+/**
+ * A blur implementation working directly on packed ARGB pixel data, as found in the data buffers of images of type
+ * TYPE_INT_ARGB or TYPE_INT_ARGB_PRE. Both an exact gaussian blur and a fast approximation based on successive box
+ * blurs are available. Either one is performed as two separable one-dimensional passes (rows first, then columns),
+ * each of which is split into strips and processed in parallel on a shared fork/join pool. Every worker thread uses its
+ * own scratch buffer, so there is no global lock and any number of blur operations may run at the same time.
+ * <p/>
+ * Colors are convolved in premultiplied space to prevent dark fringes around transparent areas. If the given data is
+ * not premultiplied, it will be converted on the fly and converted back once the second pass has been completed. Just
+ * like ConvolveOp.EDGE_NO_OP, the exact blur will not filter pixels closer to the border than the kernel radius.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public final class BlurEngine {
+    /**
+     * Per-thread scratch buffer holding rows or columns of pixels, four float components per pixel.
+     */
+    private static final ThreadLocal<float[]> __lineBuffer = new ThreadLocal<float[]>();
+
+    private BlurEngine() {
+    }
+
+    /**
+     * Creates a normalized, one-dimensional gaussian kernel sized 2 * radius + 1. The kernel values will be multiplied
+     * with the given alpha factor after normalization.
+     *
+     * @param radius      kernel radius, expected to be >= 1.
+     * @param alphaFactor factor which will be multiplied with the normalized kernel.
+     * @return a gaussian kernel for the given radius.
+     */
+    public static float[] createGaussianKernel(final int radius, final float alphaFactor) {
+        if (radius < 1)
+            throw new IllegalArgumentException("Illegal filter radius: expected to be >= 1, was " + radius);
+
+        final float[] kernel = new float[2 * radius + 1];
+        final float sigma = radius / 3f;
+        final float alpha = 2f * sigma * sigma;
+        final float rootAlphaPI = (float) Math.sqrt(alpha * Math.PI);
+        float sum = 0;
+        for (int i = 0; i < kernel.length; i++) {
+            final int d = -((i - radius) * (i - radius));
+            kernel[i] = (float) (Math.exp(d / alpha) / rootAlphaPI);
+            sum += kernel[i];
+        }
+
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] /= sum;
+            kernel[i] *= alphaFactor;
+        }
+        return kernel;
+    }
+
+    /**
+     * Applies a gaussian blur to the given pixel data in place.
+     *
+     * @param pixels        packed ARGB pixel data, one int per pixel, scanline stride equal to the width.
+     * @param width         image width.
+     * @param height        image height.
+     * @param radius        radius of the gaussian kernel.
+     * @param alphaFactor   factor which will be multiplied with the kernel, see {@link ImageUtilities#applyGaussianBlur(java.awt.image.BufferedImage,
+     *                      int, float, boolean)}.
+     * @param premultiplied whether the given pixel data is premultiplied.
+     */
+    public static void gaussianBlur(final int[] pixels, final int width, final int height, final int radius,
+                                    final float alphaFactor, final boolean premultiplied) {
+        convolve(pixels, width, height, createGaussianKernel(radius, alphaFactor), premultiplied);
+    }
+
+    /**
+     * Convolves the given pixel data in place using a separable kernel. The kernel will first be applied to all rows,
+     * then to all columns. The kernel length is expected to be odd.
+     *
+     * @param pixels        packed ARGB pixel data, one int per pixel, scanline stride equal to the width.
+     * @param width         image width.
+     * @param height        image height.
+     * @param kernel        the one-dimensional kernel to apply.
+     * @param premultiplied whether the given pixel data is premultiplied.
+     */
+    public static void convolve(final int[] pixels, final int width, final int height, final float[] kernel,
+                                final boolean premultiplied) {
+        convolve(pixels, width, height, width, kernel, premultiplied);
+    }
+
+    /**
+     * Convolves the given pixel data in place using a separable kernel, see convolve(int[], int, int, float[], boolean).
+     *
+     * @param pixels         packed ARGB pixel data, one int per pixel.
+     * @param width          width of the region to convolve.
+     * @param height         height of the region to convolve.
+     * @param scanlineStride distance between two subsequent rows in the pixel array.
+     * @param kernel         the one-dimensional kernel to apply.
+     * @param premultiplied  whether the given pixel data is premultiplied.
+     */
+    static void convolve(final int[] pixels, final int width, final int height, final int scanlineStride,
+                         final float[] kernel, final boolean premultiplied) {
+        checkBounds(pixels, width, height, scanlineStride);
+        if (kernel == null || kernel.length % 2 == 0)
+            throw new IllegalArgumentException("Parameter 'kernel' must be non-null and of odd length");
+
+        ImageTaskPool.processBands(height, width, new ImageTaskPool.BandTask() {
+            public void processBand(final int from, final int to) {
+                final float[] line = getLineBuffer(width);
+                for (int y = from; y < to; y++) {
+                    loadLine(pixels, y * scanlineStride, 1, width, line, !premultiplied);
+                    convolveLine(line, width, kernel, pixels, y * scanlineStride, 1, false);
+                }
+            }
+        });
+
+        ImageTaskPool.processBands(width, height, new ImageTaskPool.BandTask() {
+            public void processBand(final int from, final int to) {
+                final float[] line = getLineBuffer(height);
+                for (int x = from; x < to; x++) {
+                    loadLine(pixels, x, scanlineStride, height, line, false);
+                    convolveLine(line, height, kernel, pixels, x, scanlineStride, !premultiplied);
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies an approximated gaussian blur to the given pixel data in place. The approximation is computed using three
+     * successive box blurs, each of which is implemented as a running sum. Therefore, the cost per pixel does not depend
+     * on the radius, which makes this method a lot faster than {@link BlurEngine#gaussianBlur(int[], int, int, int,
+     * float, boolean)} for larger radii. The result is visually close to the exact blur, but not identical. Unlike the
+     * exact blur, this method will treat the area outside the image as if the border pixels were extended.
+     *
+     * @param pixels        packed ARGB pixel data, one int per pixel, scanline stride equal to the width.
+     * @param width         image width.
+     * @param height        image height.
+     * @param radius        radius of the gaussian kernel being approximated.
+     * @param alphaFactor   factor which will be multiplied with the result of both the horizontal and the vertical
+     *                      pass, matching the kernel of the exact blur.
+     * @param premultiplied whether the given pixel data is premultiplied.
+     */
+    public static void boxBlurApproximation(final int[] pixels, final int width, final int height, final int radius,
+                                            final float alphaFactor, final boolean premultiplied) {
+        boxBlurApproximation(pixels, width, height, width, radius, alphaFactor, premultiplied);
+    }
+
+    /**
+     * Applies an approximated gaussian blur to the given pixel data in place, see boxBlurApproximation(int[], int,
+     * int, int, float, boolean).
+     *
+     * @param pixels         packed ARGB pixel data, one int per pixel.
+     * @param width          width of the region to blur.
+     * @param height         height of the region to blur.
+     * @param scanlineStride distance between two subsequent rows in the pixel array.
+     * @param radius         radius of the gaussian kernel being approximated.
+     * @param alphaFactor    factor which will be multiplied with the result of each pass.
+     * @param premultiplied  whether the given pixel data is premultiplied.
+     */
+    static void boxBlurApproximation(final int[] pixels, final int width, final int height, final int scanlineStride,
+                                     final int radius, final float alphaFactor, final boolean premultiplied) {
+        if (radius < 1)
+            throw new IllegalArgumentException("Illegal filter radius: expected to be >= 1, was " + radius);
+        checkBounds(pixels, width, height, scanlineStride);
+
+        final int[] boxRadii = computeBoxRadii(radius / 3f, 3);
+
+        ImageTaskPool.processBands(height, width, new ImageTaskPool.BandTask() {
+            public void processBand(final int from, final int to) {
+                final float[] line = getLineBuffer(2 * width);
+                for (int y = from; y < to; y++) {
+                    loadLine(pixels, y * scanlineStride, 1, width, line, !premultiplied);
+                    final int result = boxBlurLine(line, width, boxRadii);
+                    storeLine(line, result, width, alphaFactor, pixels, y * scanlineStride, 1, false);
+                }
+            }
+        });
+
+        ImageTaskPool.processBands(width, height, new ImageTaskPool.BandTask() {
+            public void processBand(final int from, final int to) {
+                final float[] line = getLineBuffer(2 * height);
+                for (int x = from; x < to; x++) {
+                    loadLine(pixels, x, scanlineStride, height, line, false);
+                    final int result = boxBlurLine(line, height, boxRadii);
+                    storeLine(line, result, height, alphaFactor, pixels, x, scanlineStride, !premultiplied);
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes the radii of n successive box blurs approximating a gaussian blur with the given standard deviation.
+     *
+     * @param sigma standard deviation of the gaussian being approximated.
+     * @param n     number of box blurs.
+     * @return the radius for each box blur.
+     */
+    static int[] computeBoxRadii(final float sigma, final int n) {
+        final double idealWidth = Math.sqrt(12 * sigma * sigma / n + 1);
+        int lowerWidth = (int) Math.floor(idealWidth);
+        if (lowerWidth % 2 == 0)
+            lowerWidth--;
+        final int upperWidth = lowerWidth + 2;
+
+        final double idealCount = (12 * sigma * sigma - n * lowerWidth * lowerWidth - 4 * n * lowerWidth - 3 * n) /
+                (-4 * lowerWidth - 4);
+        final long lowerCount = Math.round(idealCount);
+
+        final int[] radii = new int[n];
+        for (int i = 0; i < n; i++)
+            radii[i] = ((i < lowerCount ? lowerWidth : upperWidth) - 1) / 2;
+        return radii;
+    }
+
+    /**
+     * Applies the given sequence of box blurs to a line loaded into the first half of the given buffer. The second half
+     * of the buffer is used as scratch space.
+     *
+     * @param line   the buffer, sized at least 8 * length.
+     * @param length number of pixels in the line.
+     * @param radii  box blur radii.
+     * @return the offset of the result within the buffer (either 0 or 4 * length).
+     */
+    static int boxBlurLine(final float[] line, final int length, final int[] radii) {
+        int source = 0;
+        int destination = 4 * length;
+        for (final int radius : radii) {
+            if (radius < 1)
+                continue;
+            boxBlurLine(line, source, destination, length, radius);
+            final int swap = source;
+            source = destination;
+            destination = swap;
+        }
+        return source;
+    }
+
+    /**
+     * Applies a single box blur using a running sum. Indices beyond the line's ends are clamped to the border pixels.
+     *
+     * @param line        the line buffer.
+     * @param source      offset of the source pixels within the buffer.
+     * @param destination offset of the destination pixels within the buffer.
+     * @param length      number of pixels in the line.
+     * @param radius      radius of the box blur.
+     */
+    private static void boxBlurLine(final float[] line, final int source, final int destination, final int length,
+                                    final int radius) {
+        final float scale = 1f / (2 * radius + 1);
+        final int last = source + 4 * (length - 1);
+
+        float a = (radius + 1) * line[source];
+        float r = (radius + 1) * line[source + 1];
+        float g = (radius + 1) * line[source + 2];
+        float b = (radius + 1) * line[source + 3];
+        for (int i = 1; i <= radius; i++) {
+            final int j = Math.min(source + 4 * i, last);
+            a += line[j];
+            r += line[j + 1];
+            g += line[j + 2];
+            b += line[j + 3];
+        }
+
+        for (int i = 0, j = destination; i < length; i++, j += 4) {
+            line[j] = a * scale;
+            line[j + 1] = r * scale;
+            line[j + 2] = g * scale;
+            line[j + 3] = b * scale;
+
+            final int add = Math.min(source + 4 * (i + radius + 1), last);
+            final int remove = source + 4 * Math.max(i - radius, 0);
+            a += line[add] - line[remove];
+            r += line[add + 1] - line[remove + 1];
+            g += line[add + 2] - line[remove + 2];
+            b += line[add + 3] - line[remove + 3];
+        }
+    }
+
+    /**
+     * Packs a line of pixels and writes it back to the pixel array.
+     *
+     * @param line          the line buffer.
+     * @param start         offset of the first pixel within the line buffer.
+     * @param length        number of pixels in the line.
+     * @param factor        factor which will be multiplied with all components.
+     * @param pixels        the pixel array to write to.
+     * @param offset        index of the first pixel.
+     * @param stride        distance between two subsequent pixels.
+     * @param unpremultiply whether the color components should be divided by the alpha component before writing.
+     */
+    static void storeLine(final float[] line, final int start, final int length, final float factor,
+                          final int[] pixels, final int offset, final int stride, final boolean unpremultiply) {
+        for (int i = 0, index = offset, j = start; i < length; i++, index += stride, j += 4)
+            pixels[index] = pack(factor * line[j], factor * line[j + 1], factor * line[j + 2], factor * line[j + 3],
+                    unpremultiply);
+    }
+
+    /**
+     * Makes sure the given pixel array is large enough for the given dimensions.
+     *
+     * @param pixels         pixel data.
+     * @param width          image width.
+     * @param height         image height.
+     * @param scanlineStride distance between two subsequent rows in the pixel array.
+     */
+    static void checkBounds(final int[] pixels, final int width, final int height, final int scanlineStride) {
+        if (pixels == null)
+            throw new IllegalArgumentException("Parameter 'pixels' must not be null!");
+        if (width < 0 || height < 0 || scanlineStride < width ||
+                (height > 0 && (long) (height - 1) * scanlineStride + width > pixels.length))
+            throw new IllegalArgumentException("Illegal dimensions " + width + "x" + height + " (scanline stride " +
+                    scanlineStride + ") for " + pixels.length + " pixels");
+    }
+
+    /**
+     * Returns the calling thread's line buffer, making sure it can hold the given number of pixels.
+     *
+     * @param length number of pixels the buffer has to hold.
+     * @return the calling thread's line buffer.
+     */
+    static float[] getLineBuffer(final int length) {
+        float[] buffer = __lineBuffer.get();
+        if (buffer == null || buffer.length < 4 * length) {
+            buffer = new float[4 * length];
+            __lineBuffer.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Unpacks a row or column of pixels into the given float buffer, four components per pixel in ARGB order.
+     *
+     * @param pixels      pixel data.
+     * @param offset      index of the first pixel.
+     * @param stride      distance between two subsequent pixels.
+     * @param length      number of pixels to load.
+     * @param line        the destination buffer.
+     * @param premultiply whether the color components should be multiplied with the alpha component.
+     */
+    static void loadLine(final int[] pixels, final int offset, final int stride, final int length,
+                         final float[] line, final boolean premultiply) {
+        for (int i = 0, index = offset, j = 0; i < length; i++, index += stride, j += 4) {
+            final int argb = pixels[index];
+            final int a = argb >>> 24;
+            if (premultiply) {
+                final float factor = a / 255f;
+                line[j] = a;
+                line[j + 1] = ((argb >> 16) & 0xFF) * factor;
+                line[j + 2] = ((argb >> 8) & 0xFF) * factor;
+                line[j + 3] = (argb & 0xFF) * factor;
+            } else {
+                line[j] = a;
+                line[j + 1] = (argb >> 16) & 0xFF;
+                line[j + 2] = (argb >> 8) & 0xFF;
+                line[j + 3] = argb & 0xFF;
+            }
+        }
+    }
+
+    /**
+     * Applies the kernel to the given line and writes the result back to the pixel array. Pixels closer to the line's
+     * ends than the kernel radius will be written back unfiltered.
+     *
+     * @param line          the line, as loaded by loadLine.
+     * @param length        number of pixels in the line.
+     * @param kernel        the kernel to apply.
+     * @param pixels        the pixel array to write to.
+     * @param offset        index of the first pixel.
+     * @param stride        distance between two subsequent pixels.
+     * @param unpremultiply whether the color components should be divided by the alpha component before writing.
+     */
+    static void convolveLine(final float[] line, final int length, final float[] kernel, final int[] pixels,
+                             final int offset, final int stride, final boolean unpremultiply) {
+        final int radius = kernel.length / 2;
+        for (int i = 0, index = offset; i < length; i++, index += stride) {
+            if (i < radius || i >= length - radius) {
+                final int j = 4 * i;
+                pixels[index] = pack(line[j], line[j + 1], line[j + 2], line[j + 3], unpremultiply);
+                continue;
+            }
+
+            float a = 0;
+            float r = 0;
+            float g = 0;
+            float b = 0;
+            for (int k = 0, j = 4 * (i - radius); k < kernel.length; k++, j += 4) {
+                final float weight = kernel[k];
+                a += weight * line[j];
+                r += weight * line[j + 1];
+                g += weight * line[j + 2];
+                b += weight * line[j + 3];
+            }
+            pixels[index] = pack(a, r, g, b, unpremultiply);
+        }
+    }
+
+    /**
+     * Packs the given components into an ARGB int, clamping all components to the valid range. For premultiplied
+     * results, the color components will not exceed the alpha component.
+     *
+     * @param a             alpha component.
+     * @param r             red component.
+     * @param g             green component.
+     * @param b             blue component.
+     * @param unpremultiply whether the color components should be divided by the alpha component.
+     * @return the packed pixel.
+     */
+    static int pack(final float a, float r, float g, float b, final boolean unpremultiply) {
+        final int alpha = clamp((int) (a + 0.5f), 255);
+        if (unpremultiply) {
+            if (alpha == 0)
+                return 0;
+            final float factor = 255f / alpha;
+            r *= factor;
+            g *= factor;
+            b *= factor;
+        }
+        final int max = unpremultiply ? 255 : alpha;
+        return alpha << 24 | clamp((int) (r + 0.5f), max) << 16 | clamp((int) (g + 0.5f), max) << 8 |
+                clamp((int) (b + 0.5f), max);
+    }
+
+    private static int clamp(final int value, final int max) {
+        return value < 0 ? 0 : value > max ? max : value;
+    }
+}
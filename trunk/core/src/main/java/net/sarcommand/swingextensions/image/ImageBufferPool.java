@@ -0,0 +1,231 @@
+package net.sarcommand.swingextensions.image;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * A bounded pool of BufferedImage instances, used to avoid allocating large temporary images over and over again (for
+ * instance while a window is being resized). Images are grouped by image type and size class: A request for a w x h
+ * image will be served by an image whose dimensions have been rounded up to the next size class, so buffers can be
+ * reused even if the requested size changes slightly. Size classes grow in quarter steps of the next power of two,
+ * which limits the wasted memory to about 25% per dimension.
+ * <p/>
+ * Images obtained using acquire(int, int, int) have to be handed back using release(BufferedImage) once they are no
+ * longer needed. Since the image may be larger than requested, clients have to restrict themselves to the requested
+ * region, which will be cleared upon acquisition. The total memory held by the pool is limited; if releasing an image
+ * would exceed the memory cap, the least recently used images will be discarded.
+ * <p/>
+ * This class is thread safe. Most clients should use the shared instance returned by getSharedInstance().
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public class ImageBufferPool {
+    /**
+     * The default memory cap of the shared instance: 64 MB.
+     */
+    public static final long DEFAULT_MEMORY_CAP = 64L * 1024 * 1024;
+
+    /**
+     * The smallest size class.
+     */
+    protected static final int MINIMUM_SIZE_CLASS = 64;
+
+    private static ImageBufferPool __sharedInstance;
+
+    /**
+     * Pooled images by key, in access order. The least recently used key comes first.
+     */
+    protected final LinkedHashMap<Long, LinkedList<BufferedImage>> _pool;
+
+    protected long _memoryCap;
+    protected long _pooledBytes;
+
+    /**
+     * Returns the shared pool instance used by the library's components.
+     *
+     * @return the shared pool instance.
+     */
+    public static synchronized ImageBufferPool getSharedInstance() {
+        if (__sharedInstance == null)
+            __sharedInstance = new ImageBufferPool(DEFAULT_MEMORY_CAP);
+        return __sharedInstance;
+    }
+
+    /**
+     * Creates a new pool holding at most the given number of bytes.
+     *
+     * @param memoryCap maximum number of bytes of image data kept in the pool.
+     */
+    public ImageBufferPool(final long memoryCap) {
+        _pool = new LinkedHashMap<Long, LinkedList<BufferedImage>>(16, 0.75f, true);
+        setMemoryCap(memoryCap);
+    }
+
+    /**
+     * Returns an image of the given type which is at least width x height pixels large. The region (0, 0, width,
+     * height) will be cleared. The image should be handed back using release(BufferedImage) once it is no longer
+     * needed.
+     *
+     * @param width     minimum image width.
+     * @param height    minimum image height.
+     * @param imageType image type, one of the BufferedImage.TYPE_XXX constants except TYPE_CUSTOM.
+     * @return an image large enough for the requested region.
+     */
+    public BufferedImage acquire(final int width, final int height, final int imageType) {
+        if (width < 1 || height < 1)
+            throw new IllegalArgumentException("Illegal dimensions " + width + "x" + height);
+        if (imageType == BufferedImage.TYPE_CUSTOM)
+            throw new IllegalArgumentException("Custom image types can't be pooled");
+
+        final int classWidth = getSizeClass(width);
+        final int classHeight = getSizeClass(height);
+        BufferedImage image = null;
+        synchronized (this) {
+            final LinkedList<BufferedImage> images = _pool.get(createKey(classWidth, classHeight, imageType));
+            if (images != null && !images.isEmpty()) {
+                image = images.removeFirst();
+                _pooledBytes -= getSize(image);
+            }
+        }
+
+        if (image == null)
+            return new BufferedImage(classWidth, classHeight, imageType);
+
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setComposite(AlphaComposite.Clear);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        return image;
+    }
+
+    /**
+     * Hands an image back to the pool. The image must not be used by the caller afterwards. Images whose size does not
+     * match a size class (for instance because they were not obtained from a pool) will be ignored.
+     *
+     * @param image the image to release, may be null.
+     */
+    public void release(final BufferedImage image) {
+        if (image == null || image.getType() == BufferedImage.TYPE_CUSTOM)
+            return;
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        if (getSizeClass(width) != width || getSizeClass(height) != height)
+            return;
+
+        final long size = getSize(image);
+        synchronized (this) {
+            if (size > _memoryCap)
+                return;
+
+            final Long key = createKey(width, height, image.getType());
+            LinkedList<BufferedImage> images = _pool.get(key);
+            if (images == null) {
+                images = new LinkedList<BufferedImage>();
+                _pool.put(key, images);
+            }
+            for (BufferedImage pooled : images)
+                if (pooled == image)
+                    return;
+            images.addFirst(image);
+            _pooledBytes += size;
+            trimToSize(_memoryCap);
+        }
+    }
+
+    /**
+     * Discards all pooled images.
+     */
+    public synchronized void clear() {
+        _pool.clear();
+        _pooledBytes = 0;
+    }
+
+    /**
+     * Returns the maximum number of bytes of image data kept in the pool.
+     *
+     * @return the maximum number of bytes of image data kept in the pool.
+     */
+    public synchronized long getMemoryCap() {
+        return _memoryCap;
+    }
+
+    /**
+     * Sets the maximum number of bytes of image data kept in the pool. If the pool currently holds more, the least
+     * recently used images will be discarded.
+     *
+     * @param memoryCap the maximum number of bytes of image data kept in the pool.
+     */
+    public synchronized void setMemoryCap(final long memoryCap) {
+        if (memoryCap < 0)
+            throw new IllegalArgumentException("Illegal memory cap: expected to be >= 0, was " + memoryCap);
+        _memoryCap = memoryCap;
+        trimToSize(memoryCap);
+    }
+
+    /**
+     * Returns the number of bytes of image data currently held by the pool.
+     *
+     * @return the number of bytes of image data currently held by the pool.
+     */
+    public synchronized long getPooledBytes() {
+        return _pooledBytes;
+    }
+
+    /**
+     * Discards least recently used images until the pool holds no more than the given number of bytes.
+     *
+     * @param bytes the maximum number of bytes to keep.
+     */
+    protected void trimToSize(final long bytes) {
+        final Iterator<Map.Entry<Long, LinkedList<BufferedImage>>> iterator = _pool.entrySet().iterator();
+        while (_pooledBytes > bytes && iterator.hasNext()) {
+            final LinkedList<BufferedImage> images = iterator.next().getValue();
+            while (_pooledBytes > bytes && !images.isEmpty())
+                _pooledBytes -= getSize(images.removeLast());
+            if (images.isEmpty())
+                iterator.remove();
+        }
+    }
+
+    /**
+     * Rounds the given dimension up to its size class.
+     *
+     * @param size a width or height.
+     * @return the corresponding size class.
+     */
+    protected static int getSizeClass(final int size) {
+        if (size <= MINIMUM_SIZE_CLASS)
+            return MINIMUM_SIZE_CLASS;
+        final int step = Integer.highestOneBit(size - 1) / 4;
+        return (size + step - 1) / step * step;
+    }
+
+    protected static Long createKey(final int classWidth, final int classHeight, final int imageType) {
+        return ((long) imageType << 48) | ((long) classWidth << 24) | classHeight;
+    }
+
+    /**
+     * Returns the approximate number of bytes occupied by the given image's pixel data.
+     *
+     * @param image the image.
+     * @return the approximate number of bytes occupied by the image's pixel data.
+     */
+    protected static long getSize(final BufferedImage image) {
+        final DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+}
@@ -1,18 +1,46 @@
 package net.sarcommand.swingextensions.image;
 
+import net.sarcommand.swingextensions.internal.SwingExtLogger;
+import net.sarcommand.swingextensions.internal.SwingExtLogging;
+import net.sarcommand.swingextensions.io.FileChannelImageInputStream;
+import net.sarcommand.swingextensions.utilities.LoadingScheduler;
+
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.*;
+import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.Semaphore;
+import java.util.Iterator;
 
 /**
  * A reuseable, interruptible task used for loading images on a background thread. The loadImage will immediately
  * interrupt any loading operation already in progress and import data from the given InputStream. Once the image is
- * loaded, the abstract imageLoaded method will be invoked on the event dispatch thread. The cancel method will block
- * until the pending load operation has been terminated, or return immediately if no image is being loaded.
+ * loaded, the abstract imageLoaded method will be invoked on the event dispatch thread. Once a load operation has been
+ * cancelled or superseded, its result will never be delivered.
+ * <p/>
+ * Images are decoded on the worker threads of a LoadingScheduler, by default the shared instance. Each task is used as
+ * the request key, so a new load operation supersedes the previous one of the same task, while several tasks can load
+ * images concurrently. The priority can be lowered to LoadingScheduler.Priority.PREFETCH for images which are not
+ * displayed yet.
+ * <p/>
+ * If a target size is passed to loadImage, the image will be decoded with a subsampling factor chosen so that the
+ * result is still large enough to be scaled into the target size without upscaling. If the format provides an embedded
+ * thumbnail of sufficient size, the thumbnail will be used instead. Additionally, a source region can be specified to
+ * decode only part of the image. Both operations are handled by the ImageReader itself and avoid decoding the full
+ * resolution image.
+ * <p/>
+ * Local files are read through a FileChannelImageInputStream. If useFileChannel is disabled, or the channel could not
+ * be opened, they will be read through a buffered FileInputStream instead.
+ * <p/>
+ * The source stream will be closed once the load operation has been finished or cancelled.
  * <p/>
  * <hr/> Copyright 2006-2012 Torsten Heup
  * <p/>
@@ -26,16 +54,29 @@ import java.util.concurrent.Semaphore;
  * specific language governing permissions and limitations under the License.
  */
 public abstract class ImageLoaderTask implements Runnable {
-    protected Semaphore _syncSemaphore;
-    protected Thread _thread;
-    protected volatile boolean _cancelled;
-    protected volatile boolean _running;
+    private static final SwingExtLogger __log = SwingExtLogging.getLogger(ImageLoaderTask.class);
+
+    protected final LoadingScheduler _scheduler;
+    protected volatile LoadingScheduler.Priority _priority;
+    protected volatile LoadRequest _currentRequest;
     protected volatile boolean _disposed;
-    protected LinkedBlockingQueue<InputStream> _queue;
+    protected volatile boolean _useFileChannel;
 
     public ImageLoaderTask() {
-        _syncSemaphore = new Semaphore(1);
-        _queue = new LinkedBlockingQueue<InputStream>(1);
+        this(LoadingScheduler.getSharedInstance());
+    }
+
+    /**
+     * Creates a new task decoding images on the given scheduler.
+     *
+     * @param scheduler the scheduler to use.
+     */
+    public ImageLoaderTask(final LoadingScheduler scheduler) {
+        if (scheduler == null)
+            throw new IllegalArgumentException("Parameter 'scheduler' must not be null!");
+        _scheduler = scheduler;
+        _priority = LoadingScheduler.Priority.VISIBLE;
+        _useFileChannel = true;
     }
 
     /**
@@ -45,84 +86,266 @@ public abstract class ImageLoaderTask implements Runnable {
      * @param source input source from which to load the image data.
      */
     public void loadImage(final InputStream source) {
-        if (_thread == null || _thread.isInterrupted()) {
-            _thread = new Thread(this);
-            _thread.setName("SearchThread");
-            _thread.setPriority(Thread.NORM_PRIORITY);
-            _thread.start();
-        }
+        loadImage(source, null, null);
+    }
 
-        _cancelled = true;
-        _syncSemaphore.acquireUninterruptibly();
-        _cancelled = false;
-        try {
-            _queue.put(source);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Will attempt to load an image from the given location on a background thread, decoding it at a reduced resolution
+     * suitable for displaying it within the given target size. If another image is currently being loaded, the previous
+     * load operation will be cancelled.
+     *
+     * @param source     input source from which to load the image data.
+     * @param targetSize the size the image will be scaled into, may be null to decode the image in full resolution.
+     */
+    public void loadImage(final InputStream source, final Dimension targetSize) {
+        loadImage(source, null, targetSize);
     }
 
+    /**
+     * Will attempt to load the given region of an image from the given location on a background thread. If another image
+     * is currently being loaded, the previous load operation will be cancelled.
+     *
+     * @param source       input source from which to load the image data.
+     * @param sourceRegion the region of the image to decode in image coordinates, may be null to decode the entire
+     *                     image.
+     * @param targetSize   the size the image will be scaled into, may be null to decode the image in full resolution.
+     */
+    public void loadImage(final InputStream source, final Rectangle sourceRegion, final Dimension targetSize) {
+        if (source == null)
+            throw new IllegalArgumentException("Parameter 'source' must not be null!");
+        if (targetSize != null && (targetSize.width < 1 || targetSize.height < 1))
+            throw new IllegalArgumentException("Parameter 'targetSize' must not be empty!");
+
+        schedule(new LoadRequest(source, null, sourceRegion == null ? null : new Rectangle(sourceRegion),
+                targetSize == null ? null : new Dimension(targetSize)));
+    }
+
+    /**
+     * Will attempt to load an image from the given file on a background thread, decoding it at a reduced resolution
+     * suitable for displaying it within the given target size. If another image is currently being loaded, the previous
+     * load operation will be cancelled.
+     *
+     * @param file       the image file.
+     * @param targetSize the size the image will be scaled into, may be null to decode the image in full resolution.
+     */
+    public void loadImage(final File file, final Dimension targetSize) {
+        loadImage(file, null, targetSize);
+    }
+
+    /**
+     * Will attempt to load the given region of an image from the given file on a background thread. If another image is
+     * currently being loaded, the previous load operation will be cancelled.
+     *
+     * @param file         the image file.
+     * @param sourceRegion the region of the image to decode in image coordinates, may be null to decode the entire
+     *                     image.
+     * @param targetSize   the size the image will be scaled into, may be null to decode the image in full resolution.
+     */
+    public void loadImage(final File file, final Rectangle sourceRegion, final Dimension targetSize) {
+        if (file == null)
+            throw new IllegalArgumentException("Parameter 'file' must not be null!");
+        if (targetSize != null && (targetSize.width < 1 || targetSize.height < 1))
+            throw new IllegalArgumentException("Parameter 'targetSize' must not be empty!");
+
+        schedule(new LoadRequest(null, file, sourceRegion == null ? null : new Rectangle(sourceRegion),
+                targetSize == null ? null : new Dimension(targetSize)));
+    }
+
+    /**
+     * Schedules the given request, superseding the current one.
+     *
+     * @param request the new load request.
+     */
+    protected void schedule(final LoadRequest request) {
+        if (_disposed)
+            throw new IllegalStateException("This task has been disposed of.");
+
+        final LoadRequest previous = _currentRequest;
+        _currentRequest = request;
+        _scheduler.schedule(this, _priority, request);
+        if (previous != null)
+            previous.cancel();
+    }
+
+    /**
+     * Performs the current load operation on the calling thread, unless it has already been started or cancelled.
+     * Load operations are executed by the LoadingScheduler, so there is no need to invoke this method.
+     *
+     * @deprecated use one of the loadImage() methods, which schedule the load operation themselves.
+     */
+    @Deprecated
     public void run() {
+        final LoadRequest request = _currentRequest;
+        if (request != null)
+            request.run();
+    }
+
+    /**
+     * Decodes the image described by the given request. Returns null if the source could not be decoded or if the
+     * operation was cancelled.
+     *
+     * @param request the pending load request.
+     * @return the decoded image, or null.
+     * @throws IOException if the image data could not be read.
+     */
+    protected BufferedImage decode(final LoadRequest request) throws IOException {
+        final ImageInputStream imageStream = request.openStream();
+        if (imageStream == null)
+            return null;
         try {
-            while (!_disposed) {
-                final InputStream inStream = _queue.take();
-                _running = true;
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(imageStream);
+            if (!readers.hasNext())
+                return null;
 
-                final InputStream streamWrapper = new InputStream() {
-                    public int read() throws IOException {
-                        return isCancelled() ? -1 : inStream.read();
-                    }
-                };
+            final ImageReader reader = readers.next();
+            reader.setInput(imageStream, true, true);
+            reader.addIIOReadProgressListener(new AbortOnCancelListener(request));
+            try {
+                if (request.isCancelled())
+                    return null;
+                final BufferedImage image = read(reader, request._sourceRegion, request._targetSize);
+                return request.isCancelled() ? null : image;
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            imageStream.close();
+        }
+    }
 
-                final BufferedImage result = ImageIO.read(streamWrapper);
+    /**
+     * Reads the first image from the given reader, using an embedded thumbnail or a subsampling factor appropriate for
+     * the target size where possible.
+     *
+     * @param reader       the reader, with its input already set.
+     * @param sourceRegion the region to decode, or null for the entire image.
+     * @param targetSize   the target size, or null to decode in full resolution.
+     * @return the decoded image, or null if the source region does not intersect the image.
+     * @throws IOException if the image data could not be read.
+     */
+    protected BufferedImage read(final ImageReader reader, final Rectangle sourceRegion, final Dimension targetSize)
+            throws IOException {
+        final Rectangle bounds = new Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0));
+        final Rectangle region = sourceRegion == null ? bounds : sourceRegion.intersection(bounds);
+        if (region.isEmpty())
+            return null;
 
-                if (!isCancelled()) {
-                    SwingUtilities.invokeLater(new Runnable() {
-                        public void run() {
-                            imageLoaded(result);
-                        }
-                    });
-                }
-                _running = false;
-                _syncSemaphore.release();
+        if (targetSize != null && sourceRegion == null && reader.readerSupportsThumbnails()) {
+            final int thumbnailIndex = findThumbnail(reader, targetSize);
+            if (thumbnailIndex >= 0)
+                return reader.readThumbnail(0, thumbnailIndex);
+        }
+
+        final ImageReadParam param = reader.getDefaultReadParam();
+        if (!region.equals(bounds))
+            param.setSourceRegion(region);
+        if (targetSize != null) {
+            final int subsampling = getSubsampling(region.width, region.height, targetSize);
+            if (subsampling > 1)
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        }
+        return reader.read(0, param);
+    }
+
+    /**
+     * Returns the index of the smallest embedded thumbnail which can be scaled into the target size without being
+     * upscaled, or -1 if there is no such thumbnail.
+     *
+     * @param reader     the reader, with its input already set.
+     * @param targetSize the target size.
+     * @return index of the thumbnail to use, or -1.
+     * @throws IOException if the thumbnail information could not be read.
+     */
+    protected int findThumbnail(final ImageReader reader, final Dimension targetSize) throws IOException {
+        if (!reader.hasThumbnails(0))
+            return -1;
+
+        int bestIndex = -1;
+        long bestArea = Long.MAX_VALUE;
+        final int count = reader.getNumThumbnails(0);
+        for (int i = 0; i < count; i++) {
+            final int width = reader.getThumbnailWidth(0, i);
+            final int height = reader.getThumbnailHeight(0, i);
+            final long area = (long) width * height;
+            if ((width >= targetSize.width || height >= targetSize.height) && area < bestArea) {
+                bestIndex = i;
+                bestArea = area;
             }
-        } catch (final Exception e) {
-            SwingUtilities.invokeLater(new Runnable() {
-                public void run() {
-                    throw new RuntimeException(e);
-                }
-            });
         }
+        return bestIndex;
+    }
+
+    /**
+     * Returns the largest subsampling factor for which a region of the given size still covers the target size once
+     * scaled to fit.
+     *
+     * @param width      width of the decoded region.
+     * @param height     height of the decoded region.
+     * @param targetSize the target size.
+     * @return the subsampling factor, at least 1.
+     */
+    protected static int getSubsampling(final int width, final int height, final Dimension targetSize) {
+        return Math.max(1, Math.max(width / targetSize.width, height / targetSize.height));
     }
 
     /**
-     * Cancels the currently running load operation, if there is one. This method will block until loading has been
-     * terminated..
+     * Cancels the currently running load operation, if there is one. The result of the cancelled operation will not be
+     * delivered to imageLoaded.
      */
     public void cancel() {
-        if (_running) {
-            _cancelled = true;
-            _syncSemaphore.acquireUninterruptibly();
-            _syncSemaphore.release();
+        final LoadRequest request = _currentRequest;
+        if (request != null) {
+            request.cancel();
+            _scheduler.cancel(this);
         }
     }
 
     /**
-     * Returns whether the loading operation has been cancelled.
+     * Returns whether the current loading operation has been cancelled.
      *
      * @return whether the loading operation has been cancelled.
      */
     public boolean isCancelled() {
-        return _cancelled;
+        final LoadRequest request = _currentRequest;
+        return request != null && request.isCancelled();
+    }
+
+    /**
+     * Sets whether local files should be read through a FileChannel. If disabled, files will be read through a
+     * buffered FileInputStream.
+     *
+     * @param useFileChannel whether to read files through a FileChannel.
+     */
+    public void setUseFileChannel(final boolean useFileChannel) {
+        _useFileChannel = useFileChannel;
+    }
+
+    public boolean isUseFileChannel() {
+        return _useFileChannel;
     }
 
     /**
-     * Disposes of this task, freeing the underlying background thread.
+     * Sets the priority used for subsequent load operations.
+     *
+     * @param priority the scheduling priority.
+     */
+    public void setPriority(final LoadingScheduler.Priority priority) {
+        if (priority == null)
+            throw new IllegalArgumentException("Parameter 'priority' must not be null!");
+        _priority = priority;
+        _scheduler.setPriority(this, priority);
+    }
+
+    public LoadingScheduler.Priority getPriority() {
+        return _priority;
+    }
+
+    /**
+     * Disposes of this task, cancelling the current load operation.
      */
     public void dispose() {
         _disposed = true;
         cancel();
-        _thread = null;
     }
 
     /**
@@ -140,4 +363,163 @@ public abstract class ImageLoaderTask implements Runnable {
      * @param image image loaded by a previus loadImage(InputStream) call.
      */
     public abstract void imageLoaded(final BufferedImage image);
+
+    /**
+     * A single load operation, executed by the scheduler.
+     */
+    protected class LoadRequest implements Runnable, LoadingScheduler.Cancellable {
+        protected final InputStream _source;
+        protected final File _file;
+        protected volatile InputStream _fileStream;
+        protected final Rectangle _sourceRegion;
+        protected final Dimension _targetSize;
+        protected volatile boolean _cancelled;
+        protected boolean _started;
+
+        /**
+         * Creates a new request. Exactly one of source and file must be provided.
+         *
+         * @param source       the stream to read from, or null.
+         * @param file         the file to read from, or null.
+         * @param sourceRegion the region to decode, or null.
+         * @param targetSize   the target size, or null.
+         */
+        public LoadRequest(final InputStream source, final File file, final Rectangle sourceRegion,
+                           final Dimension targetSize) {
+            _source = source;
+            _file = file;
+            _sourceRegion = sourceRegion;
+            _targetSize = targetSize;
+        }
+
+        public void run() {
+            synchronized (this) {
+                if (_cancelled || _started)
+                    return;
+                _started = true;
+            }
+
+            BufferedImage image;
+            try {
+                image = decode(this);
+            } catch (IOException e) {
+                if (!isCancelled())
+                    __log.error("Could not decode image", e);
+                image = null;
+            } finally {
+                closeSource();
+            }
+
+            final BufferedImage result = image;
+            if (!isCancelled()) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (_currentRequest == LoadRequest.this && !isCancelled() && !_disposed)
+                            imageLoaded(result);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Cancels this request. If the image is being decoded right now, the reader will be aborted on the decoding
+         * thread by the AbortOnCancelListener. If decoding has not started yet, the source stream will be closed
+         * immediately.
+         */
+        public void cancel() {
+            _cancelled = true;
+
+            final boolean started;
+            synchronized (this) {
+                started = _started;
+                _started = true;
+            }
+            if (!started)
+                closeSource();
+        }
+
+        public boolean isCancelled() {
+            return _cancelled;
+        }
+
+        /**
+         * Opens the ImageInputStream to decode from.
+         *
+         * @return the stream, or null if no suitable stream could be created.
+         * @throws IOException if the source could not be opened.
+         */
+        protected ImageInputStream openStream() throws IOException {
+            if (_file == null)
+                return ImageIO.createImageInputStream(_source);
+
+            if (_useFileChannel) {
+                try {
+                    return new FileChannelImageInputStream(_file);
+                } catch (IOException e) {
+                    __log.debug("Could not open a channel for " + _file + ", falling back to stream", e);
+                }
+            }
+            _fileStream = new BufferedInputStream(new FileInputStream(_file));
+            return ImageIO.createImageInputStream(_fileStream);
+        }
+
+        protected void closeSource() {
+            final InputStream source = _source != null ? _source : _fileStream;
+            if (source == null)
+                return;
+            try {
+                source.close();
+            } catch (IOException e) {
+                __log.warn("Could not close image source", e);
+            }
+        }
+    }
+
+    /**
+     * Aborts the reader once the request has been cancelled. ImageReader.abort() must not be invoked from another thread
+     * while the reader is decoding, as some readers (like the JPEG reader) only permit access from the thread holding
+     * them, so the request is checked from the progress callbacks, which are invoked on the decoding thread.
+     */
+    protected static class AbortOnCancelListener implements IIOReadProgressListener {
+        protected final LoadRequest _request;
+
+        public AbortOnCancelListener(final LoadRequest request) {
+            _request = request;
+        }
+
+        public void imageStarted(final ImageReader source, final int imageIndex) {
+            if (_request.isCancelled())
+                source.abort();
+        }
+
+        public void thumbnailStarted(final ImageReader source, final int imageIndex, final int thumbnailIndex) {
+            if (_request.isCancelled())
+                source.abort();
+        }
+
+        public void imageProgress(final ImageReader source, final float percentageDone) {
+            if (_request.isCancelled())
+                source.abort();
+        }
+
+        public void thumbnailProgress(final ImageReader source, final float percentageDone) {
+            if (_request.isCancelled())
+                source.abort();
+        }
+
+        public void sequenceStarted(final ImageReader source, final int minIndex) {
+        }
+
+        public void sequenceComplete(final ImageReader source) {
+        }
+
+        public void imageComplete(final ImageReader source) {
+        }
+
+        public void thumbnailComplete(final ImageReader source) {
+        }
+
+        public void readAborted(final ImageReader source) {
+        }
+    }
 }
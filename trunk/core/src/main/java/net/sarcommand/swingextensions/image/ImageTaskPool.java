@@ -0,0 +1,128 @@
+package net.sarcommand.swingextensions.image;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Internal helper class providing the fork/join pool used by the pixel processing code in this package. Work is split
+ * into bands (rows or columns) which are processed in parallel. Small workloads will be processed on the calling thread
+ * right away, as forking would cost more than it gains.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+final class ImageTaskPool {
+    /**
+     * Workloads with fewer pixels than this threshold won't be split at all.
+     */
+    static final int SEQUENTIAL_THRESHOLD = 64 * 1024;
+
+    private static ForkJoinPool __pool;
+
+    private ImageTaskPool() {
+    }
+
+    /**
+     * Returns the shared fork/join pool, creating it if necessary. The pool uses daemon threads, so it won't prevent
+     * the vm from shutting down.
+     *
+     * @return the shared fork/join pool.
+     */
+    static synchronized ForkJoinPool getPool() {
+        if (__pool == null) {
+            __pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                    new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                        public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+                            final ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+                            };
+                            thread.setName("ImageTaskPool-" + thread.getPoolIndex());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, null, false);
+        }
+        return __pool;
+    }
+
+    /**
+     * Processes the band [0, count) using the given task. The band will be split into chunks which are processed in
+     * parallel if the total workload (count * unitSize) is large enough. This method will block until all chunks have
+     * been processed.
+     *
+     * @param count    number of units (e.g. rows or columns) to process.
+     * @param unitSize approximate number of pixels per unit, used to decide whether splitting is worthwhile.
+     * @param task     the task processing the individual chunks.
+     */
+    static void processBands(final int count, final int unitSize, final BandTask task) {
+        if (count <= 0)
+            return;
+        final long workload = (long) count * unitSize;
+        if (workload < SEQUENTIAL_THRESHOLD || count == 1) {
+            task.processBand(0, count);
+            return;
+        }
+
+        final ForkJoinPool pool = getPool();
+        final int minChunk = Math.max(1, SEQUENTIAL_THRESHOLD / Math.max(1, unitSize) / 4);
+        final int chunk = Math.max(minChunk, count / (pool.getParallelism() * 4));
+        final BandAction action = new BandAction(task, 0, count, chunk);
+        if (isWorkerOf(pool))
+            action.invoke();
+        else
+            pool.invoke(action);
+    }
+
+    private static boolean isWorkerOf(final ForkJoinPool pool) {
+        final Thread current = Thread.currentThread();
+        return current instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) current).getPool() == pool;
+    }
+
+    /**
+     * Callback interface for processing a chunk of a band.
+     */
+    interface BandTask {
+        /**
+         * Processes the units [from, to).
+         *
+         * @param from first unit to process (inclusive).
+         * @param to   last unit to process (exclusive).
+         */
+        void processBand(final int from, final int to);
+    }
+
+    /**
+     * Recursively splits a band in halves until the chunks have reached the minimum size.
+     */
+    private static class BandAction extends RecursiveAction {
+        private final BandTask _task;
+        private final int _from;
+        private final int _to;
+        private final int _chunk;
+
+        BandAction(final BandTask task, final int from, final int to, final int chunk) {
+            _task = task;
+            _from = from;
+            _to = to;
+            _chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= _chunk) {
+                _task.processBand(_from, _to);
+                return;
+            }
+            final int middle = (_from + _to) >>> 1;
+            invokeAll(new BandAction(_task, _from, middle, _chunk), new BandAction(_task, middle, _to, _chunk));
+        }
+    }
+}
@@ -2,7 +2,6 @@ package net.sarcommand.swingextensions.image;
 
 import java.awt.*;
 import java.awt.image.*;
-import java.lang.ref.SoftReference;
 
 /**
  * This class provides a set of methods aroung image and graphics manipulation. Most of those manipulation are mere
@@ -20,8 +19,55 @@ import java.lang.ref.SoftReference;
  * specific language governing permissions and limitations under the License.
  */
 public class ImageUtilities {
-    private static SoftReference<BufferedImage> _buffer0;
-    private static SoftReference<BufferedImage> _buffer1;
+    /**
+     * Constants determining how a gaussian blur will be computed.
+     */
+    public static enum BlurMode {
+        /**
+         * Uses the exact gaussian kernel. The cost per pixel grows linearly with the filter radius.
+         */
+        EXACT,
+        /**
+         * Approximates the gaussian kernel using three successive box blurs. The cost per pixel does not depend on the
+         * filter radius, but the result is not identical to the exact blur.
+         */
+        BOX_APPROXIMATION,
+        /**
+         * Uses the exact kernel for small radii and the box approximation for radii above the threshold set using
+         * {@link ImageUtilities#setApproximationThreshold(int)}.
+         */
+        AUTOMATIC
+    }
+
+    /**
+     * The default radius above which BlurMode.AUTOMATIC will switch to the box approximation.
+     */
+    public static final int DEFAULT_APPROXIMATION_THRESHOLD = 16;
+
+    private static volatile int __approximationThreshold = DEFAULT_APPROXIMATION_THRESHOLD;
+
+    /**
+     * Returns the filter radius above which blurs using BlurMode.AUTOMATIC will use the box approximation instead of
+     * the exact gaussian kernel.
+     *
+     * @return the filter radius above which the box approximation will be used.
+     */
+    public static int getApproximationThreshold() {
+        return __approximationThreshold;
+    }
+
+    /**
+     * Sets the filter radius above which blurs using BlurMode.AUTOMATIC will use the box approximation instead of the
+     * exact gaussian kernel. Defaults to DEFAULT_APPROXIMATION_THRESHOLD.
+     *
+     * @param approximationThreshold the filter radius above which the box approximation will be used.
+     */
+    public static void setApproximationThreshold(final int approximationThreshold) {
+        if (approximationThreshold < 0)
+            throw new IllegalArgumentException("Illegal threshold: expected to be >= 0, was " +
+                    approximationThreshold);
+        __approximationThreshold = approximationThreshold;
+    }
 
     /**
      * Creates a very simple implementation of a 3x3 box blur operation.
@@ -54,7 +100,9 @@ public class ImageUtilities {
      * factor which will be multiplied with the filter's result. Also, you can specify whether the blurred image should
      * be rendered into a newly created BufferedImage instance or into the original image. If you request a new image
      * instance, the result will be larger than the original one as a (2*filterradius) pixel wide padding will be
-     * applied.
+     * applied. The blur itself is computed by the {@link BlurEngine}, so this method may safely be invoked from several
+     * threads at the same time. Radii above the approximation threshold will be blurred using the box approximation,
+     * see {@link BlurMode#AUTOMATIC}.
      *
      * @param image                         the image to be blurred.
      * @param filterRadius                  the radius of the gaussian filter to apply. The corresponding kernel will be
@@ -70,60 +118,122 @@ public class ImageUtilities {
     public static BufferedImage applyGaussianBlur(final BufferedImage image, final int filterRadius,
                                                   final float alphaFactor,
                                                   final boolean useOriginalImageAsDestination) {
+        return applyGaussianBlur(image, filterRadius, alphaFactor, useOriginalImageAsDestination, BlurMode.AUTOMATIC);
+    }
+
+    /**
+     * Applies a gaussian blur filter to the given image, as described in {@link ImageUtilities#applyGaussianBlur(java.awt.image.BufferedImage,
+     * int, float, boolean)}. The blur mode determines whether the exact gaussian kernel or the faster box approximation
+     * will be used.
+     *
+     * @param image                         the image to be blurred.
+     * @param filterRadius                  the radius of the gaussian filter to apply.
+     * @param alphaFactor                   a factor which will be multiplied with the filtered image.
+     * @param useOriginalImageAsDestination Determines whether the blur result should be rendered into the original
+     *                                      image or into a new, padded image instance.
+     * @param mode                          determines how the blur will be computed.
+     * @return An image instance containing a blurred version of the given image.
+     */
+    public static BufferedImage applyGaussianBlur(final BufferedImage image, final int filterRadius,
+                                                  final float alphaFactor,
+                                                  final boolean useOriginalImageAsDestination, final BlurMode mode) {
         if (filterRadius < 1)
             throw new IllegalArgumentException("Illegal filter radius: expected to be >= 1, was " + filterRadius);
+        if (mode == null)
+            throw new IllegalArgumentException("Parameter 'mode' must not be null!");
 
-        float[] kernel = new float[2 * filterRadius + 1];
+        if (useOriginalImageAsDestination) {
+            final int[] pixels = getPackedPixelData(image);
+            if (pixels != null) {
+                blur(pixels, image.getWidth(), image.getHeight(), image.getWidth(), filterRadius, alphaFactor,
+                        image.isAlphaPremultiplied(), mode);
+                return image;
+            }
 
-        final float sigma = filterRadius / 3f;
-        final float alpha = 2f * sigma * sigma;
-        final float rootAlphaPI = (float) Math.sqrt(alpha * Math.PI);
-        float sum = 0;
-        for (int i = -0; i < kernel.length; i++) {
-            final int d = -((i - filterRadius) * (i - filterRadius));
-            kernel[i] = (float) (Math.exp(d / alpha) / rootAlphaPI);
-            sum += kernel[i];
-        }
+            final int width = image.getWidth();
+            final int height = image.getHeight();
+            final ImageBufferPool pool = ImageBufferPool.getSharedInstance();
+            final BufferedImage buffer = pool.acquire(width, height, BufferedImage.TYPE_INT_ARGB);
+            try {
+                final Graphics2D bufferGraphics = buffer.createGraphics();
+                bufferGraphics.drawImage(image, 0, 0, null);
+                bufferGraphics.dispose();
+                blur(getPackedPixelData(buffer), width, height, buffer.getWidth(), filterRadius, alphaFactor, false,
+                        mode);
 
-        for (int i = 0; i < kernel.length; i++) {
-            kernel[i] /= sum;
-            kernel[i] *= alphaFactor;
+                final Graphics2D graphics = image.createGraphics();
+                graphics.setComposite(AlphaComposite.Src);
+                graphics.drawImage(buffer, 0, 0, width, height, 0, 0, width, height, null);
+                graphics.dispose();
+            } finally {
+                pool.release(buffer);
+            }
+            return image;
         }
 
-        final Kernel horizontalKernel = new Kernel(kernel.length, 1, kernel);
-        final Kernel verticalKernel = new Kernel(1, kernel.length, kernel);
-
-        synchronized (ImageUtilities.class) {
-            final int blurredWidth = useOriginalImageAsDestination ? image.getWidth() :
-                    image.getWidth() + 4 * filterRadius;
-            final int blurredHeight = useOriginalImageAsDestination ? image.getHeight() :
-                    image.getHeight() + 4 * filterRadius;
-
-            final BufferedImage img0 = ensureBuffer0Capacity(blurredWidth, blurredHeight);
-            final Graphics2D graphics0 = img0.createGraphics();
-            graphics0.drawImage(image, null, useOriginalImageAsDestination ? 0 : 2 * filterRadius,
-                    useOriginalImageAsDestination ? 0 : 2 * filterRadius);
-            graphics0.dispose();
-
-            final BufferedImage img1 = ensureBuffer1Capacity(blurredWidth, blurredHeight);
-            final Graphics2D graphics1 = img1.createGraphics();
-            graphics1.drawImage(img0, new ConvolveOp(horizontalKernel, ConvolveOp.EDGE_NO_OP, null), 0, 0);
-            graphics1.dispose();
-
-            BufferedImage destination = useOriginalImageAsDestination ? image : new BufferedImage(blurredWidth,
-                    blurredHeight, BufferedImage.TYPE_INT_ARGB);
-            final Graphics2D destGraphics = destination.createGraphics();
-            destGraphics.drawImage(img1, new ConvolveOp(verticalKernel, ConvolveOp.EDGE_NO_OP, null), 0, 0);
-            destGraphics.dispose();
-
-            return destination;
-        }
+        final BufferedImage destination = new BufferedImage(image.getWidth() + 4 * filterRadius,
+                image.getHeight() + 4 * filterRadius, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = destination.createGraphics();
+        graphics.drawImage(image, 2 * filterRadius, 2 * filterRadius, null);
+        graphics.dispose();
+        blur(getPackedPixelData(destination), destination.getWidth(), destination.getHeight(),
+                destination.getWidth(), filterRadius, alphaFactor, false, mode);
+        return destination;
+    }
+
+    /**
+     * Blurs the given pixel data in place, using either the exact kernel or the box approximation depending on the
+     * given mode.
+     *
+     * @param pixels         packed ARGB pixel data.
+     * @param width          width of the region to blur.
+     * @param height         height of the region to blur.
+     * @param scanlineStride distance between two subsequent rows in the pixel array.
+     * @param radius         filter radius.
+     * @param alphaFactor    factor which will be multiplied with the filtered image.
+     * @param premultiplied  whether the pixel data is premultiplied.
+     * @param mode           the blur mode.
+     */
+    static void blur(final int[] pixels, final int width, final int height, final int scanlineStride,
+                     final int radius, final float alphaFactor, final boolean premultiplied, final BlurMode mode) {
+        final boolean approximate = mode == BlurMode.BOX_APPROXIMATION ||
+                (mode == BlurMode.AUTOMATIC && radius > __approximationThreshold);
+        if (approximate)
+            BlurEngine.boxBlurApproximation(pixels, width, height, scanlineStride, radius, alphaFactor,
+                    premultiplied);
+        else
+            BlurEngine.convolve(pixels, width, height, scanlineStride,
+                    BlurEngine.createGaussianKernel(radius, alphaFactor), premultiplied);
+    }
+
+    /**
+     * Blurs the region (0, 0, width, height) of the given image in place. Unlike applyGaussianBlur, the region may be
+     * smaller than the image, as is usually the case for images obtained from an ImageBufferPool. Pixels outside the
+     * region are neither read nor modified, the region's border pixels are treated as extending beyond it.
+     *
+     * @param image  the image to blur, of type TYPE_INT_ARGB or TYPE_INT_ARGB_PRE.
+     * @param width  width of the region to blur.
+     * @param height height of the region to blur.
+     * @param radius the radius of the gaussian filter being approximated.
+     */
+    public static void applyRegionBlur(final BufferedImage image, final int width, final int height,
+                                       final int radius) {
+        if (image == null)
+            throw new IllegalArgumentException("Parameter 'image' must not be null!");
+        if (width > image.getWidth() || height > image.getHeight())
+            throw new IllegalArgumentException("Region " + width + "x" + height + " exceeds the image size");
+        final int[] pixels = getPackedPixelData(image);
+        if (pixels == null)
+            throw new IllegalArgumentException("Image must be of type TYPE_INT_ARGB or TYPE_INT_ARGB_PRE");
+        BlurEngine.boxBlurApproximation(pixels, width, height, image.getWidth(), radius, 1f,
+                image.isAlphaPremultiplied());
     }
 
     /**
      * Applies a glow effect to the given image. This is done by first creating a blurred version of the image using
      * {@link ImageUtilities#applyGaussianBlur(java.awt.image.BufferedImage, int, float, boolean)}. The result of this
-     * operation is then rendered below the original using a LookupTable.
+     * operation is then recolored in place using {@link PixelOperation#recolor(java.awt.Color)} and rendered below the
+     * original.
      *
      * @param image                         The image to apply the glow effect to.
      * @param radius                        The radius of the gaussian blur being applied.
@@ -143,27 +253,15 @@ public class ImageUtilities {
                 new BufferedImage(image.getWidth() + 2 * radius, image.getHeight() + 2 * radius,
                         BufferedImage.TYPE_INT_ARGB);
 
-        final int red = color.getRed();
-        final int green = color.getGreen();
-        final int blue = color.getBlue();
-        final LookupTable table = new LookupTable(0, 4) {
-            @Override
-            public int[] lookupPixel(final int[] src, final int[] dest) {
-                dest[0] = red;
-                dest[1] = green;
-                dest[2] = blue;
-                dest[3] = src[3];
-                return dest;
-            }
-        };
+        PixelPipeline.of(PixelOperation.recolor(color)).apply(blurred);
 
         final Graphics2D g2 = dest.createGraphics();
 
         if (useOriginalImageAsDestination) {
             g2.setComposite(AlphaComposite.DstOver);
-            g2.drawImage(blurred, new LookupOp(table, null), -2 * radius, -2 * radius);
+            g2.drawImage(blurred, -2 * radius, -2 * radius, null);
         } else {
-            g2.drawImage(blurred, new LookupOp(table, null), -radius, -radius);
+            g2.drawImage(blurred, -radius, -radius, null);
             g2.drawImage(image, radius, radius, null);
         }
         g2.dispose();
@@ -172,25 +270,89 @@ public class ImageUtilities {
     }
 
     /**
-     * Changes the color saturation of the given RGB image.
+     * Changes the color saturation of the given RGB image. Images of type TYPE_INT_ARGB, TYPE_INT_ARGB_PRE and
+     * TYPE_INT_RGB will be modified in place using fixed-point arithmetic on the packed pixels, processing bands of rows
+     * in parallel and without allocating any intermediate buffers. All other image types will be processed using the
+     * image's raster.
      *
      * @param image image expected to contain a 4 band rgba color model.
      * @param s     The factor with which the saturation value should be multiplied.
      */
     public static void changeRGBSaturation(final BufferedImage image, final double s) {
-        double RW = 0.3086;
-        double RG = 0.6084;
-        double RB = 0.0820;
-
-        final double a = (1 - s) * RW + s;
-        final double b = (1 - s) * RW;
-        final double c = (1 - s) * RW;
-        final double d = (1 - s) * RG;
-        final double e = (1 - s) * RG + s;
-        final double f = (1 - s) * RG;
-        final double g = (1 - s) * RB;
-        final double h = (1 - s) * RB;
-        final double i = (1 - s) * RB + s;
+        final int type = image.getType();
+        final int[] pixels = type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB ||
+                type == BufferedImage.TYPE_INT_ARGB_PRE ? getIntPixelData(image) : null;
+        if (pixels == null) {
+            changeRGBSaturationOnRaster(image, s);
+            return;
+        }
+
+        final int[] matrix = new int[9];
+        final double[] coefficients = createSaturationMatrix(s);
+        for (int i = 0; i < matrix.length; i++)
+            matrix[i] = (int) Math.round(coefficients[i] * (1 << 16));
+
+        final boolean premultiplied = type == BufferedImage.TYPE_INT_ARGB_PRE;
+        final int width = image.getWidth();
+        ImageTaskPool.processBands(image.getHeight(), width, new ImageTaskPool.BandTask() {
+            public void processBand(final int from, final int to) {
+                final int end = to * width;
+                for (int index = from * width; index < end; index++)
+                    pixels[index] = saturate(pixels[index], matrix, premultiplied);
+            }
+        });
+    }
+
+    /**
+     * Applies the given fixed-point (16.16) color matrix to a single packed pixel. The alpha bits remain untouched.
+     *
+     * @param argb          the pixel.
+     * @param matrix        the color matrix, as created by createSaturationMatrix(double) and scaled by 2^16.
+     * @param premultiplied whether the pixel is premultiplied, in which case the colors will not exceed the alpha
+     *                      component.
+     * @return the modified pixel.
+     */
+    static int saturate(final int argb, final int[] matrix, final boolean premultiplied) {
+        final int r = (argb >> 16) & 0xFF;
+        final int g = (argb >> 8) & 0xFF;
+        final int b = argb & 0xFF;
+        final int max = premultiplied ? argb >>> 24 : 255;
+
+        int r1 = (matrix[0] * r + matrix[1] * g + matrix[2] * b + 0x8000) >> 16;
+        int g1 = (matrix[3] * r + matrix[4] * g + matrix[5] * b + 0x8000) >> 16;
+        int b1 = (matrix[6] * r + matrix[7] * g + matrix[8] * b + 0x8000) >> 16;
+        r1 = r1 < 0 ? 0 : r1 > max ? max : r1;
+        g1 = g1 < 0 ? 0 : g1 > max ? max : g1;
+        b1 = b1 < 0 ? 0 : b1 > max ? max : b1;
+        return (argb & 0xFF000000) | r1 << 16 | g1 << 8 | b1;
+    }
+
+    /**
+     * Creates the color matrix used to change an image's saturation, row by row (red, green, blue).
+     *
+     * @param s The factor with which the saturation value should be multiplied.
+     * @return the 3x3 color matrix.
+     */
+    static double[] createSaturationMatrix(final double s) {
+        final double RW = 0.3086;
+        final double RG = 0.6084;
+        final double RB = 0.0820;
+
+        return new double[]{
+                (1 - s) * RW + s, (1 - s) * RG, (1 - s) * RB,
+                (1 - s) * RW, (1 - s) * RG + s, (1 - s) * RB,
+                (1 - s) * RW, (1 - s) * RG, (1 - s) * RB + s};
+    }
+
+    /**
+     * Changes the color saturation of the given image by means of its raster. This is the fallback for image types
+     * which don't store their pixels as packed ints.
+     *
+     * @param image image expected to contain a 4 band rgba color model.
+     * @param s     The factor with which the saturation value should be multiplied.
+     */
+    private static void changeRGBSaturationOnRaster(final BufferedImage image, final double s) {
+        final double[] m = createSaturationMatrix(s);
 
         final int width = image.getWidth();
         final int height = image.getHeight();
@@ -207,9 +369,9 @@ public class ImageUtilities {
             final double r0 = red[x];
             final double g0 = green[x];
             final double b0 = blue[x];
-            red[x] = a * r0 + d * g0 + g * b0;
-            green[x] = b * r0 + e * g0 + h * b0;
-            blue[x] = c * r0 + f * g0 + i * b0;
+            red[x] = m[0] * r0 + m[1] * g0 + m[2] * b0;
+            green[x] = m[3] * r0 + m[4] * g0 + m[5] * b0;
+            blue[x] = m[6] * r0 + m[7] * g0 + m[8] * b0;
         }
 
         raster.setSamples(0, 0, width, height, 0, red);
@@ -217,29 +379,42 @@ public class ImageUtilities {
         raster.setSamples(0, 0, width, height, 2, blue);
     }
 
-    private static BufferedImage ensureBuffer0Capacity(final int width, final int height) {
-        BufferedImage img0 = _buffer0 != null ? _buffer0.get() : null;
-        img0 = ensureBufferCapacity(width, height, img0);
-        _buffer0 = new SoftReference<BufferedImage>(img0);
-        return img0;
+    /**
+     * Returns the pixel array backing the given image if it is of type TYPE_INT_ARGB or TYPE_INT_ARGB_PRE and the
+     * pixels are stored in a single, contiguous block (one int per pixel, scanline stride equal to the width). This is
+     * the case for all images created using the BufferedImage constructors, but not for sub-images. Note that
+     * accessing the data buffer directly will prevent the image from being hardware accelerated.
+     *
+     * @param image image to access.
+     * @return the pixel array backing the image, or null if the image does not use a compatible layout.
+     */
+    public static int[] getPackedPixelData(final BufferedImage image) {
+        final int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_ARGB && type != BufferedImage.TYPE_INT_ARGB_PRE)
+            return null;
+        return getIntPixelData(image);
     }
 
-    private static BufferedImage ensureBuffer1Capacity(final int width, final int height) {
-        BufferedImage img1 = _buffer1 != null ? _buffer0.get() : null;
-        img1 = ensureBufferCapacity(width, height, img1);
-        _buffer1 = new SoftReference<BufferedImage>(img1);
-        return img1;
-    }
+    /**
+     * Returns the int array backing the given image if the pixels are stored in a single, contiguous block with one int
+     * per pixel, regardless of the image type.
+     *
+     * @param image image to access.
+     * @return the pixel array backing the image, or null if the image does not use a compatible layout.
+     */
+    static int[] getIntPixelData(final BufferedImage image) {
+        final WritableRaster raster = image.getRaster();
+        if (raster.getParent() != null || raster.getSampleModelTranslateX() != 0 ||
+                raster.getSampleModelTranslateY() != 0)
+            return null;
+        if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel))
+            return null;
+        if (((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() != image.getWidth())
+            return null;
 
-    private static BufferedImage ensureBufferCapacity(final int width, final int height, BufferedImage img) {
-        if (img == null || img.getWidth() < width || img.getHeight() < height) {
-            img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        } else {
-            final Graphics2D g2 = img.createGraphics();
-            g2.setComposite(AlphaComposite.Clear);
-            g2.fillRect(0, 0, width, height);
-            g2.dispose();
-        }
-        return img;
+        final DataBuffer dataBuffer = raster.getDataBuffer();
+        if (!(dataBuffer instanceof DataBufferInt) || dataBuffer.getNumBanks() != 1 || dataBuffer.getOffset() != 0)
+            return null;
+        return ((DataBufferInt) dataBuffer).getData();
     }
 }
@@ -0,0 +1,31 @@
+package net.sarcommand.swingextensions.image;
+
+/**
+ * A pixel operation which needs access to a pixel's neighbours, like a blur. A {@link PixelPipeline} will execute
+ * such operations as separate stages on the whole image. Implementations are responsible for parallelizing their work
+ * and have to be thread safe.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public abstract class NeighbourhoodOperation extends PixelOperation {
+    /**
+     * Applies this operation to the given pixel data in place.
+     *
+     * @param pixels         packed ARGB pixel data, one int per pixel.
+     * @param width          width of the region to process.
+     * @param height         height of the region to process.
+     * @param scanlineStride distance between two subsequent rows in the pixel array.
+     * @param premultiplied  whether the pixel data is premultiplied.
+     */
+    public abstract void apply(final int[] pixels, final int width, final int height, final int scanlineStride,
+                               final boolean premultiplied);
+}
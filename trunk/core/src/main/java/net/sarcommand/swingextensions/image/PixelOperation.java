@@ -0,0 +1,151 @@
+package net.sarcommand.swingextensions.image;
+
+import java.awt.*;
+
+/**
+ * Base class for the operations which can be combined into a {@link PixelPipeline}. There are two kinds of operations:
+ * {@link PointOperation}s compute each pixel from its own value only, which allows the pipeline to fuse a sequence of
+ * them into a single pass over the image. {@link NeighbourhoodOperation}s (like a blur) require access to the whole
+ * image and will be executed as separate stages.
+ * <p/>
+ * This class also serves as a factory for the commonly used operations. They are best used with a static import:
+ * <p/>
+ * <pre> PixelPipeline.of(saturate(0.5), tint(new Color(255, 0, 0, 64)), alpha(0.8f)).apply(image);
+ * </pre>
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public abstract class PixelOperation {
+    PixelOperation() {
+    }
+
+    /**
+     * Creates an operation changing the color saturation, see {@link ImageUtilities#changeRGBSaturation(java.awt.image.BufferedImage,
+     * double)}.
+     *
+     * @param s The factor with which the saturation value should be multiplied.
+     * @return an operation changing the color saturation.
+     */
+    public static PointOperation saturate(final double s) {
+        final double[] coefficients = ImageUtilities.createSaturationMatrix(s);
+        final int[] matrix = new int[coefficients.length];
+        for (int i = 0; i < matrix.length; i++)
+            matrix[i] = (int) Math.round(coefficients[i] * (1 << 16));
+
+        return new PointOperation() {
+            public int filter(final int argb) {
+                return ImageUtilities.saturate(argb, matrix, false);
+            }
+        };
+    }
+
+    /**
+     * Creates an operation blending each pixel's color with the given color. The tint color's alpha component
+     * determines the strength of the effect, an opaque color will replace the original color entirely. The pixels'
+     * alpha values remain untouched.
+     *
+     * @param color the tint color.
+     * @return an operation tinting the image.
+     */
+    public static PointOperation tint(final Color color) {
+        if (color == null)
+            throw new IllegalArgumentException("Parameter 'color' must not be null!");
+        final int strength = color.getAlpha();
+        final int red = color.getRed() * strength;
+        final int green = color.getGreen() * strength;
+        final int blue = color.getBlue() * strength;
+        final int remainder = 255 - strength;
+
+        return new PointOperation() {
+            public int filter(final int argb) {
+                final int r = (((argb >> 16) & 0xFF) * remainder + red + 127) / 255;
+                final int g = (((argb >> 8) & 0xFF) * remainder + green + 127) / 255;
+                final int b = ((argb & 0xFF) * remainder + blue + 127) / 255;
+                return (argb & 0xFF000000) | r << 16 | g << 8 | b;
+            }
+        };
+    }
+
+    /**
+     * Creates an operation replacing each pixel's color with the given color while keeping its alpha value. This is
+     * used to color the blurred shadow in {@link ImageUtilities#applyGlow(java.awt.image.BufferedImage, int,
+     * java.awt.Color, float, boolean)}.
+     *
+     * @param color the new color. Its alpha component will be ignored.
+     * @return an operation recoloring the image.
+     */
+    public static PointOperation recolor(final Color color) {
+        if (color == null)
+            throw new IllegalArgumentException("Parameter 'color' must not be null!");
+        final int rgb = color.getRGB() & 0xFFFFFF;
+
+        return new PointOperation() {
+            public int filter(final int argb) {
+                return (argb & 0xFF000000) | rgb;
+            }
+        };
+    }
+
+    /**
+     * Creates an operation multiplying each pixel's alpha value with the given factor.
+     *
+     * @param factor the alpha factor.
+     * @return an operation scaling the alpha values.
+     */
+    public static PointOperation alpha(final float factor) {
+        if (factor < 0)
+            throw new IllegalArgumentException("Illegal alpha factor: expected to be >= 0, was " + factor);
+        final int scale = Math.round(factor * (1 << 16));
+
+        return new PointOperation() {
+            public int filter(final int argb) {
+                final int alpha = Math.min(255, ((argb >>> 24) * scale + 0x8000) >> 16);
+                return alpha << 24 | (argb & 0xFFFFFF);
+            }
+        };
+    }
+
+    /**
+     * Creates an operation applying a gaussian blur, see {@link ImageUtilities#applyGaussianBlur(java.awt.image.BufferedImage,
+     * int, float, boolean, ImageUtilities.BlurMode)}. Pixels closer to the border than the radius may be left
+     * unfiltered.
+     *
+     * @param radius      the filter radius.
+     * @param alphaFactor factor which will be multiplied with the filtered image.
+     * @param mode        determines how the blur will be computed.
+     * @return an operation blurring the image.
+     */
+    public static NeighbourhoodOperation blur(final int radius, final float alphaFactor,
+                                              final ImageUtilities.BlurMode mode) {
+        if (radius < 1)
+            throw new IllegalArgumentException("Illegal filter radius: expected to be >= 1, was " + radius);
+        if (mode == null)
+            throw new IllegalArgumentException("Parameter 'mode' must not be null!");
+
+        return new NeighbourhoodOperation() {
+            public void apply(final int[] pixels, final int width, final int height, final int scanlineStride,
+                              final boolean premultiplied) {
+                ImageUtilities.blur(pixels, width, height, scanlineStride, radius, alphaFactor, premultiplied, mode);
+            }
+        };
+    }
+
+    /**
+     * Creates an operation applying a gaussian blur using BlurMode.AUTOMATIC.
+     *
+     * @param radius the filter radius.
+     * @return an operation blurring the image.
+     */
+    public static NeighbourhoodOperation blur(final int radius) {
+        return blur(radius, 1f, ImageUtilities.BlurMode.AUTOMATIC);
+    }
+}
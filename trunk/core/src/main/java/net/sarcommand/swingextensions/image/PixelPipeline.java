@@ -0,0 +1,243 @@
+package net.sarcommand.swingextensions.image;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sequence of pixel operations which can be applied to an image at once. Instead of making a full pass over the
+ * image for each operation, subsequent {@link PointOperation}s will be fused so that each pixel is read and written
+ * only once. The image is split into bands of rows, which are processed in parallel. {@link NeighbourhoodOperation}s
+ * will be executed as separate stages in between.
+ * <p/>
+ * Usage example, using static imports for the factory methods in {@link PixelOperation}:
+ * <p/>
+ * <pre> final PixelPipeline pipeline = PixelPipeline.of(saturate(0.2), tint(highlightColor), alpha(0.5f));
+ * pipeline.apply(thumbnail);
+ * </pre>
+ * <p/>
+ * Pipelines are immutable and may be reused and shared between threads.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public class PixelPipeline {
+    /**
+     * Per-thread row buffer, used when processing images which don't expose packed pixel data.
+     */
+    private static final ThreadLocal<int[]> __rowBuffer = new ThreadLocal<int[]>();
+
+    /**
+     * The stages of this pipeline. Each element is either a PointOperation[] of fused operations or a single
+     * NeighbourhoodOperation.
+     */
+    protected final Object[] _stages;
+
+    protected final boolean _pointOperationsOnly;
+
+    /**
+     * Creates a pipeline applying the given operations in the given order.
+     *
+     * @param operations the operations to apply.
+     * @return a new pipeline.
+     */
+    public static PixelPipeline of(final PixelOperation... operations) {
+        return new PixelPipeline(operations);
+    }
+
+    /**
+     * Creates a pipeline applying the given operations in the given order.
+     *
+     * @param operations the operations to apply.
+     */
+    public PixelPipeline(final PixelOperation... operations) {
+        if (operations == null)
+            throw new IllegalArgumentException("Parameter 'operations' must not be null!");
+
+        final List<Object> stages = new ArrayList<Object>();
+        final List<PointOperation> fused = new ArrayList<PointOperation>();
+        boolean pointOperationsOnly = true;
+        for (PixelOperation operation : operations) {
+            if (operation instanceof PointOperation) {
+                fused.add((PointOperation) operation);
+            } else if (operation instanceof NeighbourhoodOperation) {
+                if (!fused.isEmpty()) {
+                    stages.add(fused.toArray(new PointOperation[fused.size()]));
+                    fused.clear();
+                }
+                stages.add(operation);
+                pointOperationsOnly = false;
+            } else
+                throw new IllegalArgumentException("Illegal operation: " + operation);
+        }
+        if (!fused.isEmpty())
+            stages.add(fused.toArray(new PointOperation[fused.size()]));
+
+        _stages = stages.toArray();
+        _pointOperationsOnly = pointOperationsOnly;
+    }
+
+    /**
+     * Applies this pipeline to the given image in place. Images of type TYPE_INT_ARGB and TYPE_INT_ARGB_PRE will be
+     * processed directly on their pixel data. Other images are processed row by row if the pipeline consists of point
+     * operations only, or using a temporary ARGB copy obtained from the shared {@link ImageBufferPool} otherwise.
+     *
+     * @param image the image to modify.
+     * @return the given image.
+     */
+    public BufferedImage apply(final BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        final int[] pixels = ImageUtilities.getPackedPixelData(image);
+        if (pixels != null) {
+            apply(pixels, width, height, image.isAlphaPremultiplied());
+            return image;
+        }
+
+        if (_pointOperationsOnly) {
+            applyRowByRow(image);
+            return image;
+        }
+
+        final ImageBufferPool pool = ImageBufferPool.getSharedInstance();
+        final BufferedImage buffer = pool.acquire(width, height, BufferedImage.TYPE_INT_ARGB);
+        try {
+            final Graphics2D bufferGraphics = buffer.createGraphics();
+            bufferGraphics.drawImage(image, 0, 0, null);
+            bufferGraphics.dispose();
+
+            apply(ImageUtilities.getPackedPixelData(buffer), width, height, buffer.getWidth(), false);
+
+            final Graphics2D graphics = image.createGraphics();
+            graphics.setComposite(AlphaComposite.Src);
+            graphics.drawImage(buffer, 0, 0, width, height, 0, 0, width, height, null);
+            graphics.dispose();
+        } finally {
+            pool.release(buffer);
+        }
+        return image;
+    }
+
+    /**
+     * Applies this pipeline to the given pixel data in place.
+     *
+     * @param pixels        packed ARGB pixel data, one int per pixel, scanline stride equal to the width.
+     * @param width         image width.
+     * @param height        image height.
+     * @param premultiplied whether the pixel data is premultiplied.
+     */
+    public void apply(final int[] pixels, final int width, final int height, final boolean premultiplied) {
+        apply(pixels, width, height, width, premultiplied);
+    }
+
+    /**
+     * Applies this pipeline to the given region of pixel data in place.
+     *
+     * @param pixels         packed ARGB pixel data, one int per pixel.
+     * @param width          width of the region to process.
+     * @param height         height of the region to process.
+     * @param scanlineStride distance between two subsequent rows in the pixel array.
+     * @param premultiplied  whether the pixel data is premultiplied.
+     */
+    public void apply(final int[] pixels, final int width, final int height, final int scanlineStride,
+                      final boolean premultiplied) {
+        BlurEngine.checkBounds(pixels, width, height, scanlineStride);
+        for (Object stage : _stages) {
+            if (stage instanceof NeighbourhoodOperation) {
+                ((NeighbourhoodOperation) stage).apply(pixels, width, height, scanlineStride, premultiplied);
+                continue;
+            }
+
+            final PointOperation[] operations = (PointOperation[]) stage;
+            ImageTaskPool.processBands(height, width, new ImageTaskPool.BandTask() {
+                public void processBand(final int from, final int to) {
+                    for (int y = from; y < to; y++)
+                        filter(pixels, y * scanlineStride, y * scanlineStride + width, operations, premultiplied);
+                }
+            });
+        }
+    }
+
+    /**
+     * Processes an image which does not expose its pixel data using getRGB/setRGB, one row at a time.
+     *
+     * @param image the image to modify.
+     */
+    protected void applyRowByRow(final BufferedImage image) {
+        final int width = image.getWidth();
+        final ImageTaskPool.BandTask task = new ImageTaskPool.BandTask() {
+            public void processBand(final int from, final int to) {
+                int[] row = __rowBuffer.get();
+                if (row == null || row.length < width) {
+                    row = new int[width];
+                    __rowBuffer.set(row);
+                }
+
+                for (int y = from; y < to; y++) {
+                    image.getRGB(0, y, width, 1, row, 0, width);
+                    for (Object stage : _stages)
+                        filter(row, 0, width, (PointOperation[]) stage, false);
+                    image.setRGB(0, y, width, 1, row, 0, width);
+                }
+            }
+        };
+
+        /* The color lookup performed by IndexColorModels isn't safe to be used concurrently */
+        if (image.getColorModel() instanceof IndexColorModel)
+            task.processBand(0, image.getHeight());
+        else
+            ImageTaskPool.processBands(image.getHeight(), width, task);
+    }
+
+    /**
+     * Applies a sequence of point operations to the given range of pixels.
+     *
+     * @param pixels        pixel data.
+     * @param from          first index to process (inclusive).
+     * @param to            last index to process (exclusive).
+     * @param operations    the operations to apply.
+     * @param premultiplied whether the pixel data is premultiplied.
+     */
+    protected static void filter(final int[] pixels, final int from, final int to, final PointOperation[] operations,
+                                 final boolean premultiplied) {
+        for (int i = from; i < to; i++) {
+            int argb = premultiplied ? unpremultiply(pixels[i]) : pixels[i];
+            for (PointOperation operation : operations)
+                argb = operation.filter(argb);
+            pixels[i] = premultiplied ? premultiply(argb) : argb;
+        }
+    }
+
+    private static int premultiply(final int argb) {
+        final int a = argb >>> 24;
+        if (a == 255)
+            return argb;
+        final int r = (((argb >> 16) & 0xFF) * a + 127) / 255;
+        final int g = (((argb >> 8) & 0xFF) * a + 127) / 255;
+        final int b = ((argb & 0xFF) * a + 127) / 255;
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    private static int unpremultiply(final int argb) {
+        final int a = argb >>> 24;
+        if (a == 255)
+            return argb;
+        if (a == 0)
+            return 0;
+        final int r = Math.min(255, (((argb >> 16) & 0xFF) * 255 + a / 2) / a);
+        final int g = Math.min(255, (((argb >> 8) & 0xFF) * 255 + a / 2) / a);
+        final int b = Math.min(255, ((argb & 0xFF) * 255 + a / 2) / a);
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+}
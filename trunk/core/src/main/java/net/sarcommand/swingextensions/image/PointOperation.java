@@ -0,0 +1,27 @@
+package net.sarcommand.swingextensions.image;
+
+/**
+ * A pixel operation computing each pixel from its own value only. Subsequent point operations in a {@link
+ * PixelPipeline} will be fused into a single pass over the image. Implementations have to be thread safe, as the
+ * pipeline will invoke them from several threads at once.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public abstract class PointOperation extends PixelOperation {
+    /**
+     * Computes the new value for a single pixel.
+     *
+     * @param argb the pixel's current value, a packed, non-premultiplied ARGB int.
+     * @return the pixel's new value, a packed, non-premultiplied ARGB int.
+     */
+    public abstract int filter(final int argb);
+}
@@ -0,0 +1,384 @@
+package net.sarcommand.swingextensions.imagepanel;
+
+import net.sarcommand.swingextensions.internal.SwingExtLogger;
+import net.sarcommand.swingextensions.internal.SwingExtLogging;
+import net.sarcommand.swingextensions.io.FileChannelImageInputStream;
+import net.sarcommand.swingextensions.utilities.LoadingScheduler;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An ImageSource decoding the tiles of an image file on demand, so that images far larger than the available heap can
+ * be displayed. Each tile is decoded individually using ImageReadParam.setSourceRegion, with a subsampling factor of
+ * 2^level for the reduced resolution levels. Since there is only one reader per file, tiles are decoded one at a time on
+ * a single worker thread owned by this source, so that pending tiles do not occupy the workers of the shared
+ * LoadingScheduler. Decoded tiles are kept in a cache limited to a configurable amount of memory.
+ * <p/>
+ * Pending requests for tiles which have not been requested again during the last paint operation are cancelled, so
+ * panning or zooming quickly does not leave a backlog of tiles which are no longer visible.
+ * <p/>
+ * The performance depends heavily on the file format: Formats storing the image in tiles or strips, like TIFF, can
+ * decode a region directly, while formats like PNG have to decode all rows above the requested region.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public class FileImageSource extends ImageSource {
+    private static final SwingExtLogger __log = SwingExtLogging.getLogger(FileImageSource.class);
+
+    /**
+     * Default edge length of a tile in pixels.
+     */
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    /**
+     * Default amount of memory the decoded tiles may occupy.
+     */
+    public static final long DEFAULT_CACHE_SIZE = 128L * 1024 * 1024;
+
+    protected final File _file;
+    protected final int _tileSize;
+    protected final int _width;
+    protected final int _height;
+    protected final int _levelCount;
+
+    protected final ImageInputStream _stream;
+    protected final ImageReader _reader;
+    protected final LoadingScheduler _scheduler;
+
+    protected final LinkedHashMap<Long, BufferedImage> _cache;
+    protected final Map<Long, TileRequest> _pendingRequests;
+    protected long _cacheSize;
+    protected long _usedMemory;
+    protected long _paintCount;
+    protected volatile boolean _disposed;
+    protected volatile boolean _readAborted;
+
+    /**
+     * The request currently being decoded, checked by the reader's progress listener.
+     */
+    protected volatile TileRequest _decodingRequest;
+
+    /**
+     * Opens the given image file, using the default tile size.
+     *
+     * @param file the image file.
+     * @throws IOException if the file could not be opened or its format is not supported.
+     */
+    public FileImageSource(final File file) throws IOException {
+        this(file, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Opens the given image file.
+     *
+     * @param file     the image file.
+     * @param tileSize edge length of a tile in pixels.
+     * @throws IOException if the file could not be opened or its format is not supported.
+     */
+    public FileImageSource(final File file, final int tileSize) throws IOException {
+        if (file == null)
+            throw new IllegalArgumentException("Parameter 'file' must not be null!");
+        if (tileSize < 1)
+            throw new IllegalArgumentException("Parameter 'tileSize' must be positive!");
+
+        _file = file;
+        _tileSize = tileSize;
+        _stream = new FileChannelImageInputStream(file);
+        final Iterator<ImageReader> readers = ImageIO.getImageReaders(_stream);
+        if (!readers.hasNext()) {
+            _stream.close();
+            throw new IOException("Unsupported image format: " + file);
+        }
+        _reader = readers.next();
+        _reader.setInput(_stream, true, true);
+        _reader.addIIOReadProgressListener(new IIOReadProgressListener() {
+            public void readAborted(final ImageReader source) {
+                _readAborted = true;
+            }
+
+            public void sequenceStarted(final ImageReader source, final int minIndex) {
+            }
+
+            public void sequenceComplete(final ImageReader source) {
+            }
+
+            public void imageStarted(final ImageReader source, final int imageIndex) {
+                abortIfCancelled(source);
+            }
+
+            public void imageProgress(final ImageReader source, final float percentageDone) {
+                abortIfCancelled(source);
+            }
+
+            public void imageComplete(final ImageReader source) {
+            }
+
+            public void thumbnailStarted(final ImageReader source, final int imageIndex, final int thumbnailIndex) {
+            }
+
+            public void thumbnailProgress(final ImageReader source, final float percentageDone) {
+            }
+
+            public void thumbnailComplete(final ImageReader source) {
+            }
+        });
+        _width = _reader.getWidth(0);
+        _height = _reader.getHeight(0);
+        _levelCount = computeLevelCount(_width, _height, tileSize);
+
+        _scheduler = new LoadingScheduler(1, "FileImageSource");
+        _cache = new LinkedHashMap<Long, BufferedImage>(64, 0.75f, true);
+        _pendingRequests = new HashMap<Long, TileRequest>();
+        _cacheSize = DEFAULT_CACHE_SIZE;
+    }
+
+    public File getFile() {
+        return _file;
+    }
+
+    public int getWidth() {
+        return _width;
+    }
+
+    public int getHeight() {
+        return _height;
+    }
+
+    public int getTileSize() {
+        return _tileSize;
+    }
+
+    public int getLevelCount() {
+        return _levelCount;
+    }
+
+    /**
+     * Sets the amount of memory the decoded tiles may occupy. Each tile is accounted for with four bytes per pixel.
+     *
+     * @param cacheSize the cache size in bytes.
+     */
+    public void setCacheSize(final long cacheSize) {
+        if (cacheSize < 0)
+            throw new IllegalArgumentException("Parameter 'cacheSize' must not be negative!");
+        synchronized (_cache) {
+            _cacheSize = cacheSize;
+            trimCache();
+        }
+    }
+
+    public long getCacheSize() {
+        return _cacheSize;
+    }
+
+    public BufferedImage getTile(final int level, final int column, final int row) {
+        final Long key = getKey(level, column, row);
+        final BufferedImage tile = getCachedTile(key);
+        if (tile != null || _disposed)
+            return tile;
+
+        synchronized (_pendingRequests) {
+            final TileRequest pending = _pendingRequests.get(key);
+            if (pending != null) {
+                pending._paintCount = _paintCount;
+                return null;
+            }
+            final TileRequest request = new TileRequest(key, level, column, row);
+            request._paintCount = _paintCount;
+            _pendingRequests.put(key, request);
+            _scheduler.schedule(request, LoadingScheduler.Priority.VISIBLE, request);
+        }
+        return null;
+    }
+
+    public BufferedImage getCachedTile(final int level, final int column, final int row) {
+        return getCachedTile(getKey(level, column, row));
+    }
+
+    public void paintStarted() {
+        synchronized (_pendingRequests) {
+            _paintCount++;
+        }
+    }
+
+    public void paintFinished() {
+        synchronized (_pendingRequests) {
+            for (Iterator<TileRequest> iterator = _pendingRequests.values().iterator(); iterator.hasNext(); ) {
+                final TileRequest request = iterator.next();
+                if (request._paintCount != _paintCount) {
+                    iterator.remove();
+                    request.cancel();
+                    _scheduler.cancel(request);
+                }
+            }
+        }
+    }
+
+    public void dispose() {
+        _disposed = true;
+        synchronized (_pendingRequests) {
+            for (TileRequest request : _pendingRequests.values()) {
+                request.cancel();
+                _scheduler.cancel(request);
+            }
+            _pendingRequests.clear();
+        }
+        synchronized (_cache) {
+            _cache.clear();
+            _usedMemory = 0;
+        }
+        synchronized (_reader) {
+            _reader.dispose();
+            try {
+                _stream.close();
+            } catch (IOException e) {
+                __log.warn("Could not close " + _file, e);
+            }
+        }
+    }
+
+    protected BufferedImage getCachedTile(final Long key) {
+        synchronized (_cache) {
+            return _cache.get(key);
+        }
+    }
+
+    protected static Long getKey(final int level, final int column, final int row) {
+        return ((long) level << 56) | ((long) row << 28) | column;
+    }
+
+    /**
+     * Decodes the given tile. Invoked on a worker thread.
+     *
+     * @param request the tile request.
+     * @return the decoded tile, or null if decoding was aborted.
+     * @throws IOException if the file could not be read.
+     */
+    protected BufferedImage decodeTile(final TileRequest request) throws IOException {
+        final int subsampling = 1 << request._level;
+        final int extent = _tileSize * subsampling;
+        final Rectangle region = new Rectangle(request._column * extent, request._row * extent, extent, extent)
+                .intersection(new Rectangle(0, 0, _width, _height));
+        if (region.isEmpty())
+            return null;
+
+        final ImageReadParam param = _reader.getDefaultReadParam();
+        param.setSourceRegion(region);
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        synchronized (_reader) {
+            if (request._cancelled || _disposed)
+                return null;
+            _decodingRequest = request;
+            _readAborted = false;
+            try {
+                final BufferedImage tile = _reader.read(0, param);
+                return _readAborted ? null : tile;
+            } finally {
+                _decodingRequest = null;
+            }
+        }
+    }
+
+    /**
+     * Aborts the reader if the tile being decoded has been cancelled. Invoked from the reader's progress callbacks on
+     * the decoding thread, as ImageReader.abort() must not be invoked from another thread while the reader is decoding.
+     *
+     * @param reader the decoding reader.
+     */
+    protected void abortIfCancelled(final ImageReader reader) {
+        final TileRequest request = _decodingRequest;
+        if (_disposed || (request != null && request._cancelled))
+            reader.abort();
+    }
+
+    protected void tileDecoded(final TileRequest request, final BufferedImage tile) {
+        synchronized (_pendingRequests) {
+            if (_pendingRequests.get(request._key) == request)
+                _pendingRequests.remove(request._key);
+        }
+        if (tile == null || request._cancelled || _disposed)
+            return;
+
+        synchronized (_cache) {
+            if (_cache.put(request._key, tile) == null)
+                _usedMemory += 4L * tile.getWidth() * tile.getHeight();
+            trimCache();
+        }
+        fireStateChanged();
+    }
+
+    /**
+     * Evicts the least recently used tiles until the cache size is met. The coarsest level is never evicted, as it
+     * serves as the fallback for all other tiles.
+     */
+    protected void trimCache() {
+        final Iterator<Map.Entry<Long, BufferedImage>> iterator = _cache.entrySet().iterator();
+        while (_usedMemory > _cacheSize && iterator.hasNext()) {
+            final Map.Entry<Long, BufferedImage> entry = iterator.next();
+            if ((int) (entry.getKey() >>> 56) == _levelCount - 1)
+                continue;
+            final BufferedImage tile = entry.getValue();
+            _usedMemory -= 4L * tile.getWidth() * tile.getHeight();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Background request decoding a single tile.
+     */
+    protected class TileRequest implements Runnable, LoadingScheduler.Cancellable {
+        protected final Long _key;
+        protected final int _level;
+        protected final int _column;
+        protected final int _row;
+        protected volatile boolean _cancelled;
+        protected long _paintCount;
+
+        public TileRequest(final Long key, final int level, final int column, final int row) {
+            _key = key;
+            _level = level;
+            _column = column;
+            _row = row;
+        }
+
+        public void run() {
+            BufferedImage tile = null;
+            try {
+                tile = decodeTile(this);
+            } catch (IOException e) {
+                if (!_cancelled && !_disposed)
+                    __log.error("Could not decode tile " + _level + "/" + _column + "/" + _row + " of " + _file, e);
+            } finally {
+                tileDecoded(this, tile);
+            }
+        }
+
+        /**
+         * Marks this request as cancelled. If the tile is being decoded, the reader will be aborted on the decoding
+         * thread.
+         */
+        public void cancel() {
+            _cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package net.sarcommand.swingextensions.imagepanel;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * A uniform grid indexing items by their bounding rectangles. Each item is registered with every cell its bounds
+ * intersect, so that queries only have to look at the cells covering the queried area instead of at all items. For
+ * items which are small compared to the cell size, inserting, removing and point queries take constant time on average.
+ * <p/>
+ * Items are compared by identity. This class is not thread safe.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+class GridIndex<T> {
+    protected final double _cellSize;
+    protected final HashMap<Long, ArrayList<Entry<T>>> _cells;
+    protected final IdentityHashMap<T, Entry<T>> _entries;
+    protected int _queryStamp;
+
+    /**
+     * Creates a new index.
+     *
+     * @param cellSize edge length of a grid cell.
+     */
+    public GridIndex(final double cellSize) {
+        if (!(cellSize > 0))
+            throw new IllegalArgumentException("Parameter 'cellSize' must be positive!");
+        _cellSize = cellSize;
+        _cells = new HashMap<Long, ArrayList<Entry<T>>>();
+        _entries = new IdentityHashMap<T, Entry<T>>();
+    }
+
+    public double getCellSize() {
+        return _cellSize;
+    }
+
+    public int size() {
+        return _entries.size();
+    }
+
+    /**
+     * Adds an item to the index, replacing a previous registration of the same item.
+     *
+     * @param item   the item to add.
+     * @param bounds the item's bounds.
+     */
+    public void insert(final T item, final Rectangle2D bounds) {
+        if (item == null)
+            throw new IllegalArgumentException("Parameter 'item' must not be null!");
+        if (bounds == null)
+            throw new IllegalArgumentException("Parameter 'bounds' must not be null!");
+        remove(item);
+
+        final Entry<T> entry = new Entry<T>(item, bounds.getBounds2D());
+        _entries.put(item, entry);
+        final int firstColumn = cell(bounds.getMinX());
+        final int lastColumn = cell(bounds.getMaxX());
+        final int firstRow = cell(bounds.getMinY());
+        final int lastRow = cell(bounds.getMaxY());
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                final Long key = key(column, row);
+                ArrayList<Entry<T>> cell = _cells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<Entry<T>>(4);
+                    _cells.put(key, cell);
+                }
+                cell.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes an item from the index.
+     *
+     * @param item the item to remove.
+     * @return the bounds the item had been registered with, or null if it was not part of the index.
+     */
+    public Rectangle2D remove(final T item) {
+        final Entry<T> entry = _entries.remove(item);
+        if (entry == null)
+            return null;
+
+        final Rectangle2D bounds = entry._bounds;
+        final int firstColumn = cell(bounds.getMinX());
+        final int lastColumn = cell(bounds.getMaxX());
+        final int firstRow = cell(bounds.getMinY());
+        final int lastRow = cell(bounds.getMaxY());
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                final Long key = key(column, row);
+                final ArrayList<Entry<T>> cell = _cells.get(key);
+                if (cell == null)
+                    continue;
+                cell.remove(entry);
+                if (cell.isEmpty())
+                    _cells.remove(key);
+            }
+        }
+        return bounds;
+    }
+
+    public void clear() {
+        _cells.clear();
+        _entries.clear();
+    }
+
+    /**
+     * Adds all items whose bounds intersect the given area to the result. Each item is added only once.
+     *
+     * @param area   the area to query.
+     * @param result collection receiving the items.
+     */
+    public void query(final Rectangle2D area, final Collection<? super T> result) {
+        final int firstColumn = cell(area.getMinX());
+        final int lastColumn = cell(area.getMaxX());
+        final int firstRow = cell(area.getMinY());
+        final int lastRow = cell(area.getMaxY());
+
+        /* If the area covers more cells than there are occupied ones, looking at all items is cheaper */
+        if ((long) (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1) > _cells.size()) {
+            for (Entry<T> entry : _entries.values())
+                if (entry._bounds.intersects(area))
+                    result.add(entry._item);
+            return;
+        }
+
+        final int stamp = ++_queryStamp;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                final ArrayList<Entry<T>> cell = _cells.get(key(column, row));
+                if (cell == null)
+                    continue;
+                for (int i = 0, n = cell.size(); i < n; i++) {
+                    final Entry<T> entry = cell.get(i);
+                    if (entry._queryStamp != stamp && entry._bounds.intersects(area)) {
+                        entry._queryStamp = stamp;
+                        result.add(entry._item);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds all items whose bounds contain the given point to the result.
+     *
+     * @param x      horizontal coordinate of the point.
+     * @param y      vertical coordinate of the point.
+     * @param result collection receiving the items.
+     */
+    public void query(final double x, final double y, final Collection<? super T> result) {
+        final ArrayList<Entry<T>> cell = _cells.get(key(cell(x), cell(y)));
+        if (cell == null)
+            return;
+        for (int i = 0, n = cell.size(); i < n; i++) {
+            final Entry<T> entry = cell.get(i);
+            if (entry._bounds.contains(x, y))
+                result.add(entry._item);
+        }
+    }
+
+    protected int cell(final double coordinate) {
+        return (int) Math.floor(coordinate / _cellSize);
+    }
+
+    protected static Long key(final int column, final int row) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    /**
+     * An item along with the bounds it has been registered with.
+     */
+    protected static class Entry<T> {
+        protected final T _item;
+        protected final Rectangle2D _bounds;
+        protected int _queryStamp;
+
+        public Entry(final T item, final Rectangle2D bounds) {
+            _item = item;
+            _bounds = bounds;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package net.sarcommand.swingextensions.imagepanel;
+
+import net.sarcommand.swingextensions.event.EventSupport;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.image.BufferedImage;
+
+/**
+ * Provides the contents of an image to a JImagePanel as square tiles at several resolution levels, for images which
+ * are too large to be held in memory as a whole. Level 0 is the full resolution, each following level has half the
+ * resolution of the previous one. A tile at level n covers tileSize * 2^n pixels of the full resolution image in each
+ * dimension.
+ * <p/>
+ * Tiles may not be available immediately. getTile returns null for a tile which has not been loaded yet and will load it
+ * in the background. Once it is available, the registered ChangeListeners will be notified on the event dispatch thread.
+ * Painting code is expected to bracket its getTile invocations with paintStarted() and paintFinished(), allowing the
+ * source to discard requests for tiles which are no longer visible.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public abstract class ImageSource {
+    protected final EventSupport<ChangeListener> _changeListeners;
+
+    protected ImageSource() {
+        _changeListeners = EventSupport.create(ChangeListener.class, true);
+    }
+
+    /**
+     * Returns the width of the full resolution image.
+     *
+     * @return the image width.
+     */
+    public abstract int getWidth();
+
+    /**
+     * Returns the height of the full resolution image.
+     *
+     * @return the image height.
+     */
+    public abstract int getHeight();
+
+    /**
+     * Returns the edge length of a tile in pixels of its level.
+     *
+     * @return the tile size.
+     */
+    public abstract int getTileSize();
+
+    /**
+     * Returns the number of resolution levels. The coarsest level fits into a single tile.
+     *
+     * @return the number of levels.
+     */
+    public abstract int getLevelCount();
+
+    /**
+     * Returns the given tile, or null if it is not available yet. In that case, it will be loaded in the background.
+     *
+     * @param level  the resolution level.
+     * @param column the tile column.
+     * @param row    the tile row.
+     * @return the tile, or null.
+     */
+    public abstract BufferedImage getTile(final int level, final int column, final int row);
+
+    /**
+     * Returns the given tile if it is available, without loading it otherwise.
+     *
+     * @param level  the resolution level.
+     * @param column the tile column.
+     * @param row    the tile row.
+     * @return the tile, or null.
+     */
+    public abstract BufferedImage getCachedTile(final int level, final int column, final int row);
+
+    /**
+     * Releases all resources held by this source.
+     */
+    public abstract void dispose();
+
+    /**
+     * Invoked before a paint operation requests tiles.
+     */
+    public void paintStarted() {
+    }
+
+    /**
+     * Invoked once a paint operation has requested all tiles it needs. Requests for tiles which have not been requested
+     * again since paintStarted() may be discarded.
+     */
+    public void paintFinished() {
+    }
+
+    /**
+     * Returns the level which should be painted at the given scale factor: the coarsest level whose resolution is not
+     * below the scaled image.
+     *
+     * @param scaleFactor the scale factor.
+     * @return the level to paint.
+     */
+    public int getLevelFor(final double scaleFactor) {
+        if (scaleFactor >= 0.5 || scaleFactor <= 0)
+            return 0;
+        final int level = (int) Math.floor(Math.log(1 / scaleFactor) / Math.log(2));
+        return Math.min(getLevelCount() - 1, level);
+    }
+
+    /**
+     * Computes the number of levels required for an image of the given size, so that the coarsest level fits into a
+     * single tile.
+     *
+     * @param width    the image width.
+     * @param height   the image height.
+     * @param tileSize the tile size.
+     * @return the number of levels.
+     */
+    protected static int computeLevelCount(final int width, final int height, final int tileSize) {
+        int levelCount = 1;
+        for (long size = Math.max(width, height); size > tileSize; size = (size + 1) / 2)
+            levelCount++;
+        return levelCount;
+    }
+
+    public void addChangeListener(final ChangeListener listener) {
+        _changeListeners.addListener(listener);
+    }
+
+    public void removeChangeListener(final ChangeListener listener) {
+        _changeListeners.removeListener(listener);
+    }
+
+    /**
+     * Notifies all registered listeners on the event dispatch thread that new tiles have become available.
+     */
+    protected void fireStateChanged() {
+        _changeListeners.delegate().stateChanged(new ChangeEvent(this));
+    }
+}
@@ -0,0 +1,322 @@
+package net.sarcommand.swingextensions.imagepanel;
+
+import java.awt.*;
+import java.awt.image.VolatileImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Renders an image as a grid of fixed-size tiles, each of which is held in a VolatileImage of its own. Tiles are
+ * uploaded lazily the first time they become visible, so only the visible part of a huge image occupies video memory.
+ * When painting, only the tiles intersecting the clip are drawn.
+ * <p/>
+ * The cache keeps track of the memory occupied by its tiles. Once the memory budget is exceeded, the tiles which have
+ * not been painted for the longest time are evicted. Tiles painted during the current paint operation are never evicted,
+ * so the budget may be exceeded temporarily if the visible area requires more tiles than the budget allows.
+ * <p/>
+ * Tiles can also be rendered from a reduced resolution level of the image, for instance from a MipmapPyramid. Tiles of
+ * different levels are cached independently.
+ * <p/>
+ * This class is meant to be used on the event dispatch thread only.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+class ImageTileCache {
+    /**
+     * Default edge length of a tile in pixels.
+     */
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    /**
+     * Default amount of memory the tiles may occupy.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    /**
+     * Number of attempts made to render a tile whose contents have been lost while rendering.
+     */
+    private static final int MAX_RENDER_ATTEMPTS = 3;
+
+    protected final int _tileSize;
+    protected final LinkedHashMap<Long, Tile> _tiles;
+
+    protected Image _source;
+    protected int _sourceWidth;
+    protected int _sourceHeight;
+    protected int _transparency;
+
+    protected long _memoryBudget;
+    protected long _usedMemory;
+    protected long _paintCount;
+
+    public ImageTileCache() {
+        this(DEFAULT_TILE_SIZE);
+    }
+
+    public ImageTileCache(final int tileSize) {
+        if (tileSize < 1)
+            throw new IllegalArgumentException("Parameter 'tileSize' must be positive!");
+        _tileSize = tileSize;
+        _tiles = new LinkedHashMap<Long, Tile>(64, 0.75f, true);
+        _memoryBudget = DEFAULT_MEMORY_BUDGET;
+    }
+
+    /**
+     * Sets the image to render, discarding all tiles of the previous image.
+     *
+     * @param source the image to render, may be null.
+     */
+    public void setSource(final Image source) {
+        flush();
+        _source = source;
+        _sourceWidth = source == null ? 0 : source.getWidth(null);
+        _sourceHeight = source == null ? 0 : source.getHeight(null);
+        _transparency = source instanceof Transparency ? ((Transparency) source).getTransparency() :
+                Transparency.TRANSLUCENT;
+    }
+
+    public Image getSource() {
+        return _source;
+    }
+
+    public int getTileSize() {
+        return _tileSize;
+    }
+
+    /**
+     * Sets the amount of memory the tiles may occupy. Each tile is accounted for with four bytes per pixel.
+     *
+     * @param memoryBudget the memory budget in bytes.
+     */
+    public void setMemoryBudget(final long memoryBudget) {
+        if (memoryBudget < 0)
+            throw new IllegalArgumentException("Parameter 'memoryBudget' must not be negative!");
+        _memoryBudget = memoryBudget;
+        evict();
+    }
+
+    public long getMemoryBudget() {
+        return _memoryBudget;
+    }
+
+    /**
+     * Returns the amount of memory currently occupied by the cached tiles.
+     *
+     * @return the occupied memory in bytes.
+     */
+    public long getUsedMemory() {
+        return _usedMemory;
+    }
+
+    public int getTileCount() {
+        return _tiles.size();
+    }
+
+    /**
+     * Paints the tiles intersecting the clip of the given graphics.
+     *
+     * @param g             the graphics to paint on.
+     * @param configuration the configuration to create the tiles for.
+     * @param x             horizontal position of the image's origin.
+     * @param y             vertical position of the image's origin.
+     * @param scaleFactor   the scale factor to apply.
+     */
+    public void paint(final Graphics2D g, final GraphicsConfiguration configuration, final double x, final double y,
+                      final double scaleFactor) {
+        paint(g, configuration, x, y, scaleFactor, 0, _source);
+    }
+
+    /**
+     * Paints the tiles of a reduced resolution level of the image intersecting the clip of the given graphics. The
+     * level image is stretched to cover the area of the full resolution image.
+     *
+     * @param g             the graphics to paint on.
+     * @param configuration the configuration to create the tiles for.
+     * @param x             horizontal position of the image's origin.
+     * @param y             vertical position of the image's origin.
+     * @param scaleFactor   the scale factor to apply to the full resolution image.
+     * @param level         the level to paint, 0 being the full resolution image.
+     * @param levelImage    the image of the given level.
+     */
+    public void paint(final Graphics2D g, final GraphicsConfiguration configuration, final double x, final double y,
+                      final double scaleFactor, final int level, final Image levelImage) {
+        if (_source == null || _sourceWidth <= 0 || _sourceHeight <= 0 || scaleFactor <= 0 || levelImage == null)
+            return;
+
+        final int levelWidth = levelImage.getWidth(null);
+        final int levelHeight = levelImage.getHeight(null);
+        if (levelWidth <= 0 || levelHeight <= 0)
+            return;
+
+        _paintCount++;
+        final double scaleX = scaleFactor * _sourceWidth / levelWidth;
+        final double scaleY = scaleFactor * _sourceHeight / levelHeight;
+        final int columns = (levelWidth + _tileSize - 1) / _tileSize;
+        final int rows = (levelHeight + _tileSize - 1) / _tileSize;
+
+        int firstColumn = 0;
+        int lastColumn = columns - 1;
+        int firstRow = 0;
+        int lastRow = rows - 1;
+        final Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            firstColumn = Math.max(firstColumn, (int) Math.floor((clip.x - x) / (_tileSize * scaleX)));
+            lastColumn = Math.min(lastColumn, (int) Math.floor((clip.x + clip.width - x) / (_tileSize * scaleX)));
+            firstRow = Math.max(firstRow, (int) Math.floor((clip.y - y) / (_tileSize * scaleY)));
+            lastRow = Math.min(lastRow, (int) Math.floor((clip.y + clip.height - y) / (_tileSize * scaleY)));
+        }
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            final int sourceY = row * _tileSize;
+            final int tileHeight = Math.min(_tileSize, levelHeight - sourceY);
+            final int y1 = (int) Math.round(y + sourceY * scaleY);
+            final int y2 = (int) Math.round(y + (sourceY + tileHeight) * scaleY);
+            if (y2 <= y1)
+                continue;
+
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                final int sourceX = column * _tileSize;
+                final int tileWidth = Math.min(_tileSize, levelWidth - sourceX);
+                final int x1 = (int) Math.round(x + sourceX * scaleX);
+                final int x2 = (int) Math.round(x + (sourceX + tileWidth) * scaleX);
+                if (x2 <= x1)
+                    continue;
+
+                final VolatileImage tile = getTile(configuration, level, levelImage, column, row);
+                if (tile != null)
+                    g.drawImage(tile, x1, y1, x2, y2, 0, 0, tileWidth, tileHeight, null);
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Discards all tiles.
+     */
+    public void flush() {
+        for (Tile tile : _tiles.values())
+            tile._image.flush();
+        _tiles.clear();
+        _usedMemory = 0;
+    }
+
+    /**
+     * Returns the tile at the given position, creating or restoring it if necessary.
+     *
+     * @param configuration the configuration to create the tile for.
+     * @param level         the level the tile belongs to.
+     * @param levelImage    the image of the level.
+     * @param column        the tile column.
+     * @param row           the tile row.
+     * @return the tile, or null if it could not be rendered.
+     */
+    protected VolatileImage getTile(final GraphicsConfiguration configuration, final int level, final Image levelImage,
+                                    final int column, final int row) {
+        final Long key = ((long) level << 56) | ((long) row << 28) | column;
+        Tile tile = _tiles.get(key);
+
+        if (tile != null) {
+            final int status = tile._image.validate(configuration);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                removeTile(key);
+                tile = null;
+            } else if (status == VolatileImage.IMAGE_RESTORED && !renderTile(tile._image, levelImage, column, row)) {
+                removeTile(key);
+                return null;
+            }
+        }
+
+        if (tile == null) {
+            final int width = Math.min(_tileSize, levelImage.getWidth(null) - column * _tileSize);
+            final int height = Math.min(_tileSize, levelImage.getHeight(null) - row * _tileSize);
+            final VolatileImage image = configuration.createCompatibleVolatileImage(width, height, _transparency);
+            if (!renderTile(image, levelImage, column, row)) {
+                image.flush();
+                return null;
+            }
+            tile = new Tile(image, 4L * width * height);
+            _tiles.put(key, tile);
+            _usedMemory += tile._size;
+        }
+
+        tile._lastPainted = _paintCount;
+        return tile._image;
+    }
+
+    /**
+     * Copies the source region covered by the given tile into the tile's image.
+     *
+     * @param image      the tile's image.
+     * @param levelImage the image of the level the tile belongs to.
+     * @param column     the tile column.
+     * @param row        the tile row.
+     * @return false if the contents have been lost repeatedly while rendering.
+     */
+    protected boolean renderTile(final VolatileImage image, final Image levelImage, final int column, final int row) {
+        final int sourceX = column * _tileSize;
+        final int sourceY = row * _tileSize;
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        for (int attempt = 0; attempt < MAX_RENDER_ATTEMPTS; attempt++) {
+            final Graphics2D g2 = image.createGraphics();
+            if (_transparency != Transparency.OPAQUE) {
+                g2.setComposite(AlphaComposite.Clear);
+                g2.fillRect(0, 0, width, height);
+                g2.setComposite(AlphaComposite.SrcOver);
+            }
+            g2.drawImage(levelImage, 0, 0, width, height, sourceX, sourceY, sourceX + width, sourceY + height, null);
+            g2.dispose();
+            if (!image.contentsLost())
+                return true;
+        }
+        return false;
+    }
+
+    protected void removeTile(final Long key) {
+        final Tile tile = _tiles.remove(key);
+        if (tile != null) {
+            tile._image.flush();
+            _usedMemory -= tile._size;
+        }
+    }
+
+    /**
+     * Evicts the least recently painted tiles until the memory budget is met, sparing the tiles painted during the
+     * current paint operation.
+     */
+    protected void evict() {
+        final Iterator<Tile> iterator = _tiles.values().iterator();
+        while (_usedMemory > _memoryBudget && iterator.hasNext()) {
+            final Tile tile = iterator.next();
+            if (tile._lastPainted == _paintCount)
+                break;
+            iterator.remove();
+            tile._image.flush();
+            _usedMemory -= tile._size;
+        }
+    }
+
+    /**
+     * A single cached tile.
+     */
+    protected static class Tile {
+        protected final VolatileImage _image;
+        protected final long _size;
+        protected long _lastPainted;
+
+        public Tile(final VolatileImage image, final long size) {
+            _image = image;
+            _size = size;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package net.sarcommand.swingextensions.imagepanel;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * Chooses the interpolation used to paint a scaled image depending on whether the user is currently interacting with
+ * it. While a drag or zoom gesture is in progress, a fast interpolation is used, by default nearest neighbour. Once no
+ * gesture has been reported for the idle delay, the callback passed to the constructor is invoked so that the image can
+ * be painted once more using the idle interpolation, by default bicubic. The callback is only invoked if anything has
+ * actually been painted with the fast interpolation.
+ * <p/>
+ * This class is meant to be used on the event dispatch thread only.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+class InterpolationPolicy {
+    /**
+     * Default time in milliseconds after the last gesture at which the image is painted in high quality.
+     */
+    public static final int DEFAULT_IDLE_DELAY = 200;
+
+    protected final Runnable _idleCallback;
+    protected final Timer _idleTimer;
+
+    protected Object _interactiveInterpolation;
+    protected Object _idleInterpolation;
+    protected boolean _interacting;
+    protected boolean _degraded;
+
+    /**
+     * Creates a new policy.
+     *
+     * @param idleCallback invoked on the event dispatch thread when the image should be repainted in high quality.
+     */
+    public InterpolationPolicy(final Runnable idleCallback) {
+        if (idleCallback == null)
+            throw new IllegalArgumentException("Parameter 'idleCallback' must not be null!");
+        _idleCallback = idleCallback;
+        _interactiveInterpolation = RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+        _idleInterpolation = RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+        _idleTimer = new Timer(DEFAULT_IDLE_DELAY, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                gestureFinished();
+            }
+        });
+        _idleTimer.setRepeats(false);
+    }
+
+    /**
+     * Reports a drag or zoom event. The fast interpolation will be used until no further event has been reported for
+     * the idle delay.
+     */
+    public void gesturePerformed() {
+        _interacting = true;
+        _idleTimer.restart();
+    }
+
+    /**
+     * Returns whether a gesture is currently in progress.
+     *
+     * @return whether the user is interacting with the image.
+     */
+    public boolean isInteracting() {
+        return _interacting;
+    }
+
+    /**
+     * Returns the interpolation to paint with at this moment.
+     *
+     * @return a value of RenderingHints.KEY_INTERPOLATION.
+     */
+    public Object getInterpolation() {
+        if (!_interacting)
+            return _idleInterpolation;
+        if (!_interactiveInterpolation.equals(_idleInterpolation))
+            _degraded = true;
+        return _interactiveInterpolation;
+    }
+
+    /**
+     * Sets the interpolation to paint with at this moment on the given graphics.
+     *
+     * @param g2 the graphics to configure.
+     */
+    public void apply(final Graphics2D g2) {
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, getInterpolation());
+    }
+
+    public Object getInteractiveInterpolation() {
+        return _interactiveInterpolation;
+    }
+
+    public void setInteractiveInterpolation(final Object interpolation) {
+        checkInterpolation(interpolation);
+        _interactiveInterpolation = interpolation;
+    }
+
+    public Object getIdleInterpolation() {
+        return _idleInterpolation;
+    }
+
+    public void setIdleInterpolation(final Object interpolation) {
+        checkInterpolation(interpolation);
+        _idleInterpolation = interpolation;
+    }
+
+    public int getIdleDelay() {
+        return _idleTimer.getInitialDelay();
+    }
+
+    public void setIdleDelay(final int idleDelay) {
+        if (idleDelay < 0)
+            throw new IllegalArgumentException("Parameter 'idleDelay' must not be negative!");
+        _idleTimer.setInitialDelay(idleDelay);
+    }
+
+    /**
+     * Ends the current gesture immediately, without invoking the callback.
+     */
+    public void stop() {
+        _idleTimer.stop();
+        _interacting = false;
+        _degraded = false;
+    }
+
+    protected void gestureFinished() {
+        _interacting = false;
+        if (_degraded) {
+            _degraded = false;
+            _idleCallback.run();
+        }
+    }
+
+    protected static void checkInterpolation(final Object interpolation) {
+        if (interpolation == null)
+            throw new IllegalArgumentException("Parameter 'interpolation' must not be null!");
+        if (!RenderingHints.KEY_INTERPOLATION.isCompatibleValue(interpolation))
+            throw new IllegalArgumentException("Parameter 'interpolation' must be a value of " +
+                    "RenderingHints.KEY_INTERPOLATION!");
+    }
+}
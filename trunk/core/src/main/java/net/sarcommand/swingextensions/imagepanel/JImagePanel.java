@@ -1,9 +1,12 @@
 package net.sarcommand.swingextensions.imagepanel;
 
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.awt.image.VolatileImage;
 
 /**
@@ -18,6 +21,26 @@ import java.awt.image.VolatileImage;
  * to perform particularly sluggish. Please bear in mind that the {@link Transparency} of an image also greatly
  * influences the drawing performance.<br><br>
  * <p/>
+ * Images exceeding TILING_THRESHOLD pixels in either dimension, or all images if tiled rendering has been enabled, are
+ * rendered as a grid of tiles. Tiles are uploaded lazily when they become visible, only the tiles intersecting the clip
+ * are painted, and tiles which have not been painted recently are evicted once the tile memory budget is exceeded.<br><br>
+ * <p/>
+ * When the image is scaled down to less than half its size, it is painted from a mipmap pyramid of successively halved
+ * copies, which is built on a background thread the first time it is needed. Until the appropriate level is available,
+ * the closest finer level is used.<br><br>
+ * <p/>
+ * Instead of an Image, the panel can also display an ImageSource, for instance a FileImageSource decoding the visible
+ * regions of an image file on demand. Tiles which have not been loaded yet are painted from the closest coarser level
+ * available until they arrive.<br><br>
+ * <p/>
+ * By default, the panel retains its rendered contents in a back buffer. When the image is dragged, the contents are
+ * moved using copyArea and only the newly exposed strips are rendered, while drag events are coalesced into one repaint
+ * per PAN_REPAINT_INTERVAL.<br><br>
+ * <p/>
+ * While the image is being dragged or zoomed, it is painted using nearest neighbour interpolation. Once the gesture has
+ * been idle for a short delay, the image is painted once more using bicubic interpolation. Both interpolations and the
+ * delay can be configured.<br><br>
+ * <p/>
  * The JImagePanel class offers several static conveniance methods to create preconfigured instances and frames or
  * dialogs wrapping a JImagePanel.
  * <p/>
@@ -33,6 +56,16 @@ import java.awt.image.VolatileImage;
  * specific language governing permissions and limitations under the License.
  */
 public class JImagePanel extends JPanel implements Scrollable {
+    /**
+     * Images exceeding this size in either dimension will always be rendered as tiles, as a single VolatileImage of
+     * that size could not be created on most systems.
+     */
+    public static final int TILING_THRESHOLD = 4096;
+
+    /**
+     * Interval in milliseconds at which drag events are turned into repaints, roughly matching the display refresh rate.
+     */
+    public static final int PAN_REPAINT_INTERVAL = 16;
 
     public static enum ScaleMode {
         /**
@@ -168,6 +201,68 @@ public class JImagePanel extends JPanel implements Scrollable {
      */
     protected transient VolatileImage _buffer;
 
+    /**
+     * Tile cache used to render the image if tiled rendering is active.
+     */
+    protected transient ImageTileCache _tileCache;
+
+    /**
+     * Determines whether all images should be rendered as tiles, regardless of their size.
+     */
+    protected boolean _tiled;
+
+    /**
+     * Reduced resolution copies of the image used when zoomed out, built lazily.
+     */
+    protected transient MipmapPyramid _pyramid;
+
+    /**
+     * Determines whether the mipmap pyramid should be used when the image is zoomed out.
+     */
+    protected boolean _mipmapsEnabled;
+
+    /**
+     * Tiled source displayed instead of an image, may be null.
+     */
+    protected transient ImageSource _imageSource;
+
+    /**
+     * Listener repainting the panel when new tiles of the image source become available.
+     */
+    protected ChangeListener _imageSourceListener;
+
+    /**
+     * Determines whether the panel retains its rendered contents and scrolls them when the image is translated.
+     */
+    protected boolean _blitScrolling;
+
+    /**
+     * Back buffer retaining the rendered contents of the panel if blit scrolling is enabled.
+     */
+    protected transient VolatileImage _backBuffer;
+
+    /**
+     * Whether the contents of the back buffer match the current image and scale factor.
+     */
+    protected boolean _backBufferValid;
+
+    /**
+     * Translation and scale factor at which the back buffer has been rendered.
+     */
+    protected double _backBufferTranslationX;
+    protected double _backBufferTranslationY;
+    protected double _backBufferScale;
+
+    /**
+     * Timer coalescing the repaints caused by drag events.
+     */
+    protected Timer _panTimer;
+
+    /**
+     * Chooses the interpolation depending on whether the image is being dragged or zoomed.
+     */
+    protected InterpolationPolicy _interpolationPolicy;
+
     /**
      * The image's original width.
      */
@@ -283,6 +378,25 @@ public class JImagePanel extends JPanel implements Scrollable {
         _translationX = 0.;
         _translationY = 0.;
         _transform = new AffineTransform();
+        _tileCache = new ImageTileCache();
+        _mipmapsEnabled = true;
+        _blitScrolling = true;
+        _imageSourceListener = new ChangeListener() {
+            public void stateChanged(final ChangeEvent e) {
+                repaintImage();
+            }
+        };
+        _panTimer = new Timer(PAN_REPAINT_INTERVAL, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                repaint();
+            }
+        });
+        _panTimer.setRepeats(false);
+        _interpolationPolicy = new InterpolationPolicy(new Runnable() {
+            public void run() {
+                repaintImage();
+            }
+        });
     }
 
     /**
@@ -299,10 +413,11 @@ public class JImagePanel extends JPanel implements Scrollable {
             public void mouseWheelMoved(MouseWheelEvent e) {
                 if (_scalable) {
                     _scaleMode = ScaleMode.SCALE_MANUALLY;
+                    _interpolationPolicy.gesturePerformed();
                     _scaleFactor *= e.getUnitsToScroll() > 0 ? 1 + 0.03 * _scaleRate : 1 - 0.03 * _scaleRate;
                     if (_scaleFactor < 0)
                         _scaleFactor = 0.01;
-                    repaint();
+                    repaintImage();
                 }
             }
         };
@@ -354,7 +469,11 @@ public class JImagePanel extends JPanel implements Scrollable {
                             }
                         }
                         _lastMousePos = p;
-                        repaint();
+                        _interpolationPolicy.gesturePerformed();
+
+                        /* Several drag events may arrive per frame, only the last position needs to be painted */
+                        if (!_panTimer.isRunning())
+                            _panTimer.start();
                     }
                 }
             }
@@ -375,31 +494,174 @@ public class JImagePanel extends JPanel implements Scrollable {
      * @param image Image to display.
      */
     public void setImage(final Image image) {
+        if (_imageSource != null) {
+            _imageSource.removeChangeListener(_imageSourceListener);
+            _imageSource = null;
+        }
         _image = image;
         _imageWidth = image != null ? image.getWidth(null) : 0;
         _imageHeight = image != null ? image.getHeight(null) : 0;
 
-        if (_image != null) {
-            final int transparency = (image instanceof Transparency) ? ((Transparency) image).getTransparency() : Transparency.TRANSLUCENT;
-            final GraphicsConfiguration graphicsConfiguration = getGraphicsConfiguration();
-            if (graphicsConfiguration != null)
-                _buffer = graphicsConfiguration.createCompatibleVolatileImage(_imageWidth, _imageHeight, transparency);
-            else
-                _buffer = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration().createCompatibleVolatileImage(
-                        _imageWidth, _imageHeight, transparency);
-            final Graphics g2 = _buffer.createGraphics();
-            g2.drawImage(image, 0, 0, null);
+        if (_pyramid != null)
+            _pyramid.dispose();
+        _pyramid = image != null ? new MipmapPyramid(image, new Runnable() {
+            public void run() {
+                repaintImage();
+            }
+        }) : null;
 
+        createImageBuffer();
+        if (_image != null) {
             final Container parent = getParent();
             if (parent != null)
                 parent.validate();
 
             setPreferredSize(new Dimension(_imageWidth, _imageHeight));
-        } else
-            _buffer = null;
+        }
 
         setToIdentity();
-        repaint();
+        repaintImage();
+    }
+
+    /**
+     * Creates the buffer used to render the current image: Either a single VolatileImage holding the entire image, or
+     * a tile cache if tiled rendering is active.
+     */
+    protected void createImageBuffer() {
+        _buffer = null;
+        _tileCache.setSource(null);
+        if (_image == null)
+            return;
+
+        if (isTiledRendering()) {
+            _tileCache.setSource(_image);
+            return;
+        }
+
+        final int transparency = (_image instanceof Transparency) ? ((Transparency) _image).getTransparency() : Transparency.TRANSLUCENT;
+        final GraphicsConfiguration graphicsConfiguration = getGraphicsConfiguration();
+        if (graphicsConfiguration != null)
+            _buffer = graphicsConfiguration.createCompatibleVolatileImage(_imageWidth, _imageHeight, transparency);
+        else
+            _buffer = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration().createCompatibleVolatileImage(
+                    _imageWidth, _imageHeight, transparency);
+        final Graphics g2 = _buffer.createGraphics();
+        g2.drawImage(_image, 0, 0, null);
+        g2.dispose();
+    }
+
+    /**
+     * Returns whether the current image is rendered as tiles, either because tiled rendering has been enabled or
+     * because the image exceeds TILING_THRESHOLD.
+     *
+     * @return whether the current image is rendered as tiles.
+     */
+    public boolean isTiledRendering() {
+        return _tiled || _imageWidth > TILING_THRESHOLD || _imageHeight > TILING_THRESHOLD;
+    }
+
+    /**
+     * Returns whether all images will be rendered as tiles, regardless of their size.
+     *
+     * @return whether tiled rendering has been enabled.
+     */
+    public boolean isTiled() {
+        return _tiled;
+    }
+
+    /**
+     * Determines whether all images should be rendered as tiles, regardless of their size. Images exceeding
+     * TILING_THRESHOLD are always rendered as tiles.
+     *
+     * @param tiled whether tiled rendering should be enabled.
+     */
+    public void setTiled(final boolean tiled) {
+        if (_tiled == tiled)
+            return;
+        _tiled = tiled;
+        createImageBuffer();
+        repaintImage();
+    }
+
+    /**
+     * Returns whether a mipmap pyramid will be used to paint the image when it is scaled to less than half its size.
+     *
+     * @return whether mipmaps are enabled.
+     */
+    public boolean isMipmapsEnabled() {
+        return _mipmapsEnabled;
+    }
+
+    /**
+     * Determines whether a mipmap pyramid should be used to paint the image when it is scaled to less than half its
+     * size. The pyramid requires up to a third of the image's memory in addition.
+     *
+     * @param mipmapsEnabled whether mipmaps should be used.
+     */
+    public void setMipmapsEnabled(final boolean mipmapsEnabled) {
+        _mipmapsEnabled = mipmapsEnabled;
+        repaintImage();
+    }
+
+    /**
+     * Returns the pyramid level to paint from at the current scale factor, starting to build the pyramid if necessary.
+     *
+     * @return the level to paint from, 0 being the full resolution image.
+     */
+    protected int getPaintLevel() {
+        if (!_mipmapsEnabled || _pyramid == null || _pyramid.getIdealLevel(_scaleFactor) == 0)
+            return 0;
+        _pyramid.build();
+        return _pyramid.getLevelFor(_scaleFactor);
+    }
+
+    /**
+     * Returns the amount of memory the tiles of an image may occupy when tiled rendering is active.
+     *
+     * @return the tile memory budget in bytes.
+     */
+    public long getTileMemoryBudget() {
+        return _tileCache.getMemoryBudget();
+    }
+
+    /**
+     * Sets the amount of memory the tiles of an image may occupy when tiled rendering is active. Once the budget is
+     * exceeded, the tiles which have not been visible for the longest time will be discarded.
+     *
+     * @param tileMemoryBudget the tile memory budget in bytes.
+     */
+    public void setTileMemoryBudget(final long tileMemoryBudget) {
+        _tileCache.setMemoryBudget(tileMemoryBudget);
+    }
+
+    /**
+     * Sets a tiled image source to be displayed instead of an image. The panel will request the visible tiles from the
+     * source and repaint whenever new tiles become available. The source will not be disposed of by the panel.
+     *
+     * @param imageSource the source to display, may be null.
+     */
+    public void setImageSource(final ImageSource imageSource) {
+        setImage(null);
+        _imageSource = imageSource;
+        if (imageSource != null) {
+            imageSource.addChangeListener(_imageSourceListener);
+            _imageWidth = imageSource.getWidth();
+            _imageHeight = imageSource.getHeight();
+            setPreferredSize(new Dimension(_imageWidth, _imageHeight));
+            final Container parent = getParent();
+            if (parent != null)
+                parent.validate();
+        }
+        repaintImage();
+    }
+
+    /**
+     * Returns the tiled image source currently displayed.
+     *
+     * @return the current image source, or null if an image or nothing is displayed.
+     */
+    public ImageSource getImageSource() {
+        return _imageSource;
     }
 
     /**
@@ -418,8 +680,233 @@ public class JImagePanel extends JPanel implements Scrollable {
      */
     @Override
     protected void paintComponent(Graphics g) {
+        if (_blitScrolling && (_image != null || _imageSource != null) && getGraphicsConfiguration() != null &&
+                getWidth() > 0 && getHeight() > 0) {
+            paintBackBuffer((Graphics2D) g);
+            return;
+        }
         super.paintComponent(g);
-        if (_buffer != null) {
+        final Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            paintImage(g2);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Paints the panel through the retained back buffer. If only the translation has changed by whole pixels since the
+     * back buffer was rendered, its contents are moved using copyArea and only the newly exposed strips are rendered.
+     * Otherwise, the entire back buffer is rendered again.
+     *
+     * @param g graphics to paint on.
+     */
+    protected void paintBackBuffer(final Graphics2D g) {
+        final GraphicsConfiguration configuration = getGraphicsConfiguration();
+        final int width = getWidth();
+        final int height = getHeight();
+
+        boolean renderAll = !_backBufferValid || _backBufferScale != _scaleFactor;
+        if (_backBuffer != null) {
+            final int status = _backBuffer.validate(configuration);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE || _backBuffer.getWidth() != width ||
+                    _backBuffer.getHeight() != height) {
+                _backBuffer.flush();
+                _backBuffer = null;
+            } else if (status == VolatileImage.IMAGE_RESTORED)
+                renderAll = true;
+        }
+        if (_backBuffer == null) {
+            _backBuffer = configuration.createCompatibleVolatileImage(width, height, isOpaque() ? Transparency.OPAQUE :
+                    Transparency.TRANSLUCENT);
+            renderAll = true;
+        }
+
+        final Graphics2D bufferGraphics = _backBuffer.createGraphics();
+        try {
+            final double dx = _translationX - _backBufferTranslationX;
+            final double dy = _translationY - _backBufferTranslationY;
+            if (!renderAll && (dx != Math.rint(dx) || dy != Math.rint(dy) || Math.abs(dx) >= width ||
+                    Math.abs(dy) >= height))
+                renderAll = true;
+
+            if (renderAll)
+                renderBackBuffer(bufferGraphics, 0, 0, width, height);
+            else if (dx != 0 || dy != 0) {
+                final int shiftX = (int) dx;
+                final int shiftY = (int) dy;
+                bufferGraphics.copyArea(0, 0, width, height, shiftX, shiftY);
+                if (shiftX > 0)
+                    renderBackBuffer(bufferGraphics, 0, 0, shiftX, height);
+                else if (shiftX < 0)
+                    renderBackBuffer(bufferGraphics, width + shiftX, 0, -shiftX, height);
+                if (shiftY > 0)
+                    renderBackBuffer(bufferGraphics, 0, 0, width, shiftY);
+                else if (shiftY < 0)
+                    renderBackBuffer(bufferGraphics, 0, height + shiftY, width, -shiftY);
+            }
+        } finally {
+            bufferGraphics.dispose();
+        }
+
+        _backBufferTranslationX = _translationX;
+        _backBufferTranslationY = _translationY;
+        _backBufferScale = _scaleFactor;
+        _backBufferValid = true;
+
+        g.drawImage(_backBuffer, 0, 0, null);
+        if (_backBuffer.contentsLost())
+            repaintImage();
+    }
+
+    /**
+     * Renders the background and the image into the given region of the back buffer.
+     *
+     * @param bufferGraphics graphics of the back buffer.
+     * @param x              left edge of the region.
+     * @param y              top edge of the region.
+     * @param width          width of the region.
+     * @param height         height of the region.
+     */
+    protected void renderBackBuffer(final Graphics2D bufferGraphics, final int x, final int y, final int width,
+                                    final int height) {
+        final Graphics2D g2 = (Graphics2D) bufferGraphics.create();
+        try {
+            g2.clipRect(x, y, width, height);
+            if (!isOpaque()) {
+                g2.setComposite(AlphaComposite.Clear);
+                g2.fillRect(x, y, width, height);
+                g2.setComposite(AlphaComposite.SrcOver);
+            }
+            super.paintComponent(g2);
+            paintImage(g2);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Discards the contents of the back buffer and repaints the panel. Invoked whenever anything but the translation of
+     * the image has changed.
+     */
+    protected void repaintImage() {
+        _backBufferValid = false;
+        repaint();
+    }
+
+    /**
+     * Returns whether the panel retains its rendered contents to scroll them when the image is dragged.
+     *
+     * @return whether blit scrolling is enabled.
+     */
+    public boolean isBlitScrolling() {
+        return _blitScrolling;
+    }
+
+    /**
+     * Determines whether the panel should retain its rendered contents in a back buffer. While the image is being
+     * dragged, the contents of the back buffer are then moved and only the newly exposed strips are rendered, instead
+     * of rendering the entire visible area for every frame. The back buffer occupies four bytes per pixel of the panel.
+     *
+     * @param blitScrolling whether blit scrolling should be enabled.
+     */
+    public void setBlitScrolling(final boolean blitScrolling) {
+        _blitScrolling = blitScrolling;
+        if (!blitScrolling && _backBuffer != null) {
+            _backBuffer.flush();
+            _backBuffer = null;
+        }
+        repaintImage();
+    }
+
+    /**
+     * Returns the interpolation used while the image is being dragged or zoomed.
+     *
+     * @return a value of RenderingHints.KEY_INTERPOLATION.
+     */
+    public Object getInteractiveInterpolation() {
+        return _interpolationPolicy.getInteractiveInterpolation();
+    }
+
+    /**
+     * Sets the interpolation used while the image is being dragged or zoomed. Defaults to nearest neighbour.
+     *
+     * @param interpolation a value of RenderingHints.KEY_INTERPOLATION.
+     */
+    public void setInteractiveInterpolation(final Object interpolation) {
+        _interpolationPolicy.setInteractiveInterpolation(interpolation);
+        repaintImage();
+    }
+
+    /**
+     * Returns the interpolation used while the image is not being dragged or zoomed.
+     *
+     * @return a value of RenderingHints.KEY_INTERPOLATION.
+     */
+    public Object getIdleInterpolation() {
+        return _interpolationPolicy.getIdleInterpolation();
+    }
+
+    /**
+     * Sets the interpolation used while the image is not being dragged or zoomed. Defaults to bicubic.
+     *
+     * @param interpolation a value of RenderingHints.KEY_INTERPOLATION.
+     */
+    public void setIdleInterpolation(final Object interpolation) {
+        _interpolationPolicy.setIdleInterpolation(interpolation);
+        repaintImage();
+    }
+
+    /**
+     * Returns the time after the last drag or zoom event at which the image is painted using the idle interpolation.
+     *
+     * @return the idle delay in milliseconds.
+     */
+    public int getIdleDelay() {
+        return _interpolationPolicy.getIdleDelay();
+    }
+
+    /**
+     * Sets the time after the last drag or zoom event at which the image is painted using the idle interpolation.
+     *
+     * @param idleDelay the idle delay in milliseconds.
+     */
+    public void setIdleDelay(final int idleDelay) {
+        _interpolationPolicy.setIdleDelay(idleDelay);
+    }
+
+    /**
+     * Paints the image according to the scale and translation parameters set, using the interpolation appropriate for
+     * the current interaction. The rendering hints of the given graphics will be modified.
+     *
+     * @param g graphics to paint on.
+     */
+    protected void paintImage(final Graphics2D g) {
+        _interpolationPolicy.apply(g);
+        if (_imageSource != null) {
+            final double x = (getWidth() - _imageWidth * _scaleFactor) / 2 + _translationX;
+            final double y = (getHeight() - _imageHeight * _scaleFactor) / 2 + _translationY;
+            paintImageSource(g, x, y);
+            return;
+        }
+
+        final int level = _image == null ? 0 : getPaintLevel();
+        if (_image != null && isTiledRendering()) {
+            final double x = (getWidth() - _imageWidth * _scaleFactor) / 2 + _translationX;
+            final double y = (getHeight() - _imageHeight * _scaleFactor) / 2 + _translationY;
+            _tileCache.paint(g, getGraphicsConfiguration(), x, y, _scaleFactor, level,
+                    _pyramid.getLevel(level));
+        } else if (_image != null && level > 0) {
+            final Image levelImage = _pyramid.getLevel(level);
+            final double x = (getWidth() - _imageWidth * _scaleFactor) / 2 + _translationX;
+            final double y = (getHeight() - _imageHeight * _scaleFactor) / 2 + _translationY;
+
+            _transform.setToIdentity();
+            _transform.translate(x, y);
+            _transform.scale(_scaleFactor * _imageWidth / levelImage.getWidth(null),
+                    _scaleFactor * _imageHeight / levelImage.getHeight(null));
+            g.drawImage(levelImage, _transform, null);
+        } else if (_buffer != null) {
 
             /* Update the image if necessary */
             switch (_buffer.validate(getGraphicsConfiguration())) {
@@ -434,8 +921,6 @@ public class JImagePanel extends JPanel implements Scrollable {
                     } while (_buffer.contentsLost());
             }
 
-            final Graphics2D g2 = (Graphics2D) g;
-
             final int width = getWidth();
             final int height = getHeight();
 
@@ -449,7 +934,103 @@ public class JImagePanel extends JPanel implements Scrollable {
             _transform.scale(_scaleFactor, _scaleFactor);
 
             /* Draw the image buffer */
-            g2.drawImage(_buffer, _transform, null);
+            g.drawImage(_buffer, _transform, null);
+        }
+    }
+
+    /**
+     * Paints the visible tiles of the image source at the level appropriate for the current scale factor. Tiles which
+     * are not available yet are painted from the closest coarser level which is.
+     *
+     * @param g2 graphics to paint on.
+     * @param x  horizontal position of the image's origin.
+     * @param y  vertical position of the image's origin.
+     */
+    protected void paintImageSource(final Graphics2D g2, final double x, final double y) {
+        final ImageSource source = _imageSource;
+        final int level = source.getLevelFor(_scaleFactor);
+        final long extent = (long) source.getTileSize() << level;
+        final int columns = (int) ((_imageWidth + extent - 1) / extent);
+        final int rows = (int) ((_imageHeight + extent - 1) / extent);
+        final double scaledExtent = extent * _scaleFactor;
+        final Rectangle visible = getVisibleRect();
+
+        final int firstColumn = Math.max(0, (int) Math.floor((visible.x - x) / scaledExtent));
+        final int lastColumn = Math.min(columns - 1, (int) Math.floor((visible.x + visible.width - x) / scaledExtent));
+        final int firstRow = Math.max(0, (int) Math.floor((visible.y - y) / scaledExtent));
+        final int lastRow = Math.min(rows - 1, (int) Math.floor((visible.y + visible.height - y) / scaledExtent));
+
+        source.paintStarted();
+        try {
+            /* The coarsest level is a single tile and serves as the fallback for everything else */
+            source.getTile(source.getLevelCount() - 1, 0, 0);
+
+            final Rectangle bounds = new Rectangle();
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    final long x0 = column * extent;
+                    final long y0 = row * extent;
+                    final long x1 = Math.min(_imageWidth, x0 + extent);
+                    final long y1 = Math.min(_imageHeight, y0 + extent);
+                    final int destX = (int) Math.round(x + x0 * _scaleFactor);
+                    final int destY = (int) Math.round(y + y0 * _scaleFactor);
+                    bounds.setBounds(destX, destY, (int) Math.round(x + x1 * _scaleFactor) - destX,
+                            (int) Math.round(y + y1 * _scaleFactor) - destY);
+                    if (bounds.isEmpty())
+                        continue;
+
+                    final BufferedImage tile = source.getTile(level, column, row);
+                    if (tile != null)
+                        g2.drawImage(tile, bounds.x, bounds.y, bounds.width, bounds.height, null);
+                    else
+                        paintFallbackTile(g2, source, level, x0, y0, x1, y1, bounds);
+                }
+            }
+        } finally {
+            source.paintFinished();
+        }
+    }
+
+    /**
+     * Paints the region of a missing tile from the closest coarser level available.
+     *
+     * @param g2     graphics to paint on.
+     * @param source the image source.
+     * @param level  level of the missing tile.
+     * @param x0     left edge of the tile in full resolution pixels.
+     * @param y0     top edge of the tile in full resolution pixels.
+     * @param x1     right edge of the tile in full resolution pixels.
+     * @param y1     bottom edge of the tile in full resolution pixels.
+     * @param bounds area covered by the tile on screen.
+     */
+    protected void paintFallbackTile(final Graphics2D g2, final ImageSource source, final int level, final long x0,
+                                     final long y0, final long x1, final long y1, final Rectangle bounds) {
+        for (int coarser = level + 1; coarser < source.getLevelCount(); coarser++) {
+            final long extent = (long) source.getTileSize() << coarser;
+            final int column = (int) (x0 / extent);
+            final int row = (int) (y0 / extent);
+            final BufferedImage tile = source.getCachedTile(coarser, column, row);
+            if (tile == null)
+                continue;
+
+            /* region of the missing tile within the coarser tile, in pixels of the coarser level */
+            final int sx1 = (int) ((x0 - column * extent) >> coarser);
+            final int sy1 = (int) ((y0 - row * extent) >> coarser);
+            final int sx2 = (int) Math.min(tile.getWidth(), ((x1 - column * extent) + (1L << coarser) - 1) >> coarser);
+            final int sy2 = (int) Math.min(tile.getHeight(), ((y1 - row * extent) + (1L << coarser) - 1) >> coarser);
+            if (sx2 <= sx1 || sy2 <= sy1)
+                return;
+
+            final Shape clip = g2.getClip();
+            g2.clipRect(bounds.x, bounds.y, bounds.width, bounds.height);
+            final double scale = _scaleFactor * (1L << coarser);
+            final double originX = bounds.x - ((x0 - column * extent) - ((long) sx1 << coarser)) * _scaleFactor;
+            final double originY = bounds.y - ((y0 - row * extent) - ((long) sy1 << coarser)) * _scaleFactor;
+            g2.drawImage(tile, (int) Math.round(originX), (int) Math.round(originY),
+                    (int) Math.round(originX + (sx2 - sx1) * scale), (int) Math.round(originY + (sy2 - sy1) * scale),
+                    sx1, sy1, sx2, sy2, null);
+            g2.setClip(clip);
+            return;
         }
     }
 
@@ -567,7 +1148,7 @@ public class JImagePanel extends JPanel implements Scrollable {
         _translationY = 0;
         _scaleFactor = 1;
         _scaleMode = ScaleMode.SCALE_MANUALLY;
-        repaint();
+        repaintImage();
     }
 
     /**
@@ -597,7 +1178,7 @@ public class JImagePanel extends JPanel implements Scrollable {
     public void setScaleMode(final ScaleMode scaleMode) {
         _scaleMode = scaleMode;
         updateScaleFactor();
-        repaint();
+        repaintImage();
     }
 
     /**
@@ -616,7 +1197,7 @@ public class JImagePanel extends JPanel implements Scrollable {
      */
     public void setScaleFactor(final double scaleFactor) {
         _scaleFactor = scaleFactor;
-        repaint();
+        repaintImage();
     }
 
     /**
@@ -659,7 +1240,8 @@ public class JImagePanel extends JPanel implements Scrollable {
      * @see javax.swing.Scrollable#getPreferredScrollableViewportSize()
      */
     public Dimension getPreferredScrollableViewportSize() {
-        return _image == null ? new Dimension(20, 20) : new Dimension(_imageWidth, _imageHeight);
+        return _image == null && _imageSource == null ? new Dimension(20, 20) : new Dimension(_imageWidth,
+                _imageHeight);
     }
 
     /**
@@ -690,6 +1272,30 @@ public class JImagePanel extends JPanel implements Scrollable {
         return 20;
     }
 
+    /**
+     * Overridden to release the image tiles, which are bound to the graphics configuration of the current screen.
+     */
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        _tileCache.flush();
+        _panTimer.stop();
+        _interpolationPolicy.stop();
+        if (_backBuffer != null) {
+            _backBuffer.flush();
+            _backBuffer = null;
+        }
+    }
+
+    /**
+     * Overridden to discard the back buffer, which contains the previous background.
+     */
+    @Override
+    public void setBackground(final Color bg) {
+        super.setBackground(bg);
+        _backBufferValid = false;
+    }
+
     /**
      * @see Component#setBounds(int, int, int, int)
      */
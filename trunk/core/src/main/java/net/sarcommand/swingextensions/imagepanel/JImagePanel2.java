@@ -3,6 +3,7 @@ package net.sarcommand.swingextensions.imagepanel;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
@@ -41,6 +42,7 @@ public class JImagePanel2 extends JViewport {
             public void mouseWheelMoved(final MouseWheelEvent e) {
                 final double increment = e.getUnitsToScroll() > 0 ? 1.05 : 0.95;
                 final double newScale = _imagePanel.getScaleFactor() * increment;
+                _imagePanel.getInterpolationPolicy().gesturePerformed();
                 setScale(newScale);
             }
         });
@@ -57,6 +59,7 @@ public class JImagePanel2 extends JViewport {
                 else
                     return;
                 final double newScale = _imagePanel.getScaleFactor() * increment;
+                _imagePanel.getInterpolationPolicy().gesturePerformed();
                 setScale(newScale);
             }
         });
@@ -98,6 +101,9 @@ public class JImagePanel2 extends JViewport {
         final double relY = (viewPosition.y + halfHeight) / size0.getHeight();
 
         _imagePanel.setScaleFactor(scale);
+        for (JComponent overlay : _overlays)
+            if (overlay instanceof VectorOverlay)
+                ((VectorOverlay) overlay).setScaleFactor(scale);
         validate();
 
         final Dimension size1 = getViewSize();
@@ -160,12 +166,69 @@ public class JImagePanel2 extends JViewport {
         removeAllOverlays(JLayeredPane.PALETTE_LAYER);
     }
 
+    /**
+     * Sets the interpolation used while the image is being zoomed. Defaults to nearest neighbour.
+     *
+     * @param interpolation a value of RenderingHints.KEY_INTERPOLATION.
+     */
+    public void setInteractiveInterpolation(final Object interpolation) {
+        _imagePanel.getInterpolationPolicy().setInteractiveInterpolation(interpolation);
+        _imagePanel.repaint();
+    }
+
+    public Object getInteractiveInterpolation() {
+        return _imagePanel.getInterpolationPolicy().getInteractiveInterpolation();
+    }
+
+    /**
+     * Sets the interpolation used while the image is not being zoomed. Defaults to bicubic.
+     *
+     * @param interpolation a value of RenderingHints.KEY_INTERPOLATION.
+     */
+    public void setIdleInterpolation(final Object interpolation) {
+        _imagePanel.getInterpolationPolicy().setIdleInterpolation(interpolation);
+        _imagePanel.repaint();
+    }
+
+    public Object getIdleInterpolation() {
+        return _imagePanel.getInterpolationPolicy().getIdleInterpolation();
+    }
+
+    /**
+     * Sets the time after the last zoom event at which the image is painted using the idle interpolation.
+     *
+     * @param idleDelay the idle delay in milliseconds.
+     */
+    public void setIdleDelay(final int idleDelay) {
+        _imagePanel.getInterpolationPolicy().setIdleDelay(idleDelay);
+    }
+
+    public int getIdleDelay() {
+        return _imagePanel.getInterpolationPolicy().getIdleDelay();
+    }
+
+    /**
+     * Paints the image at the current scale factor. When zoomed out to less than half the image size, the image is
+     * painted from a mipmap pyramid which is built on a background thread the first time it is needed. While the image
+     * is being zoomed, a fast interpolation is used until the gesture has been idle for a short delay.
+     */
     protected static class ImagePanel extends JPanel {
         private BufferedImage _image;
+        private MipmapPyramid _pyramid;
         private double _scaleFactor;
+        private final InterpolationPolicy _interpolationPolicy;
 
         public ImagePanel() {
             _scaleFactor = 1.0d;
+            _interpolationPolicy = new InterpolationPolicy(new Runnable() {
+                public void run() {
+                    repaint();
+                }
+            });
+        }
+
+        InterpolationPolicy getInterpolationPolicy() {
+            return _interpolationPolicy;
         }
 
         public void setScaleFactor(final double scaleFactor) {
@@ -178,6 +241,13 @@ public class JImagePanel2 extends JViewport {
 
         public void setImage(final BufferedImage image) {
             _image = image;
+            if (_pyramid != null)
+                _pyramid.dispose();
+            _pyramid = image != null ? new MipmapPyramid(image, new Runnable() {
+                public void run() {
+                    repaint();
+                }
+            }) : null;
         }
 
         @Override
@@ -185,9 +255,20 @@ public class JImagePanel2 extends JViewport {
             super.paintComponent(g);
             final Graphics2D g2 = (Graphics2D) g;
             if (_image != null) {
-                g2.scale(_scaleFactor, _scaleFactor);
-                g2.drawImage(_image, 0, 0, null);
-                g2.scale(1 / _scaleFactor, 1 / _scaleFactor);
+                Image image = _image;
+                double scaleX = _scaleFactor;
+                double scaleY = _scaleFactor;
+                if (_pyramid.getIdealLevel(_scaleFactor) > 0) {
+                    _pyramid.build();
+                    image = _pyramid.getLevel(_pyramid.getLevelFor(_scaleFactor));
+                    scaleX = _scaleFactor * _image.getWidth() / image.getWidth(null);
+                    scaleY = _scaleFactor * _image.getHeight() / image.getHeight(null);
+                }
+                final AffineTransform transform = g2.getTransform();
+                _interpolationPolicy.apply(g2);
+                g2.scale(scaleX, scaleY);
+                g2.drawImage(image, 0, 0, null);
+                g2.setTransform(transform);
             }
         }
     }
@@ -196,7 +277,16 @@ public class JImagePanel2 extends JViewport {
         addOverlay(overlay, JLayeredPane.PALETTE_LAYER);
     }
 
+    /**
+     * Adds an overlay component on top of the image. The overlay will be sized to the scaled image. VectorOverlays will
+     * additionally be kept informed about the current scale factor.
+     *
+     * @param overlay the overlay to add.
+     * @param layer   the layer to add the overlay to.
+     */
     public void addOverlay(final JComponent overlay, final Integer layer) {
+        if (overlay instanceof VectorOverlay)
+            ((VectorOverlay) overlay).setScaleFactor(_imagePanel.getScaleFactor());
         _overlays.add(overlay);
         _layeredPane.add(overlay, layer);
         overlay.setSize(_layeredPane.getSize());
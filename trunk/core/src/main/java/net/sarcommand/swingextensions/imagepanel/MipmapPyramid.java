@@ -0,0 +1,234 @@
+package net.sarcommand.swingextensions.imagepanel;
+
+import net.sarcommand.swingextensions.utilities.LoadingScheduler;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+/**
+ * A sequence of successively halved copies of an image, used to paint zoomed out views without downsampling the full
+ * resolution image on every paint. Level 0 is the image itself, level n has 1/2^n of its size. Each level is computed
+ * from the previous one by averaging blocks of 2x2 pixels, so the result is properly filtered rather than aliased.
+ * <p/>
+ * The levels are built on a background thread once build() has been invoked. While the pyramid is being built,
+ * getLevelFor returns the closest level which is already available. The callback passed to the constructor is invoked
+ * on the event dispatch thread whenever a new level has become available.
+ * <p/>
+ * Levels are stored as TYPE_INT_RGB images for opaque sources and as TYPE_INT_ARGB_PRE images otherwise, and are written
+ * through their rasters' data elements so that Java2D can still cache them in video memory.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+class MipmapPyramid {
+    /**
+     * No levels will be built below this edge length.
+     */
+    public static final int MINIMUM_LEVEL_SIZE = 32;
+
+    protected final Image _source;
+    protected final int _width;
+    protected final int _height;
+    protected final boolean _opaque;
+    protected final Runnable _levelReadyCallback;
+
+    protected final Image[] _levels;
+    protected volatile int _readyLevels;
+    protected volatile boolean _building;
+    protected volatile boolean _disposed;
+
+    /**
+     * Creates a new pyramid for the given image. No levels will be built until build() is invoked.
+     *
+     * @param source             the full resolution image.
+     * @param levelReadyCallback invoked on the event dispatch thread when a new level is available, may be null.
+     */
+    public MipmapPyramid(final Image source, final Runnable levelReadyCallback) {
+        if (source == null)
+            throw new IllegalArgumentException("Parameter 'source' must not be null!");
+        _source = source;
+        _width = source.getWidth(null);
+        _height = source.getHeight(null);
+        _opaque = source instanceof Transparency && ((Transparency) source).getTransparency() == Transparency.OPAQUE;
+        _levelReadyCallback = levelReadyCallback;
+
+        int levelCount = 1;
+        for (int size = Math.max(_width, _height); size / 2 >= MINIMUM_LEVEL_SIZE; size /= 2)
+            levelCount++;
+        _levels = new Image[levelCount];
+        _levels[0] = source;
+        _readyLevels = 1;
+    }
+
+    /**
+     * Starts building the pyramid on a background thread. Has no effect if building has already been started.
+     */
+    public void build() {
+        if (_building || _disposed || _readyLevels == _levels.length)
+            return;
+        _building = true;
+        LoadingScheduler.getSharedInstance().schedule(this, LoadingScheduler.Priority.PREFETCH, new Runnable() {
+            public void run() {
+                buildLevels();
+            }
+        });
+    }
+
+    /**
+     * Stops building the pyramid and releases all levels but the source image.
+     */
+    public void dispose() {
+        _disposed = true;
+        LoadingScheduler.getSharedInstance().cancel(this);
+        for (int i = 1; i < _levels.length; i++) {
+            final Image level = _levels[i];
+            if (level != null)
+                level.flush();
+        }
+    }
+
+    public Image getSource() {
+        return _source;
+    }
+
+    public int getLevelCount() {
+        return _levels.length;
+    }
+
+    /**
+     * Returns the number of levels which have already been built, including level 0.
+     *
+     * @return the number of available levels.
+     */
+    public int getReadyLevelCount() {
+        return _readyLevels;
+    }
+
+    /**
+     * Returns the image for the given level, or null if it has not been built yet.
+     *
+     * @param level the level.
+     * @return the image of the level.
+     */
+    public Image getLevel(final int level) {
+        return level < _readyLevels ? _levels[level] : null;
+    }
+
+    /**
+     * Returns the level whose size is closest to, but not smaller than, the image scaled by the given factor. If that
+     * level has not been built yet, the coarsest level available will be returned.
+     *
+     * @param scaleFactor the scale factor at which the image will be painted.
+     * @return the level to paint from.
+     */
+    public int getLevelFor(final double scaleFactor) {
+        return Math.min(_readyLevels - 1, getIdealLevel(scaleFactor));
+    }
+
+    /**
+     * Returns the level which would ideally be used to paint at the given scale factor, regardless of whether it has
+     * been built already.
+     *
+     * @param scaleFactor the scale factor at which the image will be painted.
+     * @return the ideal level.
+     */
+    public int getIdealLevel(final double scaleFactor) {
+        if (scaleFactor >= 0.5 || scaleFactor <= 0)
+            return 0;
+        final int level = (int) Math.floor(Math.log(1 / scaleFactor) / Math.log(2));
+        return Math.min(_levels.length - 1, level);
+    }
+
+    protected void buildLevels() {
+        BufferedImage previous = toBufferedImage(_source);
+        for (int i = _readyLevels; i < _levels.length && !_disposed; i++) {
+            final BufferedImage level = downsample(previous);
+            _levels[i] = level;
+            _readyLevels = i + 1;
+            if (_levelReadyCallback != null)
+                SwingUtilities.invokeLater(_levelReadyCallback);
+            previous = level;
+        }
+        _building = false;
+    }
+
+    protected BufferedImage toBufferedImage(final Image image) {
+        if (image instanceof BufferedImage)
+            return (BufferedImage) image;
+        final BufferedImage result = new BufferedImage(_width, _height, BufferedImage.TYPE_INT_ARGB_PRE);
+        final Graphics2D g2 = result.createGraphics();
+        g2.drawImage(image, 0, 0, null);
+        g2.dispose();
+        return result;
+    }
+
+    /**
+     * Creates a copy of the given image with half its size, averaging 2x2 blocks of pixels. A trailing odd row or
+     * column is folded into the last block.
+     *
+     * @param source the image to downsample.
+     * @return the downsampled image.
+     */
+    protected BufferedImage downsample(final BufferedImage source) {
+        final int sourceWidth = source.getWidth();
+        final int sourceHeight = source.getHeight();
+        final int width = Math.max(1, sourceWidth / 2);
+        final int height = Math.max(1, sourceHeight / 2);
+        final boolean premultiplied = source.getType() == BufferedImage.TYPE_INT_ARGB_PRE;
+
+        final BufferedImage result = new BufferedImage(width, height, _opaque ? BufferedImage.TYPE_INT_RGB :
+                BufferedImage.TYPE_INT_ARGB_PRE);
+        final WritableRaster raster = result.getRaster();
+        final int[] rows = new int[sourceWidth * 3];
+        final int[] line = new int[width];
+
+        for (int y = 0; y < height && !_disposed; y++) {
+            final int sourceY = y * 2;
+            final int rowCount = y == height - 1 ? Math.min(3, sourceHeight - sourceY) : Math.min(2, sourceHeight - sourceY);
+            if (premultiplied)
+                source.getRaster().getDataElements(0, sourceY, sourceWidth, rowCount, rows);
+            else
+                source.getRGB(0, sourceY, sourceWidth, rowCount, rows, 0, sourceWidth);
+
+            for (int x = 0; x < width; x++) {
+                final int sourceX = x * 2;
+                final int columnCount = x == width - 1 ? Math.min(3, sourceWidth - sourceX) : Math.min(2,
+                        sourceWidth - sourceX);
+                int a = 0, r = 0, g = 0, b = 0;
+                for (int j = 0; j < rowCount; j++) {
+                    final int offset = j * sourceWidth + sourceX;
+                    for (int i = 0; i < columnCount; i++) {
+                        final int argb = rows[offset + i];
+                        final int alpha = _opaque ? 255 : argb >>> 24;
+                        a += alpha;
+                        if (premultiplied || _opaque) {
+                            r += (argb >> 16) & 0xFF;
+                            g += (argb >> 8) & 0xFF;
+                            b += argb & 0xFF;
+                        } else {
+                            r += ((argb >> 16) & 0xFF) * alpha / 255;
+                            g += ((argb >> 8) & 0xFF) * alpha / 255;
+                            b += (argb & 0xFF) * alpha / 255;
+                        }
+                    }
+                }
+                final int count = rowCount * columnCount;
+                final int half = count / 2;
+                line[x] = ((a + half) / count) << 24 | ((r + half) / count) << 16 | ((g + half) / count) << 8 |
+                        ((b + half) / count);
+            }
+            raster.setDataElements(0, y, width, 1, line);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,496 @@
+package net.sarcommand.swingextensions.imagepanel;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+
+/**
+ * An overlay for JImagePanel2 displaying a large number of vector shapes, for instance markers annotating an image.
+ * Shapes are specified in image coordinates and kept in a grid index, so that painting and hit testing only look at the
+ * items near the area in question rather than at all items.
+ * <p/>
+ * The overlay is rasterized into tiles of TILE_SIZE pixels at the current scale factor, which are kept until the scale
+ * factor changes or an item within the tile is added or removed. Only the tiles intersecting the clip are painted. Tile
+ * caching can be disabled for overlays which change constantly, in which case the items intersecting the clip are
+ * painted directly.
+ * <p/>
+ * Items are painted in the order they have been added. Strokes are applied in image coordinates, so outlines scale along
+ * with the image. This class is meant to be used on the event dispatch thread only.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public class VectorOverlay extends JComponent {
+    /**
+     * Edge length of the rasterized tiles in pixels.
+     */
+    public static final int TILE_SIZE = 256;
+
+    /**
+     * Default edge length of the index cells in image pixels.
+     */
+    public static final double DEFAULT_CELL_SIZE = 128;
+
+    /**
+     * Default amount of memory the rasterized tiles may occupy.
+     */
+    public static final long DEFAULT_TILE_MEMORY = 64L * 1024 * 1024;
+
+    protected static final Comparator<Item> __paintOrder = new Comparator<Item>() {
+        public int compare(final Item o1, final Item o2) {
+            return o1._sequence < o2._sequence ? -1 : (o1._sequence == o2._sequence ? 0 : 1);
+        }
+    };
+
+    protected final GridIndex<Item> _index;
+    protected final LinkedHashMap<Long, BufferedImage> _tiles;
+    protected final ArrayList<Item> _queryResult;
+
+    protected double _scaleFactor;
+    protected boolean _tileCaching;
+    protected long _tileMemory;
+    protected long _sequence;
+
+    public VectorOverlay() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Creates a new overlay.
+     *
+     * @param cellSize edge length of the index cells in image pixels. Should be in the order of the size of a typical
+     *                 item.
+     */
+    public VectorOverlay(final double cellSize) {
+        _index = new GridIndex<Item>(cellSize);
+        _tiles = new LinkedHashMap<Long, BufferedImage>(64, 0.75f, true);
+        _queryResult = new ArrayList<Item>();
+        _scaleFactor = 1.;
+        _tileCaching = true;
+        _tileMemory = DEFAULT_TILE_MEMORY;
+        setOpaque(false);
+    }
+
+    /**
+     * Adds an item on top of all other items.
+     *
+     * @param item the item to add.
+     */
+    public void addItem(final Item item) {
+        if (item == null)
+            throw new IllegalArgumentException("Parameter 'item' must not be null!");
+        item._sequence = _sequence++;
+        _index.insert(item, item.getBounds());
+        itemsChanged(item.getBounds());
+    }
+
+    /**
+     * Adds all given items at once. Cheaper than adding them one by one, as the tiles are discarded only once.
+     *
+     * @param items the items to add.
+     */
+    public void addItems(final Collection<? extends Item> items) {
+        if (items == null)
+            throw new IllegalArgumentException("Parameter 'items' must not be null!");
+        for (Item item : items) {
+            item._sequence = _sequence++;
+            _index.insert(item, item.getBounds());
+        }
+        flushTiles();
+        repaint();
+    }
+
+    /**
+     * Removes an item.
+     *
+     * @param item the item to remove.
+     * @return whether the item had been part of this overlay.
+     */
+    public boolean removeItem(final Item item) {
+        final Rectangle2D bounds = _index.remove(item);
+        if (bounds == null)
+            return false;
+        itemsChanged(bounds);
+        return true;
+    }
+
+    public void removeAllItems() {
+        _index.clear();
+        flushTiles();
+        repaint();
+    }
+
+    public int getItemCount() {
+        return _index.size();
+    }
+
+    /**
+     * Returns all items whose bounds intersect the given area, in paint order.
+     *
+     * @param imageArea the area in image coordinates.
+     * @return the items within the area.
+     */
+    public List<Item> getItems(final Rectangle2D imageArea) {
+        final ArrayList<Item> items = new ArrayList<Item>();
+        _index.query(imageArea, items);
+        Collections.sort(items, __paintOrder);
+        return items;
+    }
+
+    /**
+     * Returns the topmost item containing the given point.
+     *
+     * @param imagePoint the point in image coordinates.
+     * @return the topmost item at the point, or null.
+     */
+    public Item getItemAt(final Point2D imagePoint) {
+        _queryResult.clear();
+        _index.query(imagePoint.getX(), imagePoint.getY(), _queryResult);
+        Item result = null;
+        for (int i = 0, n = _queryResult.size(); i < n; i++) {
+            final Item item = _queryResult.get(i);
+            if ((result == null || item._sequence > result._sequence) && item.contains(imagePoint.getX(),
+                    imagePoint.getY()))
+                result = item;
+        }
+        _queryResult.clear();
+        return result;
+    }
+
+    /**
+     * Returns the topmost item at the given location of this component, for instance the location of a mouse event.
+     *
+     * @param location the location in component coordinates.
+     * @return the topmost item at the location, or null.
+     */
+    public Item getItemAtLocation(final Point location) {
+        return getItemAt(new Point2D.Double(location.x / _scaleFactor, location.y / _scaleFactor));
+    }
+
+    /**
+     * Returns all items containing the given point, in paint order.
+     *
+     * @param imagePoint the point in image coordinates.
+     * @return the items at the point.
+     */
+    public List<Item> getItemsAt(final Point2D imagePoint) {
+        final ArrayList<Item> items = new ArrayList<Item>();
+        _index.query(imagePoint.getX(), imagePoint.getY(), items);
+        for (Iterator<Item> iterator = items.iterator(); iterator.hasNext(); )
+            if (!iterator.next().contains(imagePoint.getX(), imagePoint.getY()))
+                iterator.remove();
+        Collections.sort(items, __paintOrder);
+        return items;
+    }
+
+    public double getScaleFactor() {
+        return _scaleFactor;
+    }
+
+    /**
+     * Sets the scale factor at which the image is displayed. Invoked by JImagePanel2 whenever the scale changes.
+     *
+     * @param scaleFactor the scale factor.
+     */
+    public void setScaleFactor(final double scaleFactor) {
+        if (!(scaleFactor > 0))
+            throw new IllegalArgumentException("Parameter 'scaleFactor' must be positive!");
+        if (_scaleFactor == scaleFactor)
+            return;
+        _scaleFactor = scaleFactor;
+        flushTiles();
+        repaint();
+    }
+
+    public boolean isTileCaching() {
+        return _tileCaching;
+    }
+
+    /**
+     * Determines whether the overlay should be rasterized into cached tiles.
+     *
+     * @param tileCaching whether tiles should be cached.
+     */
+    public void setTileCaching(final boolean tileCaching) {
+        _tileCaching = tileCaching;
+        flushTiles();
+        repaint();
+    }
+
+    public long getTileMemory() {
+        return _tileMemory;
+    }
+
+    /**
+     * Sets the amount of memory the rasterized tiles may occupy. Each tile occupies TILE_SIZE * TILE_SIZE * 4 bytes.
+     *
+     * @param tileMemory the tile memory in bytes.
+     */
+    public void setTileMemory(final long tileMemory) {
+        if (tileMemory < 0)
+            throw new IllegalArgumentException("Parameter 'tileMemory' must not be negative!");
+        _tileMemory = tileMemory;
+        evictTiles();
+    }
+
+    /**
+     * Discards all rasterized tiles.
+     */
+    public void flushTiles() {
+        for (BufferedImage tile : _tiles.values())
+            tile.flush();
+        _tiles.clear();
+    }
+
+    @Override
+    protected void paintComponent(final Graphics g) {
+        if (_index.size() == 0)
+            return;
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+
+        if (!_tileCaching) {
+            final Graphics2D g2 = (Graphics2D) g.create();
+            try {
+                g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                paintItems(g2, clip.x, clip.y, clip.width, clip.height);
+            } finally {
+                g2.dispose();
+            }
+            return;
+        }
+
+        final int firstColumn = (int) Math.floor((double) clip.x / TILE_SIZE);
+        final int lastColumn = (int) Math.floor((double) (clip.x + clip.width - 1) / TILE_SIZE);
+        final int firstRow = (int) Math.floor((double) clip.y / TILE_SIZE);
+        final int lastRow = (int) Math.floor((double) (clip.y + clip.height - 1) / TILE_SIZE);
+        for (int row = firstRow; row <= lastRow; row++)
+            for (int column = firstColumn; column <= lastColumn; column++)
+                g.drawImage(getTile(column, row), column * TILE_SIZE, row * TILE_SIZE, null);
+        evictTiles();
+    }
+
+    /**
+     * Paints the items intersecting the given area of this component, which has already been set as the clip.
+     *
+     * @param g2     graphics to paint on, in component coordinates.
+     * @param x      left edge of the area.
+     * @param y      top edge of the area.
+     * @param width  width of the area.
+     * @param height height of the area.
+     */
+    protected void paintItems(final Graphics2D g2, final int x, final int y, final int width, final int height) {
+        /* Antialiasing may touch one more pixel around the items' bounds */
+        final double margin = 1 / _scaleFactor;
+        final Rectangle2D area = new Rectangle2D.Double(x / _scaleFactor - margin, y / _scaleFactor - margin,
+                width / _scaleFactor + 2 * margin, height / _scaleFactor + 2 * margin);
+
+        _queryResult.clear();
+        _index.query(area, _queryResult);
+        if (_queryResult.isEmpty())
+            return;
+        Collections.sort(_queryResult, __paintOrder);
+
+        g2.scale(_scaleFactor, _scaleFactor);
+        for (int i = 0, n = _queryResult.size(); i < n; i++)
+            _queryResult.get(i).paint(g2);
+        _queryResult.clear();
+    }
+
+    /**
+     * Returns the rasterized tile at the given position, rendering it if necessary.
+     *
+     * @param column the tile column.
+     * @param row    the tile row.
+     * @return the tile.
+     */
+    protected BufferedImage getTile(final int column, final int row) {
+        final Long key = GridIndex.key(column, row);
+        BufferedImage tile = _tiles.get(key);
+        if (tile == null) {
+            tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+            final Graphics2D g2 = tile.createGraphics();
+            try {
+                g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g2.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+                paintItems(g2, column * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+            } finally {
+                g2.dispose();
+            }
+            _tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * Discards the least recently painted tiles until the tile memory is met.
+     */
+    protected void evictTiles() {
+        final long maximumTiles = _tileMemory / (4L * TILE_SIZE * TILE_SIZE);
+        final Iterator<BufferedImage> iterator = _tiles.values().iterator();
+        while (_tiles.size() > maximumTiles && iterator.hasNext()) {
+            iterator.next().flush();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Discards the tiles intersecting the given area and repaints it.
+     *
+     * @param imageBounds the changed area in image coordinates.
+     */
+    protected void itemsChanged(final Rectangle2D imageBounds) {
+        final Rectangle bounds = new Rectangle2D.Double(imageBounds.getX() * _scaleFactor,
+                imageBounds.getY() * _scaleFactor, imageBounds.getWidth() * _scaleFactor,
+                imageBounds.getHeight() * _scaleFactor).getBounds();
+        bounds.grow(1, 1);
+
+        final int firstColumn = (int) Math.floor((double) bounds.x / TILE_SIZE);
+        final int lastColumn = (int) Math.floor((double) (bounds.x + bounds.width - 1) / TILE_SIZE);
+        final int firstRow = (int) Math.floor((double) bounds.y / TILE_SIZE);
+        final int lastRow = (int) Math.floor((double) (bounds.y + bounds.height - 1) / TILE_SIZE);
+        if ((long) (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1) > _tiles.size()) {
+            for (Iterator<Map.Entry<Long, BufferedImage>> iterator = _tiles.entrySet().iterator(); iterator.hasNext(); ) {
+                final long key = iterator.next().getKey();
+                final int row = (int) (key >> 32);
+                final int column = (int) key;
+                if (column >= firstColumn && column <= lastColumn && row >= firstRow && row <= lastRow)
+                    iterator.remove();
+            }
+        } else {
+            for (int row = firstRow; row <= lastRow; row++)
+                for (int column = firstColumn; column <= lastColumn; column++)
+                    _tiles.remove(GridIndex.key(column, row));
+        }
+        repaint(bounds);
+    }
+
+    /**
+     * A shape displayed by a VectorOverlay. The shape is specified in image coordinates and may be filled, outlined or
+     * both. Items are immutable; to change an item, remove it and add a new one.
+     */
+    public static class Item {
+        protected final Shape _shape;
+        protected final Paint _fill;
+        protected final Paint _outline;
+        protected final Stroke _stroke;
+        protected final Object _userObject;
+        protected final Rectangle2D _bounds;
+        protected Shape _strokedShape;
+        protected long _sequence;
+
+        /**
+         * Creates a filled item.
+         *
+         * @param shape the shape in image coordinates.
+         * @param fill  the paint to fill the shape with.
+         */
+        public Item(final Shape shape, final Paint fill) {
+            this(shape, fill, null, null, null);
+        }
+
+        /**
+         * Creates a new item.
+         *
+         * @param shape      the shape in image coordinates.
+         * @param fill       the paint to fill the shape with, may be null.
+         * @param outline    the paint to outline the shape with, may be null.
+         * @param stroke     the stroke used for the outline in image coordinates, may be null for a one pixel stroke.
+         * @param userObject arbitrary data associated with the item, may be null.
+         */
+        public Item(final Shape shape, final Paint fill, final Paint outline, final Stroke stroke,
+                    final Object userObject) {
+            if (shape == null)
+                throw new IllegalArgumentException("Parameter 'shape' must not be null!");
+            if (fill == null && outline == null)
+                throw new IllegalArgumentException("Either parameter 'fill' or 'outline' must not be null!");
+            _shape = shape;
+            _fill = fill;
+            _outline = outline;
+            _stroke = outline != null && stroke == null ? new BasicStroke() : stroke;
+            _userObject = userObject;
+
+            if (outline != null) {
+                _strokedShape = _stroke.createStrokedShape(shape);
+                final Rectangle2D bounds = shape.getBounds2D();
+                bounds.add(_strokedShape.getBounds2D());
+                _bounds = bounds;
+            } else
+                _bounds = shape.getBounds2D();
+        }
+
+        public Shape getShape() {
+            return _shape;
+        }
+
+        public Paint getFill() {
+            return _fill;
+        }
+
+        public Paint getOutline() {
+            return _outline;
+        }
+
+        public Stroke getStroke() {
+            return _stroke;
+        }
+
+        public Object getUserObject() {
+            return _userObject;
+        }
+
+        /**
+         * Returns the area covered by this item in image coordinates, including its outline.
+         *
+         * @return the item's bounds.
+         */
+        public Rectangle2D getBounds() {
+            return _bounds;
+        }
+
+        /**
+         * Returns whether the given point lies within the filled shape or on its outline.
+         *
+         * @param x horizontal coordinate in image coordinates.
+         * @param y vertical coordinate in image coordinates.
+         * @return whether the item contains the point.
+         */
+        public boolean contains(final double x, final double y) {
+            if (!_bounds.contains(x, y))
+                return false;
+            if (_fill != null && _shape.contains(x, y))
+                return true;
+            return _strokedShape != null && _strokedShape.contains(x, y);
+        }
+
+        /**
+         * Paints this item.
+         *
+         * @param g2 graphics to paint on, in image coordinates.
+         */
+        protected void paint(final Graphics2D g2) {
+            if (_fill != null) {
+                g2.setPaint(_fill);
+                g2.fill(_shape);
+            }
+            if (_outline != null) {
+                g2.setPaint(_outline);
+                g2.setStroke(_stroke);
+                g2.draw(_shape);
+            }
+        }
+    }
+}
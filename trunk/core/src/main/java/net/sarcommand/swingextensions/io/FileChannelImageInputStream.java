@@ -0,0 +1,246 @@
+package net.sarcommand.swingextensions.io;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An ImageInputStream reading from a FileChannel. ImageIO's own FileImageInputStream issues a system call for every
+ * single byte read, and wrapping a FileInputStream adds a cache copying all data read so far. This implementation reads
+ * the file through a window of either positional channel reads or memory mapped regions, without any cache, as the
+ * channel supports seeking back to any position.
+ * <p/>
+ * In POSITIONAL mode, the window is a reused heap buffer, and large reads bypass it to go directly into the destination
+ * array. In MAPPED mode, the window is a read only mapping of a region of the file. Mapping avoids copying the data into
+ * the Java heap, but mapped regions are only released by the garbage collector, which will keep the file locked on
+ * some platforms until then. POSITIONAL is therefore the default.
+ * <p/>
+ * Note that FileChannels are closed when the reading thread is interrupted.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public class FileChannelImageInputStream extends ImageInputStreamImpl {
+    /**
+     * Size of the heap buffer used in POSITIONAL mode.
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Size of the regions mapped in MAPPED mode.
+     */
+    public static final int MAPPED_WINDOW_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Determines how the file contents are accessed.
+     */
+    public static enum AccessMode {
+        /**
+         * Read the file using positional reads into a heap buffer.
+         */
+        POSITIONAL,
+        /**
+         * Map regions of the file into memory.
+         */
+        MAPPED
+    }
+
+    private final FileChannel _channel;
+    private final boolean _closeChannel;
+    private final AccessMode _accessMode;
+    private final long _length;
+
+    private ByteBuffer _window;
+    private long _windowStart;
+    private boolean _closed;
+
+    /**
+     * Opens the given file in POSITIONAL mode.
+     *
+     * @param file the file to read.
+     * @throws IOException if the file could not be opened.
+     */
+    public FileChannelImageInputStream(final File file) throws IOException {
+        this(file, AccessMode.POSITIONAL);
+    }
+
+    /**
+     * Opens the given file using the given access mode.
+     *
+     * @param file       the file to read.
+     * @param accessMode the access mode.
+     * @throws IOException if the file could not be opened.
+     */
+    public FileChannelImageInputStream(final File file, final AccessMode accessMode) throws IOException {
+        this(openChannel(file), accessMode, true);
+    }
+
+    /**
+     * Creates a stream reading from the given channel, starting at position 0. The channel will not be closed along with
+     * this stream.
+     *
+     * @param channel    the channel to read from.
+     * @param accessMode the access mode.
+     * @throws IOException if the size of the channel could not be determined.
+     */
+    public FileChannelImageInputStream(final FileChannel channel, final AccessMode accessMode) throws IOException {
+        this(channel, accessMode, false);
+    }
+
+    private FileChannelImageInputStream(final FileChannel channel, final AccessMode accessMode,
+                                        final boolean closeChannel) throws IOException {
+        if (channel == null)
+            throw new IllegalArgumentException("Parameter 'channel' must not be null!");
+        if (accessMode == null)
+            throw new IllegalArgumentException("Parameter 'accessMode' must not be null!");
+
+        _channel = channel;
+        _closeChannel = closeChannel;
+        _accessMode = accessMode;
+        _length = channel.size();
+
+        if (accessMode == AccessMode.POSITIONAL) {
+            _window = ByteBuffer.allocate(BUFFER_SIZE);
+            _window.limit(0);
+        }
+    }
+
+    private static FileChannel openChannel(final File file) throws IOException {
+        if (file == null)
+            throw new IllegalArgumentException("Parameter 'file' must not be null!");
+        return new FileInputStream(file).getChannel();
+    }
+
+    public AccessMode getAccessMode() {
+        return _accessMode;
+    }
+
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (!moveWindow(streamPos))
+            return -1;
+        final int value = _window.get((int) (streamPos - _windowStart)) & 0xFF;
+        streamPos++;
+        return value;
+    }
+
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        checkClosed();
+        if (b == null)
+            throw new IllegalArgumentException("Parameter 'b' must not be null!");
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IndexOutOfBoundsException("off=" + off + ", len=" + len + ", b.length=" + b.length);
+        bitOffset = 0;
+        if (len == 0)
+            return 0;
+        if (streamPos >= _length)
+            return -1;
+
+        int count = 0;
+        while (count < len && streamPos < _length) {
+            if (_accessMode == AccessMode.POSITIONAL && !isInWindow(streamPos) && len - count >= BUFFER_SIZE) {
+                final int read = readDirect(b, off + count, len - count);
+                if (read <= 0)
+                    break;
+                count += read;
+                streamPos += read;
+                continue;
+            }
+
+            if (!moveWindow(streamPos))
+                break;
+            final int windowOffset = (int) (streamPos - _windowStart);
+            final int chunk = Math.min(len - count, _window.limit() - windowOffset);
+            final ByteBuffer view = _window.duplicate();
+            view.position(windowOffset);
+            view.get(b, off + count, chunk);
+            count += chunk;
+            streamPos += chunk;
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    public long length() {
+        return _length;
+    }
+
+    public boolean isCached() {
+        return false;
+    }
+
+    /**
+     * Closes this stream. Unlike the superclass implementation, closing a stream twice has no effect, as ImageIO.read
+     * closes the stream on some platforms but not on others.
+     *
+     * @throws IOException if the channel could not be closed.
+     */
+    public void close() throws IOException {
+        if (_closed)
+            return;
+        _closed = true;
+        super.close();
+        _window = null;
+        if (_closeChannel)
+            _channel.close();
+    }
+
+    private boolean isInWindow(final long position) {
+        return _window != null && position >= _windowStart && position < _windowStart + _window.limit();
+    }
+
+    /**
+     * Makes sure the current window contains the given position.
+     *
+     * @param position the file position.
+     * @return false if the position is beyond the end of the file.
+     * @throws IOException if the file could not be read.
+     */
+    private boolean moveWindow(final long position) throws IOException {
+        if (isInWindow(position))
+            return true;
+        if (position >= _length)
+            return false;
+
+        if (_accessMode == AccessMode.MAPPED) {
+            final long size = Math.min(MAPPED_WINDOW_SIZE, _length - position);
+            _window = _channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        } else {
+            _window.clear();
+            while (_window.hasRemaining()) {
+                final int read = _channel.read(_window, position + _window.position());
+                if (read < 0)
+                    break;
+            }
+            _window.flip();
+            if (_window.limit() == 0)
+                throw new EOFException("Unexpected end of file at position " + position);
+        }
+        _windowStart = position;
+        return true;
+    }
+
+    private int readDirect(final byte[] b, final int off, final int len) throws IOException {
+        final ByteBuffer target = ByteBuffer.wrap(b, off, len);
+        int count = 0;
+        while (target.hasRemaining()) {
+            final int read = _channel.read(target, streamPos + count);
+            if (read < 0)
+                break;
+            count += read;
+        }
+        return count;
+    }
+}
@@ -1,21 +1,26 @@
 package net.sarcommand.swingextensions.progress;
 
+import net.sarcommand.swingextensions.utilities.AnimationClock;
 import net.sarcommand.swingextensions.utilities.ColorUtilities;
 
 import javax.swing.*;
 import javax.swing.plaf.ComponentUI;
 import java.awt.*;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.awt.event.HierarchyEvent;
 import java.awt.event.HierarchyListener;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
-import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Implements the most common ajax-like look for a progress indicator.
  * <p/>
+ * All indicators are animated by the shared AnimationClock. The frames are rendered once per size and color scheme into
+ * a sprite strip shared by all indicators, so that painting a frame only requires copying a part of that image.
+ * <p/>
  * <hr/> Copyright 2006-2012 Torsten Heup
  * <p/>
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
@@ -39,9 +44,37 @@ public class DefaultProgressIndicatorUI extends ProgressIndicatorUI {
     protected Color _baseColor;
 
     /**
-     * Timer used to fire periodical update events.
+     * Number of frames (and branches) of the animation.
+     */
+    public static final int FRAME_COUNT = 12;
+
+    /**
+     * Maximum number of sprite strips being cached.
      */
-    protected Timer _timer;
+    public static final int MAX_CACHED_SPRITES = 16;
+
+    /**
+     * Sprite strips shared by all instances, in order of their last use. Only accessed on the event dispatch thread.
+     */
+    private static final Map<SpriteKey, BufferedImage> __sprites =
+            new LinkedHashMap<SpriteKey, BufferedImage>(16, .75f, true) {
+                protected boolean removeEldestEntry(final Map.Entry<SpriteKey, BufferedImage> eldest) {
+                    if (size() <= MAX_CACHED_SPRITES)
+                        return false;
+                    eldest.getValue().flush();
+                    return true;
+                }
+            };
+
+    /**
+     * Listener registered with the shared AnimationClock while the indicator is animated.
+     */
+    protected AnimationClock.Listener _animationListener;
+
+    /**
+     * Time at which the animation has been started, in nanoseconds.
+     */
+    protected long _animationStart;
 
     /**
      * The target indicator on which this UI was installed.
@@ -49,7 +82,7 @@ public class DefaultProgressIndicatorUI extends ProgressIndicatorUI {
     protected JProgressIndicator _target;
 
     /**
-     * A counter variable (0-11) used to decide which branch should be highlighted. Will be updated after 'updateDelay'
+     * A counter variable (0-11) used to decide which branch should be highlighted. Will be updated every 'updateDelay'
      * miliseconds.
      */
     protected int _timerValue;
@@ -87,6 +120,12 @@ public class DefaultProgressIndicatorUI extends ProgressIndicatorUI {
                 ColorUtilities.darker(_baseColor, 30),
         };
 
+        _animationListener = new AnimationClock.Listener() {
+            public void tick(final long frameTime) {
+                timerIncrement(frameTime);
+            }
+        };
+
         _hierarchyListener = new HierarchyListener() {
             public void hierarchyChanged(final HierarchyEvent e) {
                 if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) == HierarchyEvent.SHOWING_CHANGED) {
@@ -100,14 +139,9 @@ public class DefaultProgressIndicatorUI extends ProgressIndicatorUI {
     }
 
     public void installUI(final JComponent c) {
-        _target = (JProgressIndicator) c;
-        if (_timer != null)
+        if (_target != null)
             stopProgress();
-        _timer = new Timer(_target.getUpdateDelay(), new ActionListener() {
-            public void actionPerformed(final ActionEvent e) {
-                timerIncrement();
-            }
-        });
+        _target = (JProgressIndicator) c;
         _target.setMinimumSize(new Dimension(24, 24));
         _target.setPreferredSize(new Dimension(32, 32));
         _target.setMaximumSize(new Dimension(Integer.MAX_VALUE, Integer.MAX_VALUE));
@@ -122,7 +156,8 @@ public class DefaultProgressIndicatorUI extends ProgressIndicatorUI {
 
     private void startProgress0() {
         _timerValue = 0;
-        _timer.restart();
+        _animationStart = System.nanoTime();
+        AnimationClock.getSharedInstance().addListener(_animationListener);
         _target.repaint();
     }
 
@@ -132,51 +167,102 @@ public class DefaultProgressIndicatorUI extends ProgressIndicatorUI {
     }
 
     private void stopProgress0() {
-        _timer.stop();
+        AnimationClock.getSharedInstance().removeListener(_animationListener);
         _target.repaint();
     }
 
-    protected void timerIncrement() {
-        _timerValue++;
-        if (_timerValue > 11)
-            _timerValue = 0;
-        _target.repaint();
+    public void uninstallUI(final JComponent c) {
+        AnimationClock.getSharedInstance().removeListener(_animationListener);
+        _target.removeHierarchyListener(_hierarchyListener);
+    }
+
+    /**
+     * Invoked by the shared AnimationClock. Repaints the indicator if the highlighted branch has changed since the last
+     * frame.
+     *
+     * @param frameTime the time of the current frame in nanoseconds.
+     */
+    protected void timerIncrement(final long frameTime) {
+        final long updateDelay = Math.max(1, _target.getUpdateDelay()) * 1000000L;
+        final int timerValue = (int) ((frameTime - _animationStart) / updateDelay % FRAME_COUNT);
+        if (timerValue != _timerValue) {
+            _timerValue = timerValue;
+            _target.repaint();
+        }
     }
 
     public void paint(final Graphics g, final JComponent c) {
-        final Graphics2D g2 = (Graphics2D) g.create();
-        final Rectangle bounds = _target.getBounds();
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        final int width = _target.getWidth();
+        final int height = _target.getHeight();
+        final int size = Math.min(width, height);
+        if (size <= 0)
+            return;
 
+        final BufferedImage sprite = getSprite(size);
+        final int frame = _target.isIndicatingProgress() ? _timerValue : FRAME_COUNT;
+        final int x = (width - size) / 2;
+        final int y = (height - size) / 2;
+        g.drawImage(sprite, x, y, x + size, y + size, frame * size, 0, (frame + 1) * size, size, null);
+    }
 
-        final Point2D center = new Point2D.Double(bounds.width / 2., bounds.height / 2.);
-        final int lowerDim = Math.min(bounds.width, bounds.height);
-        final double innerInset = lowerDim * .15;
-        final double outerInset = ((lowerDim - innerInset) / 2.) - 1;
-        final AffineTransform originalTransform = g2.getTransform();
+    /**
+     * Returns the sprite strip for the given size and the current colors, rendering it if necessary. The strip contains
+     * the frames 0-11 of the running animation followed by the frame shown while not indicating progress.
+     *
+     * @param size edge length of a single frame.
+     * @return the sprite strip.
+     */
+    protected BufferedImage getSprite(final int size) {
+        final SpriteKey key = new SpriteKey(size, _baseColor, _colors);
+        BufferedImage sprite = __sprites.get(key);
+        if (sprite == null) {
+            sprite = new BufferedImage(size * (FRAME_COUNT + 1), size, BufferedImage.TYPE_INT_ARGB_PRE);
+            final Graphics2D g2 = sprite.createGraphics();
+            for (int frame = 0; frame <= FRAME_COUNT; frame++) {
+                final Graphics2D frameGraphics = (Graphics2D) g2.create(frame * size, 0, size, size);
+                paintFrame(frameGraphics, size, frame < FRAME_COUNT ? frame : -1);
+                frameGraphics.dispose();
+            }
+            g2.dispose();
+            __sprites.put(key, sprite);
+        }
+        return sprite;
+    }
+
+    /**
+     * Paints a single frame of the animation.
+     *
+     * @param g2         the graphics to paint on, translated to the frame's origin.
+     * @param size       edge length of the frame.
+     * @param timerValue index of the highlighted branch, or -1 if progress is not being indicated.
+     */
+    protected void paintFrame(final Graphics2D g2, final int size, final int timerValue) {
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        g2.setStroke(new BasicStroke(Math.max(lowerDim / 30f, 1.2f), BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL, 0));
+        final double center = size / 2.;
+        final double innerInset = size * .15;
+        final double outerInset = ((size - innerInset) / 2.) - 1;
+
+        g2.setStroke(new BasicStroke(Math.max(size / 30f, 1.2f), BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL, 0));
         final Line2D line = new Line2D.Double(0, innerInset, 0, outerInset);
-        g2.translate(center.getX(), center.getY());
+        final AffineTransform originalTransform = g2.getTransform();
 
-        final boolean running = _target.isIndicatingProgress();
+        final boolean running = timerValue >= 0;
         if (!running)
             g2.setColor(_baseColor);
 
-        final AffineTransform transform = new AffineTransform(g2.getTransform());
-        for (int i = 0; i < 12; i++) {
+        for (int i = 0; i < FRAME_COUNT; i++) {
             if (running) {
-                final int diff = (_timerValue < i ? _timerValue + 12 : _timerValue) - i;
+                final int diff = (timerValue < i ? timerValue + FRAME_COUNT : timerValue) - i;
                 g2.setColor(diff < _colors.length ? _colors[diff] : _baseColor);
             }
 
-            transform.setToTranslation(center.getX(), center.getY());
-            transform.concatenate(originalTransform);
-            transform.rotate(Math.toRadians(i * 30));
-            g2.setTransform(transform);
+            g2.setTransform(originalTransform);
+            g2.translate(center, center);
+            g2.rotate(Math.toRadians(i * 30));
             g2.draw(line);
         }
-        g2.dispose();
+        g2.setTransform(originalTransform);
     }
 
     public Dimension getMaximumSize(JComponent c) {
@@ -194,4 +280,31 @@ public class DefaultProgressIndicatorUI extends ProgressIndicatorUI {
     public void update(Graphics g, JComponent c) {
         paint(g, c);
     }
+
+    /**
+     * Identifies a sprite strip by the frame size and the colors it has been painted with.
+     */
+    protected static class SpriteKey {
+        protected final int _size;
+        protected final int[] _colors;
+
+        public SpriteKey(final int size, final Color baseColor, final Color[] colors) {
+            _size = size;
+            _colors = new int[colors.length + 1];
+            _colors[0] = baseColor.getRGB();
+            for (int i = 0; i < colors.length; i++)
+                _colors[i + 1] = colors[i].getRGB();
+        }
+
+        public boolean equals(final Object o) {
+            if (!(o instanceof SpriteKey))
+                return false;
+            final SpriteKey other = (SpriteKey) o;
+            return _size == other._size && Arrays.equals(_colors, other._colors);
+        }
+
+        public int hashCode() {
+            return 31 * _size + Arrays.hashCode(_colors);
+        }
+    }
 }
@@ -2,10 +2,15 @@ package net.sarcommand.swingextensions.progress;
 
 import net.sarcommand.swingextensions.event.EventSupport;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class allows you to monitor the progress for multiple concurrent tasks by 'gathering' the individual progress
@@ -26,10 +31,16 @@ import java.util.Properties;
  * <p/>
  * You can then proceed by adding another ProgressListener to the GatheringProgressListener instance. This listener will
  * be notified with the overall progress. The message, source and properties of the event will be copied from the
- * original event.
+ * original event. The properties are only copied once they are accessed.
+ * <p/>
+ * The overall progress is maintained incrementally: Each created listener only adds the difference to its previously
+ * reported contribution to an atomic total, so reporting progress takes constant time and no lock, regardless of the
+ * number of tasks being monitored. Note that events reported concurrently by several tasks may therefore be delivered
+ * to the listeners of this instance in a different order than they were reported.
  * <p/>
  * Note: This class uses weak references to keep track of the listeners used by the createListener(float) method in
- * order to prevent memory leaks. Make sure that you keep a hard reference to the task objects as long as required.
+ * order to prevent memory leaks. Make sure that you keep a hard reference to the task objects as long as required. Once
+ * a listener has been garbage collected, its contribution will be removed from the overall progress.
  * <p/>
  * <hr/> Copyright 2006-2012 Torsten Heup
  * <p/>
@@ -43,6 +54,16 @@ import java.util.Properties;
  * specific language governing permissions and limitations under the License.
  */
 public class GatheringProgressListener {
+    /**
+     * Fixed point scale used to accumulate the weighted progress in a long.
+     */
+    protected static final double SCALE = 1e9;
+
+    /**
+     * Contribution value denoting a listener whose last reported progress was indeterminate.
+     */
+    protected static final long INDETERMINATE = Long.MIN_VALUE;
+
     /**
      * The internal listener support, keeping track of listeners installed on the GatheringProgressListener using the
      * addProgressListener(ProgressListener) method.
@@ -50,17 +71,35 @@ public class GatheringProgressListener {
     protected EventSupport<ProgressListener> _listenerSupport;
 
     /**
-     * Weakly referenced list of the ProgressListener instances created. Whenever a ProgressEvent is fired, it will
-     * iterate over all references to compute the total completion percentage.
+     * Weak references to the ProgressListener instances created, which are kept here so that the references
+     * themselves won't be collected before their listeners.
+     */
+    protected Set<ContributionReference> _installedListeners;
+
+    /**
+     * Queue receiving the references of collected listeners.
+     */
+    protected ReferenceQueue<GatheringProgressListenerImpl> _collectedListeners;
+
+    /**
+     * Sum of the weighted progress of all listeners, in units of 1 / SCALE.
+     */
+    protected final AtomicLong _weightedTotal;
+
+    /**
+     * Number of listeners whose last reported progress was not indeterminate.
      */
-    protected LinkedList<WeakReference<GatheringProgressListenerImpl>> _installedListeners;
+    protected final AtomicInteger _determinateCount;
 
     /**
      * Creates a new GatheringProgressListener instance.
      */
     public GatheringProgressListener() {
         _listenerSupport = EventSupport.create(ProgressListener.class);
-        _installedListeners = new LinkedList<WeakReference<GatheringProgressListenerImpl>>();
+        _installedListeners = Collections.newSetFromMap(new ConcurrentHashMap<ContributionReference, Boolean>());
+        _collectedListeners = new ReferenceQueue<GatheringProgressListenerImpl>();
+        _weightedTotal = new AtomicLong();
+        _determinateCount = new AtomicInteger();
     }
 
     /**
@@ -95,39 +134,102 @@ public class GatheringProgressListener {
      */
     public ProgressListener createListener(final float fraction) {
         final GatheringProgressListenerImpl listener = new GatheringProgressListenerImpl(this, fraction);
-        _installedListeners.add(new WeakReference<GatheringProgressListenerImpl>(listener));
+        _determinateCount.incrementAndGet();
+        _installedListeners.add(new ContributionReference(listener, _collectedListeners));
         return listener;
     }
 
     /**
-     * Signalled internally by the ProgressListener instances created by createListener(float). This method is
-     * responsible for computing the overall progress.
+     * Returns the overall completion percentage.
+     *
+     * @return the overall completion percentage, or a negative value if all tasks are indeterminate.
+     */
+    public float getCompletionPercentage() {
+        expungeCollectedListeners();
+        return _determinateCount.get() == 0 ? ProgressEvent.PROGRESS_INDETERMINATE :
+                (float) (_weightedTotal.get() / SCALE);
+    }
+
+    /**
+     * Signalled internally by the ProgressListener instances created by createListener(float) after their contribution
+     * to the overall progress has been updated. This method is responsible for notifying the listeners installed on
+     * this instance.
      *
      * @param evt The last ProgressEvent that occured.
      */
-    protected synchronized void progressMade(final ProgressEvent evt) {
-        float totalProgress = 0;
-        boolean allIndeterminate = true;
-        for (Iterator<WeakReference<GatheringProgressListenerImpl>> it = _installedListeners.iterator();
-             it.hasNext(); ) {
-            final WeakReference<GatheringProgressListenerImpl> ref = it.next();
-            final GatheringProgressListenerImpl l = ref.get();
-            if (l == null)
-                it.remove();
-            else if (l.getCompletionPercentage() >= 0) {
-                allIndeterminate = false;
-                totalProgress += l.getCompletionPercentage() * l.getFraction();
-            }
+    protected void progressMade(final ProgressEvent evt) {
+        _listenerSupport.delegate().progressMade(new GatheredProgressEvent(evt, getCompletionPercentage()));
+    }
+
+    /**
+     * Applies a change of a listener's contribution to the overall progress.
+     *
+     * @param oldContribution the previous contribution, or INDETERMINATE.
+     * @param newContribution the new contribution, or INDETERMINATE.
+     */
+    protected void contributionChanged(final long oldContribution, final long newContribution) {
+        if (oldContribution == newContribution)
+            return;
+        if (oldContribution == INDETERMINATE)
+            _determinateCount.incrementAndGet();
+        else
+            _weightedTotal.addAndGet(-oldContribution);
+        if (newContribution == INDETERMINATE)
+            _determinateCount.decrementAndGet();
+        else
+            _weightedTotal.addAndGet(newContribution);
+    }
+
+    /**
+     * Removes the contributions of all listeners which have been garbage collected since the last invocation.
+     */
+    protected void expungeCollectedListeners() {
+        Reference<? extends GatheringProgressListenerImpl> reference;
+        while ((reference = _collectedListeners.poll()) != null) {
+            final ContributionReference contributionReference = (ContributionReference) reference;
+            if (_installedListeners.remove(contributionReference))
+                contributionChanged(contributionReference._contribution.getAndSet(INDETERMINATE), INDETERMINATE);
         }
-        final ProgressEvent newEvent = new ProgressEvent(evt.getSource(), evt.getMessage(),
-                allIndeterminate ? -1 : totalProgress);
-        final Properties oldProperties = evt.getProperties();
-        final Properties newProperty = newEvent.getProperties();
+    }
 
-        for (Object o : oldProperties.keySet())
-            newProperty.setProperty((String) o, oldProperties.getProperty((String) o));
+    /**
+     * Weak reference to a created listener, keeping track of the listener's contribution so that it can be removed
+     * from the total once the listener has been collected.
+     */
+    protected static class ContributionReference extends WeakReference<GatheringProgressListenerImpl> {
+        protected final AtomicLong _contribution;
 
-        _listenerSupport.delegate().progressMade(newEvent);
+        public ContributionReference(final GatheringProgressListenerImpl listener,
+                                     final ReferenceQueue<GatheringProgressListenerImpl> queue) {
+            super(listener, queue);
+            _contribution = listener._contribution;
+        }
+    }
+
+    /**
+     * ProgressEvent reporting the overall progress, which copies the properties of the original event only when they
+     * are accessed.
+     */
+    protected static class GatheredProgressEvent extends ProgressEvent {
+        protected final ProgressEvent _originalEvent;
+
+        public GatheredProgressEvent(final ProgressEvent originalEvent, final float completionPercentage) {
+            super(originalEvent.getSource(), originalEvent.getMessage(), completionPercentage,
+                    originalEvent.getWhen());
+            _originalEvent = originalEvent;
+        }
+
+        @Override
+        public Properties getProperties() {
+            if (_properties == null) {
+                final Properties properties = new Properties();
+                final Properties oldProperties = _originalEvent.getProperties();
+                for (String key : oldProperties.stringPropertyNames())
+                    properties.setProperty(key, oldProperties.getProperty(key));
+                _properties = properties;
+            }
+            return _properties;
+        }
     }
 
     /**
@@ -149,7 +251,12 @@ public class GatheringProgressListener {
         /**
          * The last reported completion percentage.
          */
-        protected float _completionPercentage;
+        protected volatile float _completionPercentage;
+
+        /**
+         * The contribution of this listener to the overall progress, in units of 1 / SCALE.
+         */
+        protected final AtomicLong _contribution;
 
         /**
          * Only used internally, so there should be no reason to instanciate this class.
@@ -161,6 +268,7 @@ public class GatheringProgressListener {
                                                 final float fraction) {
             _callback = callback;
             _fraction = fraction;
+            _contribution = new AtomicLong();
         }
 
         public float getFraction() {
@@ -172,7 +280,11 @@ public class GatheringProgressListener {
         }
 
         public void progressMade(final ProgressEvent event) {
-            _completionPercentage = event.getCompletionPercentage();
+            final float completionPercentage = event.getCompletionPercentage();
+            _completionPercentage = completionPercentage;
+            final long contribution = completionPercentage < 0 ? INDETERMINATE :
+                    Math.round((double) completionPercentage * _fraction * SCALE);
+            _callback.contributionChanged(_contribution.getAndSet(contribution), contribution);
             _callback.progressMade(event);
         }
     }
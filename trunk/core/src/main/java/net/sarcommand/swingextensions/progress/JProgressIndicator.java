@@ -1,6 +1,8 @@
 package net.sarcommand.swingextensions.progress;
 
 import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 
 /**
  * This class implements a simple, ajax-like progress indicator. Other than the JProgressBar, this widget will not
@@ -36,6 +38,16 @@ public class JProgressIndicator extends JComponent {
      */
     protected boolean _indicatingProgress;
 
+    /**
+     * The ProgressNode being displayed, if any.
+     */
+    protected ProgressNode _progressNode;
+
+    /**
+     * Timer polling the ProgressNode being displayed.
+     */
+    protected Timer _progressNodeTimer;
+
     public JProgressIndicator() {
         _updateDelay = 50;
         _indicatingProgress = false;
@@ -85,4 +97,46 @@ public class JProgressIndicator extends JComponent {
     protected ProgressIndicatorUI getUI() {
         return (ProgressIndicatorUI) ui;
     }
+
+    public ProgressNode getProgressNode() {
+        return _progressNode;
+    }
+
+    /**
+     * Makes this indicator display the state of a ProgressNode. The indicator will indicate progress until the node has
+     * completed, and its tool tip will describe the node's current activity and the estimated remaining time. The node is
+     * polled every ProgressBarUtilities.PROGRESS_NODE_UPDATE_INTERVAL milliseconds.
+     *
+     * @param progressNode the node to display, or null to stop displaying a node.
+     */
+    public void setProgressNode(final ProgressNode progressNode) {
+        if (_progressNodeTimer != null) {
+            _progressNodeTimer.stop();
+            _progressNodeTimer = null;
+        }
+        _progressNode = progressNode;
+        if (progressNode == null) {
+            setToolTipText(null);
+            setIndicatingProgress(false);
+            return;
+        }
+
+        _progressNodeTimer = new Timer(ProgressBarUtilities.PROGRESS_NODE_UPDATE_INTERVAL, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                updateProgressNode();
+            }
+        });
+        updateProgressNode();
+        if (!progressNode.isComplete())
+            _progressNodeTimer.start();
+    }
+
+    protected void updateProgressNode() {
+        final boolean complete = _progressNode.isComplete();
+        if (_indicatingProgress == complete)
+            setIndicatingProgress(!complete);
+        setToolTipText(ProgressBarUtilities.describeProgress(_progressNode));
+        if (complete)
+            _progressNodeTimer.stop();
+    }
 }
@@ -24,6 +24,11 @@ public class ProgressBarUtilities {
      */
     public static final String PROGRESS_BAR_BINDING = "SwingExt.ProgressBarUtilities.progressBarBinding";
 
+    /**
+     * Interval in milliseconds at which components bound to a ProgressNode are updated.
+     */
+    public static final int PROGRESS_NODE_UPDATE_INTERVAL = 100;
+
     /**
      * Utility method which will make a JProgressBar instance monitor the progress of a SwingWorker. Basically, all this
      * class does is properly detach any previously attached ProgressBarBinding and install a new SwingWorkerBinding.
@@ -41,4 +46,87 @@ public class ProgressBarUtilities {
         final SwingWorkerProgressBarBinding progressBarBinding = new SwingWorkerProgressBarBinding(progressBar, worker);
         progressBar.putClientProperty(PROGRESS_BAR_BINDING, progressBarBinding);
     }
+
+    /**
+     * Utility method which will make a JProgressBar instance display the progress of a ProgressNode, detaching any
+     * previously attached ProgressBarBinding.
+     *
+     * @param progressBar ProgressBar used to display the progress of 'node'.
+     * @param node        ProgressNode being monitored.
+     * @see ProgressNodeProgressBarBinding
+     */
+    public static void attachToProgressNode(final JProgressBar progressBar, final ProgressNode node) {
+        if (progressBar == null)
+            throw new IllegalArgumentException("Parameter 'progressBar' must not be null!");
+        if (node == null)
+            throw new IllegalArgumentException("Parameter 'node' must not be null!");
+        final ProgressBarVariation previousVariation =
+                (ProgressBarVariation) progressBar.getClientProperty(PROGRESS_BAR_BINDING);
+        if (previousVariation != null)
+            previousVariation.detach();
+
+        final ProgressNodeProgressBarBinding progressBarBinding = new ProgressNodeProgressBarBinding(progressBar, node);
+        progressBar.putClientProperty(PROGRESS_BAR_BINDING, progressBarBinding);
+    }
+
+    /**
+     * Utility method which will make a JProgressBar instance display the progress of a ProgressTracker, detaching any
+     * previously attached ProgressBarBinding.
+     *
+     * @param progressBar ProgressBar used to display the progress of 'tracker'.
+     * @param tracker     ProgressTracker being monitored.
+     * @see ProgressTrackerProgressBarBinding
+     */
+    public static void attachToProgressTracker(final JProgressBar progressBar, final ProgressTracker tracker) {
+        if (progressBar == null)
+            throw new IllegalArgumentException("Parameter 'progressBar' must not be null!");
+        if (tracker == null)
+            throw new IllegalArgumentException("Parameter 'tracker' must not be null!");
+        final ProgressBarVariation previousVariation =
+                (ProgressBarVariation) progressBar.getClientProperty(PROGRESS_BAR_BINDING);
+        if (previousVariation != null)
+            previousVariation.detach();
+
+        final ProgressTrackerProgressBarBinding progressBarBinding =
+                new ProgressTrackerProgressBarBinding(progressBar, tracker);
+        progressBar.putClientProperty(PROGRESS_BAR_BINDING, progressBarBinding);
+    }
+
+    /**
+     * Returns a short description of a ProgressNode's state, like "Importing - 42%, 1:05 remaining".
+     *
+     * @param node the node to describe.
+     * @return a description of the node's message, completion percentage and remaining time.
+     */
+    public static String describeProgress(final ProgressNode node) {
+        final StringBuilder builder = new StringBuilder();
+        final String message = node.getMessage() != null ? node.getMessage() : node.getName();
+        if (message != null)
+            builder.append(message).append(" - ");
+        final float completionPercentage = node.getCompletionPercentage();
+        if (completionPercentage >= 0)
+            builder.append(Math.round(completionPercentage * 100)).append('%');
+        final long remainingTime = node.getRemainingTime();
+        if (remainingTime > 0 && !node.isComplete()) {
+            if (completionPercentage >= 0)
+                builder.append(", ");
+            builder.append(formatDuration(remainingTime)).append(" remaining");
+        }
+        if (builder.length() > 3 && builder.lastIndexOf(" - ") == builder.length() - 3)
+            builder.setLength(builder.length() - 3);
+        return builder.toString();
+    }
+
+    /**
+     * Formats a duration as minutes and seconds, or as hours, minutes and seconds if it exceeds one hour.
+     *
+     * @param millis the duration in milliseconds.
+     * @return the formatted duration, like "1:05" or "2:01:05".
+     */
+    public static String formatDuration(final long millis) {
+        final long seconds = (millis + 999) / 1000;
+        if (seconds >= 3600)
+            return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+        return String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
 }
@@ -0,0 +1,392 @@
+package net.sarcommand.swingextensions.progress;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A node in a hierarchy of tasks whose progress is being monitored, for instance an import consisting of several files
+ * consisting of several rows each. Each child contributes to its parent's progress according to its weight, relative to
+ * the sum of the weights of all its siblings. Nodes without children report their progress directly, either as a
+ * completion percentage or as units of work done out of a known total.
+ * <p/>
+ * All progress related methods may be invoked from any number of threads concurrently and do not lock: Each node adds
+ * the difference to its previous contribution to an atomic sum maintained by its parent, so reporting progress takes
+ * time proportional to the depth of the node only. The sums are eventually consistent: While several threads report
+ * progress concurrently, a parent may briefly reflect an older state of one of its children.
+ * <p/>
+ * In addition, each node estimates its throughput and remaining time from an exponentially smoothed rate of progress.
+ * The estimate is updated whenever it is queried, at most once per DEFAULT_SAMPLE_INTERVAL, so the reporting threads
+ * are not burdened with it. Components displaying a node will typically poll it at a fixed rate, see
+ * ProgressBarUtilities.attachToProgressNode(JProgressBar, ProgressNode) and JProgressIndicator.setProgressNode().
+ * <p/>
+ * A ProgressNode is a ProgressListener as well, so that existing progress sources can report to it.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public class ProgressNode implements ProgressListener {
+    /**
+     * Default time constant of the exponential smoothing applied to the rate of progress, in milliseconds.
+     */
+    public static final long DEFAULT_SMOOTHING_TIME = 3000;
+
+    /**
+     * Minimum time between two samples taken for the rate estimation, in milliseconds.
+     */
+    public static final long DEFAULT_SAMPLE_INTERVAL = 100;
+
+    /**
+     * Maximum weight of a single child. Contributions are summed as doubles, so larger weights would only cost the
+     * lighter siblings their precision.
+     */
+    public static final double MAXIMUM_WEIGHT = 1e12;
+
+    /**
+     * Fixed point scale of the completion values.
+     */
+    protected static final long SCALE = 1L << 30;
+
+    protected final String _name;
+    protected final double _weight;
+    protected final ProgressNode _parent;
+    protected final CopyOnWriteArrayList<ProgressNode> _children;
+
+    /**
+     * Sum of the weights of all children, stored as the bits of a double.
+     */
+    protected final AtomicLong _totalChildWeight;
+
+    /**
+     * Sum of the contributions of all children, stored as the bits of a double. A child contributes its weight times
+     * its completed fraction.
+     */
+    protected final AtomicLong _childContributions;
+
+    /**
+     * This node's last contribution to its parent, stored as the bits of a double.
+     */
+    protected final AtomicLong _contribution;
+
+    /**
+     * Completion of a node without children and without a known amount of work, in units of 1 / SCALE.
+     */
+    protected final AtomicLong _completion;
+    protected final AtomicLong _workDone;
+    protected final AtomicReference<Estimate> _estimate;
+
+    protected volatile long _totalWork;
+    protected volatile boolean _completed;
+    protected volatile boolean _indeterminate;
+    protected volatile String _message;
+    protected volatile long _smoothingTime;
+
+    /**
+     * Creates a new root node.
+     *
+     * @param name name of the task, may be null.
+     */
+    public ProgressNode(final String name) {
+        this(null, name, 1);
+    }
+
+    protected ProgressNode(final ProgressNode parent, final String name, final double weight) {
+        _parent = parent;
+        _name = name;
+        _weight = weight;
+        _children = new CopyOnWriteArrayList<ProgressNode>();
+        _totalChildWeight = new AtomicLong(Double.doubleToLongBits(0));
+        _childContributions = new AtomicLong(Double.doubleToLongBits(0));
+        _contribution = new AtomicLong(Double.doubleToLongBits(0));
+        _completion = new AtomicLong();
+        _workDone = new AtomicLong();
+        _estimate = new AtomicReference<Estimate>();
+        _smoothingTime = DEFAULT_SMOOTHING_TIME;
+    }
+
+    /**
+     * Creates a child task of this node.
+     *
+     * @param name   name of the child task, may be null.
+     * @param weight the child's share of this node's progress, relative to the weights of its siblings. Has to be
+     *               positive and must not exceed MAXIMUM_WEIGHT.
+     * @return the new child.
+     */
+    public ProgressNode createChild(final String name, final double weight) {
+        if (!(weight > 0 && weight <= MAXIMUM_WEIGHT))
+            throw new IllegalArgumentException("Parameter 'weight' must be positive and not exceed MAXIMUM_WEIGHT!");
+        final ProgressNode child = new ProgressNode(this, name, weight);
+        addDouble(_totalChildWeight, weight);
+        _children.add(child);
+        propagate();
+        return child;
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    public double getWeight() {
+        return _weight;
+    }
+
+    public ProgressNode getParent() {
+        return _parent;
+    }
+
+    public List<ProgressNode> getChildren() {
+        return Collections.unmodifiableList(_children);
+    }
+
+    public String getMessage() {
+        return _message;
+    }
+
+    public void setMessage(final String message) {
+        _message = message;
+    }
+
+    /**
+     * Sets the completion percentage of this node. Has no effect on nodes with children or with a known amount of work.
+     *
+     * @param completionPercentage the completion percentage, 0 <= percentage <= 1.
+     */
+    public void setCompletionPercentage(final float completionPercentage) {
+        _completion.set((long) (Math.max(0, Math.min(1, completionPercentage)) * SCALE));
+        _indeterminate = false;
+        propagate();
+    }
+
+    /**
+     * Sets the number of units of work this node consists of. Once set, the node's progress is reported using
+     * worked(long).
+     *
+     * @param totalWork the total amount of work, or 0 if unknown.
+     */
+    public void setTotalWork(final long totalWork) {
+        if (totalWork < 0)
+            throw new IllegalArgumentException("Parameter 'totalWork' must not be negative!");
+        _totalWork = totalWork;
+        propagate();
+    }
+
+    public long getTotalWork() {
+        return _totalWork;
+    }
+
+    /**
+     * Reports that the given number of units of work have been done.
+     *
+     * @param units the amount of work done since the last invocation.
+     */
+    public void worked(final long units) {
+        _workDone.addAndGet(units);
+        _indeterminate = false;
+        propagate();
+    }
+
+    public long getWorkDone() {
+        return _workDone.get();
+    }
+
+    /**
+     * Marks this node as complete, regardless of the progress of its children.
+     */
+    public void complete() {
+        _completed = true;
+        _indeterminate = false;
+        propagate();
+    }
+
+    public boolean isComplete() {
+        return _completed || getCompletion() >= SCALE;
+    }
+
+    /**
+     * Sets whether the progress of this node can currently not be determined. Only affects how the node itself is
+     * displayed, not its contribution to its parent.
+     *
+     * @param indeterminate whether the progress is indeterminate.
+     */
+    public void setIndeterminate(final boolean indeterminate) {
+        _indeterminate = indeterminate;
+    }
+
+    public boolean isIndeterminate() {
+        return _indeterminate && !_completed;
+    }
+
+    /**
+     * Returns the current completion percentage.
+     *
+     * @return the completion percentage, 0 <= percentage <= 1, or ProgressEvent.PROGRESS_INDETERMINATE.
+     */
+    public float getCompletionPercentage() {
+        return isIndeterminate() ? ProgressEvent.PROGRESS_INDETERMINATE : (float) getCompletion() / SCALE;
+    }
+
+    public void progressMade(final ProgressEvent event) {
+        if (event.getMessage() != null)
+            _message = event.getMessage();
+        if (event.getCompletionPercentage() < 0)
+            _indeterminate = true;
+        else
+            setCompletionPercentage(event.getCompletionPercentage());
+    }
+
+    public long getSmoothingTime() {
+        return _smoothingTime;
+    }
+
+    public void setSmoothingTime(final long smoothingTime) {
+        if (smoothingTime < 1)
+            throw new IllegalArgumentException("Parameter 'smoothingTime' must be positive!");
+        _smoothingTime = smoothingTime;
+    }
+
+    /**
+     * Returns the smoothed throughput of this node.
+     *
+     * @return units of work per second if the total amount of work is known, the completed fraction per second
+     *         otherwise, or a negative value if no estimate is available yet.
+     */
+    public double getThroughput() {
+        final double rate = updateEstimate()._rate;
+        if (Double.isNaN(rate))
+            return -1;
+        final long totalWork = _totalWork;
+        return totalWork > 0 && _children.isEmpty() ? rate * totalWork : rate;
+    }
+
+    /**
+     * Returns the estimated time until this node completes.
+     *
+     * @return the remaining time in milliseconds, or a negative value if no estimate is available.
+     */
+    public long getRemainingTime() {
+        final Estimate estimate = updateEstimate();
+        if (estimate._completion >= 1)
+            return 0;
+        if (Double.isNaN(estimate._rate) || !(estimate._rate > 0))
+            return -1;
+        return (long) ((1 - estimate._completion) / estimate._rate * 1000);
+    }
+
+    /**
+     * Takes a new sample of this node's progress if the last one is older than DEFAULT_SAMPLE_INTERVAL, and updates the
+     * smoothed rate accordingly.
+     *
+     * @return the most recent estimate.
+     */
+    protected Estimate updateEstimate() {
+        final long now = System.nanoTime();
+        while (true) {
+            final Estimate previous = _estimate.get();
+            if (previous != null && now - previous._time < DEFAULT_SAMPLE_INTERVAL * 1000000L)
+                return previous;
+
+            final double completion = (double) getCompletion() / SCALE;
+            final Estimate next;
+            if (previous == null)
+                next = new Estimate(now, completion, Double.NaN);
+            else {
+                final double elapsed = (now - previous._time) / 1e9;
+                final double rate = (completion - previous._completion) / elapsed;
+                if (Double.isNaN(previous._rate))
+                    next = new Estimate(now, completion, rate);
+                else {
+                    final double alpha = 1 - Math.exp(-elapsed * 1000 / _smoothingTime);
+                    next = new Estimate(now, completion, previous._rate + alpha * (rate - previous._rate));
+                }
+            }
+            if (_estimate.compareAndSet(previous, next))
+                return next;
+        }
+    }
+
+    /**
+     * Returns the completion of this node in units of 1 / SCALE.
+     *
+     * @return the completion of this node.
+     */
+    protected long getCompletion() {
+        if (_completed)
+            return SCALE;
+        final long completion;
+        if (!_children.isEmpty()) {
+            final double totalWeight = Double.longBitsToDouble(_totalChildWeight.get());
+            completion = Math.round(Double.longBitsToDouble(_childContributions.get()) / totalWeight * SCALE);
+        } else {
+            final long totalWork = _totalWork;
+            completion = totalWork > 0 ? (long) ((double) _workDone.get() / totalWork * SCALE) : _completion.get();
+        }
+        return Math.max(0, Math.min(SCALE, completion));
+    }
+
+    /**
+     * Passes a change of this node's completion on to its ancestors. If another thread changes the completion
+     * concurrently, the contribution is recomputed until it reflects the latest state.
+     */
+    protected void propagate() {
+        ProgressNode node = this;
+        while (node._parent != null) {
+            boolean changed = false;
+            long completion;
+            do {
+                completion = node.getCompletion();
+                final double contribution = node._weight * completion / SCALE;
+                final double previous = Double.longBitsToDouble(
+                        node._contribution.getAndSet(Double.doubleToLongBits(contribution)));
+                if (previous != contribution) {
+                    addDouble(node._parent._childContributions, contribution - previous);
+                    changed = true;
+                }
+            } while (node.getCompletion() != completion);
+            if (!changed)
+                return;
+            node = node._parent;
+        }
+    }
+
+    /**
+     * Atomically adds a value to a double stored as the bits of an AtomicLong.
+     *
+     * @param bits  the double's bits.
+     * @param delta the value to add.
+     */
+    protected static void addDouble(final AtomicLong bits, final double delta) {
+        long current;
+        do {
+            current = bits.get();
+        } while (!bits.compareAndSet(current, Double.doubleToLongBits(Double.longBitsToDouble(current) + delta)));
+    }
+
+    /**
+     * Immutable sample of a node's progress along with the smoothed rate at that time.
+     */
+    protected static class Estimate {
+        protected final long _time;
+        protected final double _completion;
+
+        /**
+         * Smoothed rate in completed fraction per second, NaN if not known yet.
+         */
+        protected final double _rate;
+
+        public Estimate(final long time, final double completion, final double rate) {
+            _time = time;
+            _completion = completion;
+            _rate = rate;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package net.sarcommand.swingextensions.progress;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * This class will bind a given JProgressBar to a ProgressNode, making it display the node's completion percentage.
+ * Since progress nodes are usually updated from worker threads at a high rate, the binding does not listen to the node
+ * but polls it at a fixed interval on the event dispatch thread. The progress bar's string and tool tip will describe
+ * the node's current activity and the estimated remaining time. Polling stops once the node has completed.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+class ProgressNodeProgressBarBinding implements ProgressBarVariation {
+    /**
+     * Resolution of the progress bar's value range.
+     */
+    public static final int MAXIMUM = 1000;
+
+    private JProgressBar _progressBar;
+    private ProgressNode _progressNode;
+    private Timer _timer;
+
+    public ProgressNodeProgressBarBinding(final JProgressBar progressBar, final ProgressNode progressNode) {
+        _progressBar = progressBar;
+        _progressBar.setMinimum(0);
+        _progressBar.setMaximum(MAXIMUM);
+
+        _progressNode = progressNode;
+        _timer = new Timer(ProgressBarUtilities.PROGRESS_NODE_UPDATE_INTERVAL, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                update();
+            }
+        });
+        update();
+        if (!_progressNode.isComplete())
+            _timer.start();
+    }
+
+    protected void update() {
+        final float completionPercentage = _progressNode.getCompletionPercentage();
+        final boolean indeterminate = completionPercentage < 0;
+        if (_progressBar.isIndeterminate() != indeterminate)
+            _progressBar.setIndeterminate(indeterminate);
+        if (!indeterminate)
+            _progressBar.setValue(Math.round(completionPercentage * MAXIMUM));
+
+        final String description = ProgressBarUtilities.describeProgress(_progressNode);
+        _progressBar.setString(description);
+        _progressBar.setToolTipText(description);
+        if (_progressNode.isComplete())
+            _timer.stop();
+    }
+
+    public void detach() {
+        _timer.stop();
+    }
+
+    public JProgressBar getAlteredComponent() {
+        return _progressBar;
+    }
+}
@@ -0,0 +1,289 @@
+package net.sarcommand.swingextensions.progress;
+
+import net.sarcommand.swingextensions.event.EventSupport;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Tracks the progress of a computation consisting of many concurrently executed subtasks, like a chain of
+ * CompletableFutures or a fork/join computation, and reports it through the ProgressListener interface.
+ * <p/>
+ * Progress is measured in units of work. The expected amount of work is announced using addWork(long) and progress is
+ * reported using worked(long), or automatically by tracking a CompletableFuture with track(CompletableFuture, long).
+ * Both counters are LongAdders, so that any number of subtasks can report progress at a high rate without contending
+ * for a shared variable: Reporting progress only makes sure a delivery has been scheduled, while the completion
+ * percentage is computed on the event dispatch thread at delivery time. The listeners installed on a tracker are
+ * notified on the event dispatch thread, at most DEFAULT_EVENTS_PER_SECOND times per second (see
+ * ThrottlingProgressListener).
+ * <p/>
+ * Cancelling a tracker cancels all tracked futures and tasks which have not completed yet. Since cancelling a
+ * CompletableFuture neither interrupts the thread computing it nor cancels the stages it depends on, long running
+ * subtasks should check isCancelled() or invoke checkCancelled() regularly. The action returned by
+ * createCancelAction(String) allows the user to cancel a tracker from the UI.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public class ProgressTracker {
+    /**
+     * Default number of events delivered to the listeners per second.
+     */
+    public static final int DEFAULT_EVENTS_PER_SECOND = ThrottlingProgressListener.DEFAULT_EVENTS_PER_SECOND;
+
+    /**
+     * Number of tracked tasks below which completed fork/join tasks are not purged.
+     */
+    protected static final int MINIMUM_PURGE_THRESHOLD = 64;
+
+    protected final EventSupport<ProgressListener> _listenerSupport;
+    protected final ThrottlingProgressListener _delivery;
+    protected final LongAdder _totalWork;
+    protected final LongAdder _workDone;
+
+    /**
+     * Futures and tasks which will be cancelled along with this tracker. Completed futures remove themselves, while
+     * completed fork/join tasks are purged whenever the set has doubled in size since the last purge.
+     */
+    protected final Set<Future<?>> _trackedTasks;
+
+    /**
+     * Size of _trackedTasks at which completed tasks are purged next.
+     */
+    protected final AtomicInteger _purgeThreshold;
+
+    protected volatile boolean _cancelled;
+
+    /**
+     * Creates a new tracker notifying its listeners at most DEFAULT_EVENTS_PER_SECOND times per second.
+     */
+    public ProgressTracker() {
+        this(DEFAULT_EVENTS_PER_SECOND);
+    }
+
+    /**
+     * Creates a new tracker.
+     *
+     * @param eventsPerSecond maximum number of events delivered to the listeners per second.
+     */
+    public ProgressTracker(final int eventsPerSecond) {
+        _listenerSupport = EventSupport.create(ProgressListener.class);
+        _delivery = new ThrottlingProgressListener(_listenerSupport.delegate(), eventsPerSecond, this) {
+            protected void updateLatestState() {
+                _latestPercentage = getCompletionPercentage();
+                _latestEvent = null;
+            }
+        };
+        _totalWork = new LongAdder();
+        _workDone = new LongAdder();
+        _trackedTasks = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
+        _purgeThreshold = new AtomicInteger(MINIMUM_PURGE_THRESHOLD);
+    }
+
+    /**
+     * Adds a ProgressListener to this instance. Listeners are notified on the event dispatch thread.
+     *
+     * @param listener listener to add.
+     */
+    public void addProgressListener(final ProgressListener listener) {
+        if (listener == null)
+            throw new IllegalArgumentException("Parameter 'listener' must not be null!");
+        _listenerSupport.addListener(listener);
+    }
+
+    /**
+     * Removes a previously installed listener from this instance.
+     *
+     * @param listener listener to remove.
+     */
+    public void removeProgressListener(final ProgressListener listener) {
+        if (listener == null)
+            throw new IllegalArgumentException("Parameter 'listener' must not be null!");
+        _listenerSupport.removeListener(listener);
+    }
+
+    /**
+     * Announces additional work to be done.
+     *
+     * @param units the amount of work to add to the total.
+     */
+    public void addWork(final long units) {
+        if (units < 0)
+            throw new IllegalArgumentException("Parameter 'units' must not be negative!");
+        _totalWork.add(units);
+        progressChanged();
+    }
+
+    /**
+     * Reports that the given amount of work has been done.
+     *
+     * @param units the amount of work done.
+     */
+    public void worked(final long units) {
+        _workDone.add(units);
+        progressChanged();
+    }
+
+    public long getTotalWork() {
+        return _totalWork.sum();
+    }
+
+    public long getWorkDone() {
+        return _workDone.sum();
+    }
+
+    /**
+     * Returns the current completion percentage.
+     *
+     * @return the completion percentage, or ProgressEvent.PROGRESS_INDETERMINATE if no work has been announced yet.
+     */
+    public float getCompletionPercentage() {
+        final long totalWork = _totalWork.sum();
+        if (totalWork <= 0)
+            return ProgressEvent.PROGRESS_INDETERMINATE;
+        return (float) Math.min(1, (double) _workDone.sum() / totalWork);
+    }
+
+    /**
+     * Tracks a CompletableFuture representing the given amount of work. The work is added to the total immediately and
+     * reported as done once the future completes, normally or exceptionally. The future will be cancelled if this
+     * tracker is cancelled before it completes.
+     *
+     * @param future the future to track.
+     * @param units  the amount of work the future represents.
+     * @return the future passed in.
+     */
+    public <T> CompletableFuture<T> track(final CompletableFuture<T> future, final long units) {
+        if (future == null)
+            throw new IllegalArgumentException("Parameter 'future' must not be null!");
+        addWork(units);
+        register(future);
+        future.whenComplete(new BiConsumer<T, Throwable>() {
+            public void accept(final T result, final Throwable throwable) {
+                _trackedTasks.remove(future);
+                worked(units);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Tracks a ForkJoinTask, which will be cancelled if this tracker is cancelled before the task completes. Since
+     * fork/join tasks cannot be observed, the task should report its progress using worked(long) itself. Tasks which
+     * have already completed are not tracked; for large computations it is usually sufficient to track the root task.
+     *
+     * @param task the task to track.
+     * @return the task passed in.
+     */
+    public <T extends ForkJoinTask<?>> T track(final T task) {
+        if (task == null)
+            throw new IllegalArgumentException("Parameter 'task' must not be null!");
+        if (!task.isDone()) {
+            purgeCompletedTasks();
+            register(task);
+        }
+        return task;
+    }
+
+    /**
+     * Cancels all tracked futures and tasks which have not completed yet. Futures and tasks tracked afterwards are
+     * cancelled immediately.
+     */
+    public void cancel() {
+        _cancelled = true;
+        for (Future<?> task : _trackedTasks)
+            task.cancel(true);
+        _trackedTasks.clear();
+    }
+
+    public boolean isCancelled() {
+        return _cancelled;
+    }
+
+    /**
+     * Throws a CancellationException if this tracker has been cancelled. Meant to be invoked regularly by long running
+     * subtasks.
+     *
+     * @throws CancellationException if the tracker has been cancelled.
+     */
+    public void checkCancelled() {
+        if (_cancelled)
+            throw new CancellationException();
+    }
+
+    /**
+     * Returns an action cancelling this tracker. The action will be disabled once the tracker has been cancelled or all
+     * announced work has been done.
+     *
+     * @param name the action's name.
+     * @return a new action cancelling this tracker.
+     */
+    public Action createCancelAction(final String name) {
+        final AbstractAction action = new AbstractAction(name) {
+            public void actionPerformed(final ActionEvent e) {
+                cancel();
+                setEnabled(false);
+            }
+        };
+        addProgressListener(new ProgressListener() {
+            public void progressMade(final ProgressEvent event) {
+                if (event.getCompletionPercentage() >= 1 || _cancelled)
+                    action.setEnabled(false);
+            }
+        });
+        return action;
+    }
+
+    /**
+     * Removes completed tasks from _trackedTasks once it has grown past the purge threshold, and doubles the threshold
+     * relative to the number of tasks still running. Fork/join tasks cannot be observed, so this keeps the set from
+     * growing without bound at an amortized constant cost per tracked task.
+     */
+    protected void purgeCompletedTasks() {
+        final int threshold = _purgeThreshold.get();
+        if (_trackedTasks.size() < threshold || !_purgeThreshold.compareAndSet(threshold, Integer.MAX_VALUE))
+            return;
+        final Iterator<Future<?>> iterator = _trackedTasks.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isDone())
+                iterator.remove();
+        }
+        _purgeThreshold.set(Math.max(MINIMUM_PURGE_THRESHOLD, 2 * _trackedTasks.size()));
+    }
+
+    protected void register(final Future<?> task) {
+        _trackedTasks.add(task);
+        /* Re-check after registering, cancel() may have missed the task */
+        if (_cancelled) {
+            _trackedTasks.remove(task);
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Schedules a delivery to the listeners unless one is pending already. Invoked for each progress report, so this
+     * only reads a shared flag in most cases.
+     */
+    protected void progressChanged() {
+        _delivery.scheduleDelivery(false);
+    }
+}
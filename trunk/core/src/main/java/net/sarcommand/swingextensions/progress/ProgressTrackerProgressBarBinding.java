@@ -0,0 +1,58 @@
+package net.sarcommand.swingextensions.progress;
+
+import javax.swing.*;
+
+/**
+ * This class will bind a given JProgressBar to a ProgressTracker, making it display the tracker's completion
+ * percentage. The progress bar is indeterminate until work has been announced to the tracker.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+class ProgressTrackerProgressBarBinding implements ProgressListener, ProgressBarVariation {
+    /**
+     * Resolution of the progress bar's value range.
+     */
+    public static final int MAXIMUM = 1000;
+
+    private JProgressBar _progressBar;
+    private ProgressTracker _tracker;
+
+    public ProgressTrackerProgressBarBinding(final JProgressBar progressBar, final ProgressTracker tracker) {
+        _progressBar = progressBar;
+        _progressBar.setMinimum(0);
+        _progressBar.setMaximum(MAXIMUM);
+
+        _tracker = tracker;
+        _tracker.addProgressListener(this);
+        update(_tracker.getCompletionPercentage());
+    }
+
+    public void progressMade(final ProgressEvent event) {
+        update(event.getCompletionPercentage());
+    }
+
+    protected void update(final float completionPercentage) {
+        final boolean indeterminate = completionPercentage < 0;
+        if (_progressBar.isIndeterminate() != indeterminate)
+            _progressBar.setIndeterminate(indeterminate);
+        if (!indeterminate)
+            _progressBar.setValue(Math.round(completionPercentage * MAXIMUM));
+    }
+
+    public void detach() {
+        _tracker.removeProgressListener(this);
+    }
+
+    public JProgressBar getAlteredComponent() {
+        return _progressBar;
+    }
+}
@@ -0,0 +1,217 @@
+package net.sarcommand.swingextensions.progress;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A ProgressListener adapter which limits the rate at which progress is delivered to another listener, typically one
+ * updating a Swing component. Progress may be reported from any thread at any rate; the target listener will be
+ * notified on the event dispatch thread at most the configured number of times per second and always receives the
+ * latest state. The first event and the final event (a completion percentage of 1 or more) are delivered without
+ * delay.
+ * <p/>
+ * All progress reported between two deliveries is coalesced into a single invocation on the event dispatch thread, so
+ * reporting progress costs no more than a volatile write in most cases. Worker loops reporting progress per item should
+ * use the report(float) and report(float, String) methods, which do not require a ProgressEvent to be created: The
+ * event passed to the target listener is created on the event dispatch thread at delivery time, using the source passed
+ * to the constructor, or this instance.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public class ThrottlingProgressListener implements ProgressListener {
+    /**
+     * Default number of events delivered per second.
+     */
+    public static final int DEFAULT_EVENTS_PER_SECOND = 20;
+
+    protected final ProgressListener _target;
+    protected final Object _source;
+    protected final AtomicBoolean _deliveryPending;
+    protected final Runnable _deliveryRunnable;
+    protected final Timer _deliveryTimer;
+
+    protected volatile ProgressEvent _latestEvent;
+    protected volatile float _latestPercentage;
+    protected volatile String _latestMessage;
+
+    /**
+     * Minimum interval between two deliveries in nanoseconds.
+     */
+    protected volatile long _deliveryInterval;
+
+    /**
+     * Time of the last delivery as returned by System.nanoTime(). Only accessed on the event dispatch thread.
+     */
+    protected long _lastDelivery;
+    protected boolean _delivered;
+    protected ProgressEvent _deliveredEvent;
+
+    /**
+     * Creates a new adapter delivering at most DEFAULT_EVENTS_PER_SECOND events per second.
+     *
+     * @param target the listener to deliver progress to.
+     */
+    public ThrottlingProgressListener(final ProgressListener target) {
+        this(target, DEFAULT_EVENTS_PER_SECOND);
+    }
+
+    /**
+     * Creates a new adapter.
+     *
+     * @param target          the listener to deliver progress to.
+     * @param eventsPerSecond maximum number of events delivered per second.
+     */
+    public ThrottlingProgressListener(final ProgressListener target, final int eventsPerSecond) {
+        this(target, eventsPerSecond, null);
+    }
+
+    /**
+     * Creates a new adapter.
+     *
+     * @param target          the listener to deliver progress to.
+     * @param eventsPerSecond maximum number of events delivered per second.
+     * @param source          source of the events created for progress reported using report(float), or null to use
+     *                        this instance.
+     */
+    public ThrottlingProgressListener(final ProgressListener target, final int eventsPerSecond, final Object source) {
+        if (target == null)
+            throw new IllegalArgumentException("Parameter 'target' must not be null!");
+        _target = target;
+        _source = source != null ? source : this;
+        setEventsPerSecond(eventsPerSecond);
+
+        _deliveryPending = new AtomicBoolean();
+        _deliveryRunnable = new Runnable() {
+            public void run() {
+                deliver();
+            }
+        };
+        _deliveryTimer = new Timer(0, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                deliver();
+            }
+        });
+        _deliveryTimer.setRepeats(false);
+    }
+
+    public ProgressListener getTarget() {
+        return _target;
+    }
+
+    public int getEventsPerSecond() {
+        return (int) Math.round(1e9 / _deliveryInterval);
+    }
+
+    public void setEventsPerSecond(final int eventsPerSecond) {
+        if (eventsPerSecond < 1)
+            throw new IllegalArgumentException("Parameter 'eventsPerSecond' must be positive!");
+        _deliveryInterval = 1000000000L / eventsPerSecond;
+    }
+
+    public void progressMade(final ProgressEvent event) {
+        if (event == null)
+            throw new IllegalArgumentException("Parameter 'event' must not be null!");
+        _latestEvent = event;
+        scheduleDelivery(event.getCompletionPercentage() >= 1);
+    }
+
+    /**
+     * Reports progress without creating a ProgressEvent.
+     *
+     * @param completionPercentage The current completion percentage. Should be 0 <= percentage <= 1, while negative
+     *                             values denote an indeterminate progress.
+     */
+    public void report(final float completionPercentage) {
+        report(completionPercentage, null);
+    }
+
+    /**
+     * Reports progress without creating a ProgressEvent.
+     *
+     * @param completionPercentage The current completion percentage. Should be 0 <= percentage <= 1, while negative
+     *                             values denote an indeterminate progress.
+     * @param message              An optional message describing the current activity.
+     */
+    public void report(final float completionPercentage, final String message) {
+        _latestPercentage = completionPercentage;
+        _latestMessage = message;
+        _latestEvent = null;
+        scheduleDelivery(completionPercentage >= 1);
+    }
+
+    /**
+     * Makes sure a delivery has been scheduled on the event dispatch thread.
+     *
+     * @param immediately whether the delivery must not wait for a pending throttled delivery, as for the final event.
+     */
+    protected void scheduleDelivery(final boolean immediately) {
+        if (immediately) {
+            _deliveryPending.set(true);
+            SwingUtilities.invokeLater(_deliveryRunnable);
+        } else if (!_deliveryPending.get() && _deliveryPending.compareAndSet(false, true))
+            SwingUtilities.invokeLater(_deliveryRunnable);
+    }
+
+    /**
+     * Invoked on the event dispatch thread before the latest state is examined. Subclasses computing their state on
+     * demand rather than having it reported may update the latest percentage and message here. Does nothing by
+     * default.
+     */
+    protected void updateLatestState() {
+    }
+
+    protected boolean isFinal() {
+        final ProgressEvent latestEvent = _latestEvent;
+        return (latestEvent != null ? latestEvent.getCompletionPercentage() : _latestPercentage) >= 1;
+    }
+
+    /**
+     * Delivers the latest progress to the target listener, unless the last delivery happened too recently, in which
+     * case the delivery is postponed. Invoked on the event dispatch thread.
+     */
+    protected void deliver() {
+        if (!_deliveryPending.get())
+            return;
+
+        updateLatestState();
+        final long now = System.nanoTime();
+        final long remaining = _lastDelivery + _deliveryInterval - now;
+        if (_delivered && remaining > 0 && !isFinal()) {
+            if (!_deliveryTimer.isRunning()) {
+                _deliveryTimer.setInitialDelay((int) Math.max(1, remaining / 1000000L));
+                _deliveryTimer.start();
+            }
+            return;
+        }
+
+        /* Clear the flag before reading the state, so that progress reported from now on schedules another delivery */
+        _deliveryTimer.stop();
+        _deliveryPending.set(false);
+        updateLatestState();
+        final ProgressEvent latestEvent = _latestEvent;
+        final float latestPercentage = _latestPercentage;
+        final String latestMessage = _latestMessage;
+        /* Nothing has changed if the final event has already been delivered by an earlier delivery */
+        if (_delivered && (latestEvent != null ? latestEvent == _deliveredEvent :
+                _deliveredEvent.getSource() == _source && _deliveredEvent.getMessage() == latestMessage &&
+                        _deliveredEvent.getCompletionPercentage() == latestPercentage))
+            return;
+
+        _lastDelivery = now;
+        _delivered = true;
+        _deliveredEvent = latestEvent != null ? latestEvent :
+                new ProgressEvent(_source, latestMessage, latestPercentage);
+        _target.progressMade(_deliveredEvent);
+    }
+}
@@ -1,12 +1,16 @@
 package net.sarcommand.swingextensions.scrollpane;
 
+import net.sarcommand.swingextensions.image.ImageBufferPool;
+import net.sarcommand.swingextensions.utilities.LoadingScheduler;
+
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.MouseInputAdapter;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
-import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
 
 /**
@@ -14,6 +18,11 @@ import java.awt.image.BufferedImage;
  * small 'thumbnail' of the viewports contents, highlighting the current view rectangle. One can use the satellite view
  * to navigate the JViewPort's current view rect using the mouse.
  * <p/>
+ * The thumbnail is rendered once and only updated when contentsUpdated is invoked, or when the size of the view or of
+ * the satellite view changes. Updates are throttled to one per update interval. If the regions of the view which have
+ * changed are passed to contentsUpdated, only these regions of the thumbnail are rendered again. If a SnapshotPainter
+ * has been set, or if the view implements SnapshotPainter itself, the thumbnail is rendered on a background thread.
+ * <p/>
  * <hr/> Copyright 2006-2012 Torsten Heup
  * <p/>
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
@@ -26,16 +35,68 @@ import java.awt.image.BufferedImage;
  * specific language governing permissions and limitations under the License.
  */
 public class SatelliteView extends JComponent {
+    /**
+     * Default minimum time in milliseconds between two updates of the thumbnail.
+     */
+    public static final int DEFAULT_UPDATE_INTERVAL = 200;
+
+    /**
+     * Default paint used to shade the area outside of the view rect.
+     */
+    public static final Color DEFAULT_SHADE_PAINT = new Color(200, 200, 200, 100);
+
+    /**
+     * Implemented by views which are able to paint themselves on a background thread, or set on a SatelliteView to
+     * paint the thumbnail of a view on its behalf.
+     */
+    public static interface SnapshotPainter {
+        /**
+         * Paints the contents of the view. Invoked on a background thread, so implementations must not access state
+         * which is modified on the event dispatch thread without proper synchronization.
+         *
+         * @param g graphics to paint on, in view coordinates. Its clip is set to the region to paint.
+         */
+        void paintSnapshot(final Graphics2D g);
+    }
+
     protected JViewport _peer;
     protected ChangeListener _peerChangeListener;
     protected Paint _viewRectPaint;
+    protected Paint _shadePaint;
+    protected SnapshotPainter _snapshotPainter;
 
     protected Point _lastDrag;
 
+    /**
+     * Thumbnail of the peer's view, obtained from the shared ImageBufferPool. The image may be larger than the
+     * thumbnail, the actually used region is stored in _backBufferSize.
+     */
     protected BufferedImage _backBuffer;
-    private volatile boolean _contentsUpdated;
+    protected Dimension _backBufferSize;
+
+    /**
+     * Scale factor at which the back buffer has been rendered.
+     */
+    protected double _backBufferScale;
+
+    /**
+     * Region of the view which has changed since the last update, in view coordinates.
+     */
+    protected Rectangle _dirtyRegion;
+    protected boolean _fullUpdate;
+
+    protected Timer _updateTimer;
+    protected int _updateInterval;
+    protected long _lastUpdate;
+
+    /**
+     * Incremented whenever pending background snapshots become obsolete.
+     */
+    protected int _generation;
+    protected boolean _snapshotPending;
+
     private MouseInputAdapter _mouseInputAdapter;
-    private Rectangle _viewHighlightRectangle;
+    private final Rectangle _viewHighlightRectangle = new Rectangle();
 
     public SatelliteView() {
         initialize();
@@ -56,6 +117,7 @@ public class SatelliteView extends JComponent {
 
         _peer = viewport;
         _peer.addChangeListener(_peerChangeListener);
+        _generation++;
         contentsUpdated();
     }
 
@@ -90,6 +152,15 @@ public class SatelliteView extends JComponent {
         addMouseMotionListener(_mouseInputAdapter);
 
         _viewRectPaint = Color.BLACK;
+        _shadePaint = DEFAULT_SHADE_PAINT;
+
+        _updateInterval = DEFAULT_UPDATE_INTERVAL;
+        _updateTimer = new Timer(_updateInterval, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                updateThumbnail();
+            }
+        });
+        _updateTimer.setRepeats(false);
     }
 
     protected void processClick(final Point p) {
@@ -137,10 +208,56 @@ public class SatelliteView extends JComponent {
         _viewRectPaint = viewRectPaint;
     }
 
-    @Override
-    public void setBounds(final int x, final int y, final int width, final int height) {
-        _contentsUpdated = true;
-        super.setBounds(x, y, width, height);
+    public Paint getShadePaint() {
+        return _shadePaint;
+    }
+
+    /**
+     * Sets the paint used to shade the area outside of the view rect.
+     *
+     * @param shadePaint the shade paint, may be null to disable shading.
+     */
+    public void setShadePaint(final Paint shadePaint) {
+        _shadePaint = shadePaint;
+        repaint();
+    }
+
+    public int getUpdateInterval() {
+        return _updateInterval;
+    }
+
+    /**
+     * Sets the minimum time between two updates of the thumbnail.
+     *
+     * @param updateInterval the update interval in milliseconds.
+     */
+    public void setUpdateInterval(final int updateInterval) {
+        if (updateInterval < 0)
+            throw new IllegalArgumentException("Parameter 'updateInterval' must not be negative!");
+        _updateInterval = updateInterval;
+    }
+
+    /**
+     * Returns the painter used to render the thumbnail on a background thread. If no painter has been set explicitly
+     * and the peer's view implements SnapshotPainter, the view is returned.
+     *
+     * @return the snapshot painter, or null if the thumbnail is rendered on the event dispatch thread.
+     */
+    public SnapshotPainter getSnapshotPainter() {
+        if (_snapshotPainter != null)
+            return _snapshotPainter;
+        final Component view = _peer == null ? null : _peer.getView();
+        return view instanceof SnapshotPainter ? (SnapshotPainter) view : null;
+    }
+
+    /**
+     * Sets a painter rendering the thumbnail of the view on a background thread.
+     *
+     * @param snapshotPainter the snapshot painter, may be null.
+     */
+    public void setSnapshotPainter(final SnapshotPainter snapshotPainter) {
+        _snapshotPainter = snapshotPainter;
+        contentsUpdated();
     }
 
     @Override
@@ -149,7 +266,6 @@ public class SatelliteView extends JComponent {
 
         if (_peer != null) {
             final JViewport peer = _peer;
-            final Component view = peer.getView();
             final Graphics2D g2 = (Graphics2D) g;
             final int width = getWidth();
             final int height = getHeight();
@@ -170,19 +286,20 @@ public class SatelliteView extends JComponent {
             final int viewX = (int) Math.round((width - scaledViewWidth) / 2);
             final int viewY = (int) Math.round((height - scaledViewHeight) / 2);
 
-            if (_contentsUpdated || _backBuffer == null) {
-                _backBuffer = getGraphicsConfiguration().createCompatibleImage((int) Math.ceil(scaledViewWidth),
-                        (int) Math.ceil(scaledViewHeight));
-                final Graphics2D d = _backBuffer.createGraphics();
-                d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                        RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-                d.scale(scale, scale);
-                view.paint(d);
-                d.scale(1 / scale, 1 / scale);
-                d.dispose();
+            final int bufferWidth = (int) Math.ceil(scaledViewWidth);
+            final int bufferHeight = (int) Math.ceil(scaledViewHeight);
+            if (_backBuffer == null && getSnapshotPainter() == null)
+                updateThumbnail();
+            else if (_backBuffer == null || scale != _backBufferScale || bufferWidth != _backBufferSize.width ||
+                    bufferHeight != _backBufferSize.height) {
+                _fullUpdate = true;
+                scheduleUpdate();
             }
 
-            g2.drawImage(_backBuffer, viewX, viewY, null);
+            /* Until the updated thumbnail is available, the previous one is stretched to the new size */
+            if (_backBuffer != null)
+                g2.drawImage(_backBuffer, viewX, viewY, viewX + bufferWidth, viewY + bufferHeight, 0, 0,
+                        _backBufferSize.width, _backBufferSize.height, null);
 
             final int x = Math.max(viewX, viewX + (int) Math.round(scaledViewWidth * (visibleRect.getX() / viewWidth)));
             final int y = Math.max(viewY,
@@ -191,22 +308,225 @@ public class SatelliteView extends JComponent {
             final int w = (int) Math.min(scaledViewWidth, ((visibleRect.getWidth() / viewWidth)) * scaledViewWidth);
             final int h = (int) Math.min(scaledViewHeight, ((visibleRect.getHeight() / viewHeight)) * scaledViewHeight);
 
-            _viewHighlightRectangle = new Rectangle(x, y, w, h);
+            _viewHighlightRectangle.setBounds(x, y, w, h);
 
-            g2.setPaint(new Color(200, 200, 200, 100));
-            final Area area = new Area(new Rectangle(0, 0, getWidth(), getHeight()));
-            area.subtract(new Area(_viewHighlightRectangle));
-            g2.fill(area);
+            /* Shade everything but the view rect, as four rectangles around it */
+            if (_shadePaint != null) {
+                g2.setPaint(_shadePaint);
+                g2.fillRect(0, 0, width, y);
+                g2.fillRect(0, y + h, width, height - y - h);
+                g2.fillRect(0, y, x, h);
+                g2.fillRect(x + w, y, width - x - w, h);
+            }
 
             g2.setPaint(_viewRectPaint);
             g2.drawRect(x, y, w, h);
+        }
+    }
 
-            _contentsUpdated = false;
+    /**
+     * Schedules an update of the thumbnail, respecting the update interval. Has no effect if an update is already
+     * scheduled or a background snapshot is being rendered.
+     */
+    protected void scheduleUpdate() {
+        if (_updateTimer.isRunning() || _snapshotPending)
+            return;
+        final long elapsed = System.currentTimeMillis() - _lastUpdate;
+        _updateTimer.setInitialDelay((int) Math.max(0, Math.min(_updateInterval, _updateInterval - elapsed)));
+        _updateTimer.start();
+    }
+
+    /**
+     * Renders the dirty regions of the thumbnail, or the entire thumbnail if its size has changed. If a snapshot
+     * painter is available, rendering takes place on a background thread, otherwise the view is painted right away.
+     */
+    protected void updateThumbnail() {
+        final Component view = _peer == null ? null : _peer.getView();
+        if (view == null)
+            return;
+
+        final Dimension viewSize = _peer.getViewSize();
+        if (viewSize.width <= 0 || viewSize.height <= 0)
+            return;
+        final double scale = Math.min(getWidth() / viewSize.getWidth(), getHeight() / viewSize.getHeight());
+        final int bufferWidth = (int) Math.ceil(viewSize.width * scale);
+        final int bufferHeight = (int) Math.ceil(viewSize.height * scale);
+        if (bufferWidth < 1 || bufferHeight < 1)
+            return;
+
+        final boolean full = _fullUpdate || _backBuffer == null || scale != _backBufferScale ||
+                bufferWidth != _backBufferSize.width || bufferHeight != _backBufferSize.height;
+        final Rectangle region = new Rectangle(0, 0, bufferWidth, bufferHeight);
+        if (!full) {
+            if (_dirtyRegion == null)
+                return;
+            final int x1 = (int) Math.floor(_dirtyRegion.x * scale);
+            final int y1 = (int) Math.floor(_dirtyRegion.y * scale);
+            final int x2 = (int) Math.ceil((_dirtyRegion.x + _dirtyRegion.width) * scale);
+            final int y2 = (int) Math.ceil((_dirtyRegion.y + _dirtyRegion.height) * scale);
+            region.setBounds(region.intersection(new Rectangle(x1, y1, x2 - x1, y2 - y1)));
+        }
+        _dirtyRegion = null;
+        _fullUpdate = false;
+        _lastUpdate = System.currentTimeMillis();
+        if (region.isEmpty())
+            return;
+        if (full)
+            _generation++;
+
+        final SnapshotPainter painter = getSnapshotPainter();
+        if (painter != null) {
+            renderSnapshot(painter, view.getBackground(), region, scale, full);
+            return;
+        }
+
+        final ImageBufferPool pool = ImageBufferPool.getSharedInstance();
+        final BufferedImage target = full ? pool.acquire(bufferWidth, bufferHeight, BufferedImage.TYPE_INT_RGB) :
+                _backBuffer;
+        final Graphics2D d = target.createGraphics();
+        try {
+            prepareGraphics(d, view.getBackground(), region, scale);
+            view.paint(d);
+        } finally {
+            d.dispose();
+        }
+        if (full)
+            setBackBuffer(target, bufferWidth, bufferHeight, scale);
+        repaint();
+    }
+
+    /**
+     * Renders the given region of the thumbnail on a background thread using the given painter. Only one snapshot is
+     * rendered at a time, changes made in the meantime will be rendered afterwards.
+     *
+     * @param painter    the snapshot painter.
+     * @param background the view's background color.
+     * @param region     the region of the thumbnail to render.
+     * @param scale      the scale factor of the thumbnail.
+     * @param full       whether the entire thumbnail is rendered.
+     */
+    protected void renderSnapshot(final SnapshotPainter painter, final Color background, final Rectangle region,
+                                  final double scale, final boolean full) {
+        _snapshotPending = true;
+        final int generation = _generation;
+        LoadingScheduler.getSharedInstance().schedule(this, LoadingScheduler.Priority.PREFETCH, new Runnable() {
+            public void run() {
+                BufferedImage snapshot = null;
+                try {
+                    snapshot = ImageBufferPool.getSharedInstance().acquire(region.width, region.height,
+                            BufferedImage.TYPE_INT_RGB);
+                    final Graphics2D d = snapshot.createGraphics();
+                    try {
+                        d.translate(-region.x, -region.y);
+                        prepareGraphics(d, background, region, scale);
+                        painter.paintSnapshot(d);
+                    } finally {
+                        d.dispose();
+                    }
+                } finally {
+                    final BufferedImage result = snapshot;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            snapshotRendered(result, region, scale, full, generation);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Integrates a snapshot rendered on a background thread into the thumbnail. Invoked on the event dispatch thread.
+     *
+     * @param snapshot   the rendered snapshot, null if rendering failed.
+     * @param region     the region of the thumbnail covered by the snapshot.
+     * @param scale      the scale factor the snapshot has been rendered at.
+     * @param full       whether the snapshot covers the entire thumbnail.
+     * @param generation the generation the snapshot has been requested in.
+     */
+    protected void snapshotRendered(final BufferedImage snapshot, final Rectangle region, final double scale,
+                                    final boolean full, final int generation) {
+        _snapshotPending = false;
+        final ImageBufferPool pool = ImageBufferPool.getSharedInstance();
+        if (snapshot != null) {
+            if (generation != _generation || (!full && _backBuffer == null))
+                pool.release(snapshot);
+            else if (full)
+                setBackBuffer(snapshot, region.width, region.height, scale);
+            else {
+                final Graphics2D d = _backBuffer.createGraphics();
+                d.drawImage(snapshot, region.x, region.y, region.x + region.width, region.y + region.height, 0, 0,
+                        region.width, region.height, null);
+                d.dispose();
+                pool.release(snapshot);
+            }
+            repaint();
         }
+        if (_fullUpdate || _dirtyRegion != null)
+            scheduleUpdate();
+    }
+
+    /**
+     * Prepares the given graphics to render a region of the thumbnail: Clips to the region, fills it with the view's
+     * background and scales to view coordinates.
+     *
+     * @param d          graphics of the thumbnail.
+     * @param background the view's background color.
+     * @param region     the region to render, in thumbnail coordinates.
+     * @param scale      the scale factor of the thumbnail.
+     */
+    protected void prepareGraphics(final Graphics2D d, final Color background, final Rectangle region,
+                                   final double scale) {
+        d.clipRect(region.x, region.y, region.width, region.height);
+        d.setColor(background == null ? Color.WHITE : background);
+        d.fillRect(region.x, region.y, region.width, region.height);
+        d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        d.scale(scale, scale);
+    }
+
+    protected void setBackBuffer(final BufferedImage backBuffer, final int width, final int height,
+                                 final double scale) {
+        ImageBufferPool.getSharedInstance().release(_backBuffer);
+        _backBuffer = backBuffer;
+        _backBufferSize = new Dimension(width, height);
+        _backBufferScale = scale;
+    }
+
+    /**
+     * Overridden to hand the thumbnail buffer back to the image pool once the component is no longer displayable.
+     */
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        _updateTimer.stop();
+        _generation++;
+        ImageBufferPool.getSharedInstance().release(_backBuffer);
+        _backBuffer = null;
+        _backBufferSize = null;
     }
 
+    /**
+     * Notifies the satellite view that the contents of the view have changed. The entire thumbnail will be rendered
+     * again once the update interval has passed.
+     */
     public void contentsUpdated() {
-        _contentsUpdated = true;
-        repaint();
+        _fullUpdate = true;
+        scheduleUpdate();
+    }
+
+    /**
+     * Notifies the satellite view that the given region of the view has changed. Only the corresponding region of the
+     * thumbnail will be rendered again once the update interval has passed.
+     *
+     * @param viewRegion the changed region in view coordinates.
+     */
+    public void contentsUpdated(final Rectangle viewRegion) {
+        if (viewRegion == null)
+            throw new IllegalArgumentException("Parameter 'viewRegion' must not be null!");
+        if (_dirtyRegion == null)
+            _dirtyRegion = new Rectangle(viewRegion);
+        else
+            _dirtyRegion.add(viewRegion);
+        scheduleUpdate();
     }
 }
@@ -0,0 +1,138 @@
+package net.sarcommand.swingextensions.utilities;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+
+/**
+ * A clock driving any number of animations from a single Swing timer, so that all animations advance in the same frame
+ * and share a single repaint cycle instead of each running a timer of its own. The timer only runs while listeners are
+ * registered.
+ * <p/>
+ * Listeners are notified on the event dispatch thread and receive the time of the current frame in nanoseconds, as
+ * returned by System.nanoTime(). Animations should derive their state from this time rather than from the number of
+ * ticks received: The timer coalesces ticks while the event dispatch thread is busy, so frames will be dropped under
+ * load, while the animation still finishes on time.
+ * <p/>
+ * This class is meant to be used on the event dispatch thread only. All classes in this library use the shared
+ * instance returned by getSharedInstance().
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public class AnimationClock {
+    /**
+     * Default interval between two frames in milliseconds, roughly matching the display refresh rate.
+     */
+    public static final int DEFAULT_FRAME_INTERVAL = 16;
+
+    /**
+     * Receives the ticks of an AnimationClock.
+     */
+    public static interface Listener {
+        /**
+         * Invoked on the event dispatch thread once per frame.
+         *
+         * @param frameTime the time of the current frame in nanoseconds, as returned by System.nanoTime().
+         */
+        public void tick(final long frameTime);
+    }
+
+    private static AnimationClock __sharedInstance;
+
+    protected final Timer _timer;
+    protected final ArrayList<Listener> _listeners;
+    protected Listener[] _snapshot;
+
+    /**
+     * Returns the shared clock instance used by the library's components.
+     *
+     * @return the shared clock.
+     */
+    public static synchronized AnimationClock getSharedInstance() {
+        if (__sharedInstance == null)
+            __sharedInstance = new AnimationClock(DEFAULT_FRAME_INTERVAL);
+        return __sharedInstance;
+    }
+
+    /**
+     * Creates a new clock.
+     *
+     * @param frameInterval interval between two frames in milliseconds.
+     */
+    public AnimationClock(final int frameInterval) {
+        if (frameInterval < 1)
+            throw new IllegalArgumentException("Parameter 'frameInterval' must be positive!");
+        _listeners = new ArrayList<Listener>();
+        _snapshot = new Listener[0];
+        _timer = new Timer(frameInterval, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                fireTick();
+            }
+        });
+        _timer.setCoalesce(true);
+    }
+
+    public int getFrameInterval() {
+        return _timer.getDelay();
+    }
+
+    public void setFrameInterval(final int frameInterval) {
+        if (frameInterval < 1)
+            throw new IllegalArgumentException("Parameter 'frameInterval' must be positive!");
+        _timer.setDelay(frameInterval);
+    }
+
+    /**
+     * Registers a listener, starting the clock if necessary. Registering the same listener twice has no effect.
+     *
+     * @param listener the listener to add.
+     */
+    public void addListener(final Listener listener) {
+        if (listener == null)
+            throw new IllegalArgumentException("Parameter 'listener' must not be null!");
+        if (_listeners.contains(listener))
+            return;
+        _listeners.add(listener);
+        _snapshot = _listeners.toArray(new Listener[_listeners.size()]);
+        if (!_timer.isRunning())
+            _timer.start();
+    }
+
+    /**
+     * Removes a listener, stopping the clock if no listeners remain. Listeners may remove themselves while being
+     * notified.
+     *
+     * @param listener the listener to remove.
+     */
+    public void removeListener(final Listener listener) {
+        if (!_listeners.remove(listener))
+            return;
+        _snapshot = _listeners.toArray(new Listener[_listeners.size()]);
+        if (_listeners.isEmpty())
+            _timer.stop();
+    }
+
+    public boolean isRunning() {
+        return _timer.isRunning();
+    }
+
+    public int getListenerCount() {
+        return _listeners.size();
+    }
+
+    protected void fireTick() {
+        final long frameTime = System.nanoTime();
+        for (Listener listener : _snapshot)
+            listener.tick(frameTime);
+    }
+}
@@ -0,0 +1,476 @@
+package net.sarcommand.swingextensions.utilities;
+
+import net.sarcommand.swingextensions.internal.SwingExtLogger;
+import net.sarcommand.swingextensions.internal.SwingExtLogging;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes background loading operations, like decoding images or performing searches, on a bounded pool of worker
+ * threads. Pending requests are ordered by priority, so requests for visible content will be processed before prefetch
+ * requests scheduled earlier. Requests with the same priority are processed in the order they were scheduled.
+ * <p/>
+ * Each request may be associated with a key. Scheduling a request with a key which is already in use will supersede the
+ * previous request: If it is still queued it will be discarded, if it is already running it will be cancelled. Requests
+ * sharing the same key never run concurrently - the new request will start as soon as the cancelled one has returned.
+ * Tasks implementing the Cancellable interface will be notified when they are cancelled while running.
+ * <p/>
+ * The worker threads are daemon threads and will terminate after being idle for some time. All classes in this library
+ * use the shared instance returned by getSharedInstance().
+ * <p/>
+ * The scheduler keeps track of the queue depth and of the time requests spent waiting and running, which can be used to
+ * tune the number of workers or the amount of prefetching.
+ * <p/>
+ * <hr/> Copyright 2006-2012 Torsten Heup
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+public class LoadingScheduler {
+    private static final SwingExtLogger __log = SwingExtLogging.getLogger(LoadingScheduler.class);
+
+    /**
+     * Time in seconds after which idle worker threads will terminate.
+     */
+    public static final int WORKER_KEEP_ALIVE = 30;
+
+    /**
+     * Priority of a request. Requests with a lower ordinal are processed first.
+     */
+    public static enum Priority {
+        /**
+         * Content which is currently being displayed or waited for.
+         */
+        VISIBLE,
+        /**
+         * Content which is likely to be displayed soon.
+         */
+        PREFETCH
+    }
+
+    /**
+     * Implemented by tasks which can stop early when being cancelled while running.
+     */
+    public static interface Cancellable {
+        /**
+         * Invoked when the running task has been cancelled or superseded. This method is invoked on the thread cancelling
+         * the request and should return quickly.
+         */
+        public void cancel();
+    }
+
+    private static LoadingScheduler __sharedInstance;
+
+    /**
+     * Returns the scheduler shared by all classes of this library.
+     *
+     * @return the shared scheduler.
+     */
+    public static synchronized LoadingScheduler getSharedInstance() {
+        if (__sharedInstance == null)
+            __sharedInstance = new LoadingScheduler(Math.max(2, Math.min(4,
+                    Runtime.getRuntime().availableProcessors())), "LoadingScheduler");
+        return __sharedInstance;
+    }
+
+    protected final ThreadPoolExecutor _executor;
+    protected final Map<Object, KeyState> _keyStates;
+    protected final AtomicLong _sequence;
+
+    protected final AtomicLong _completedCount;
+    protected final AtomicLong _cancelledCount;
+    protected final AtomicLong _totalRunTime;
+    protected final AtomicLong _maximumRunTime;
+    protected final AtomicLong _totalWaitTime;
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param workerCount maximum number of requests which will be processed concurrently.
+     * @param threadName  name prefix for the worker threads.
+     */
+    public LoadingScheduler(final int workerCount, final String threadName) {
+        if (workerCount < 1)
+            throw new IllegalArgumentException("Parameter 'workerCount' must be positive!");
+        if (threadName == null)
+            throw new IllegalArgumentException("Parameter 'threadName' must not be null!");
+
+        _keyStates = new HashMap<Object, KeyState>();
+        _sequence = new AtomicLong();
+        _completedCount = new AtomicLong();
+        _cancelledCount = new AtomicLong();
+        _totalRunTime = new AtomicLong();
+        _maximumRunTime = new AtomicLong();
+        _totalWaitTime = new AtomicLong();
+
+        _executor = new ThreadPoolExecutor(workerCount, workerCount, WORKER_KEEP_ALIVE, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger _threadCount = new AtomicInteger();
+
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, threadName + "-" + _threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.NORM_PRIORITY);
+                        return thread;
+                    }
+                });
+        _executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedules the given task for execution on one of the worker threads.
+     *
+     * @param key      key identifying the request, may be null. A request with the same key scheduled earlier will be
+     *                 cancelled.
+     * @param priority priority of the request.
+     * @param task     the task to execute.
+     * @return a handle for the scheduled request.
+     */
+    public Request schedule(final Object key, final Priority priority, final Runnable task) {
+        if (priority == null)
+            throw new IllegalArgumentException("Parameter 'priority' must not be null!");
+        if (task == null)
+            throw new IllegalArgumentException("Parameter 'task' must not be null!");
+
+        final Request request = new Request(key, priority, task, _sequence.getAndIncrement());
+        if (key == null) {
+            _executor.execute(request);
+            return request;
+        }
+
+        synchronized (this) {
+            KeyState state = _keyStates.get(key);
+            if (state == null) {
+                state = new KeyState();
+                _keyStates.put(key, state);
+            }
+
+            if (state._pending != null) {
+                state._pending.markCancelled();
+                state._pending = null;
+            }
+
+            if (state._active == null) {
+                state._active = request;
+                _executor.execute(request);
+            } else {
+                state._active.cancelInternal();
+                if (_executor.remove(state._active)) {
+                    state._active._done = true;
+                    state._active = request;
+                    _executor.execute(request);
+                } else
+                    state._pending = request;
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Cancels the request currently associated with the given key, if there is one.
+     *
+     * @param key the request key.
+     * @return true if a request was cancelled.
+     */
+    public boolean cancel(final Object key) {
+        if (key == null)
+            throw new IllegalArgumentException("Parameter 'key' must not be null!");
+
+        final Request request;
+        synchronized (this) {
+            final KeyState state = _keyStates.get(key);
+            if (state == null)
+                return false;
+            request = state._pending != null ? state._pending : state._active;
+        }
+        return request != null && request.cancel();
+    }
+
+    /**
+     * Changes the priority of the queued request associated with the given key. Has no effect if the request is already
+     * running.
+     *
+     * @param key      the request key.
+     * @param priority the new priority.
+     */
+    public void setPriority(final Object key, final Priority priority) {
+        if (key == null)
+            throw new IllegalArgumentException("Parameter 'key' must not be null!");
+        if (priority == null)
+            throw new IllegalArgumentException("Parameter 'priority' must not be null!");
+
+        synchronized (this) {
+            final KeyState state = _keyStates.get(key);
+            if (state == null)
+                return;
+            if (state._pending != null)
+                state._pending._priority = priority;
+            else if (state._active != null && state._active._priority != priority &&
+                    _executor.remove(state._active)) {
+                state._active._priority = priority;
+                _executor.execute(state._active);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting for a worker thread.
+     *
+     * @return the current queue depth.
+     */
+    public int getQueueDepth() {
+        return _executor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of requests currently being processed.
+     *
+     * @return the number of active workers.
+     */
+    public int getActiveCount() {
+        return _executor.getActiveCount();
+    }
+
+    /**
+     * Returns the number of requests which have been completed since the statistics were last reset.
+     *
+     * @return the number of completed requests.
+     */
+    public long getCompletedCount() {
+        return _completedCount.get();
+    }
+
+    /**
+     * Returns the number of requests which have been cancelled or superseded since the statistics were last reset.
+     *
+     * @return the number of cancelled requests.
+     */
+    public long getCancelledCount() {
+        return _cancelledCount.get();
+    }
+
+    /**
+     * Returns the average time a completed request spent running, e.g. the average decode time for images.
+     *
+     * @param unit the time unit of the result.
+     * @return the average run time.
+     */
+    public long getAverageRunTime(final TimeUnit unit) {
+        final long count = _completedCount.get();
+        return count == 0 ? 0 : unit.convert(_totalRunTime.get() / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the longest time a completed request spent running.
+     *
+     * @param unit the time unit of the result.
+     * @return the maximum run time.
+     */
+    public long getMaximumRunTime(final TimeUnit unit) {
+        return unit.convert(_maximumRunTime.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the average time a completed request spent waiting in the queue before being processed.
+     *
+     * @param unit the time unit of the result.
+     * @return the average wait time.
+     */
+    public long getAverageWaitTime(final TimeUnit unit) {
+        final long count = _completedCount.get();
+        return count == 0 ? 0 : unit.convert(_totalWaitTime.get() / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Resets all request statistics.
+     */
+    public void resetStatistics() {
+        _completedCount.set(0);
+        _cancelledCount.set(0);
+        _totalRunTime.set(0);
+        _maximumRunTime.set(0);
+        _totalWaitTime.set(0);
+    }
+
+    /**
+     * Invoked when a request has left the queue, either because it has been processed or because it has been cancelled
+     * before it could start. Starts the pending request for the same key, if there is one.
+     *
+     * @param request the finished request.
+     */
+    protected synchronized void requestFinished(final Request request) {
+        if (request._key == null)
+            return;
+        final KeyState state = _keyStates.get(request._key);
+        if (state == null || state._active != request)
+            return;
+
+        state._active = state._pending;
+        state._pending = null;
+        if (state._active != null)
+            _executor.execute(state._active);
+        else
+            _keyStates.remove(request._key);
+    }
+
+    protected void recordCompletion(final long waitTime, final long runTime) {
+        _completedCount.incrementAndGet();
+        _totalWaitTime.addAndGet(waitTime);
+        _totalRunTime.addAndGet(runTime);
+        long maximum;
+        while (runTime > (maximum = _maximumRunTime.get()))
+            if (_maximumRunTime.compareAndSet(maximum, runTime))
+                break;
+    }
+
+    /**
+     * Requests associated with a single key. At most one request per key is queued or running at any time, a request
+     * scheduled while another one is still running is held back until the running one has returned.
+     */
+    protected static class KeyState {
+        protected Request _active;
+        protected Request _pending;
+    }
+
+    /**
+     * A request scheduled for execution.
+     */
+    public class Request implements Runnable, Comparable<Request> {
+        protected final Object _key;
+        protected final Runnable _task;
+        protected final long _sequence;
+        protected final long _scheduleTime;
+        protected volatile Priority _priority;
+        protected volatile boolean _cancelled;
+        protected volatile boolean _started;
+        protected volatile boolean _done;
+
+        protected Request(final Object key, final Priority priority, final Runnable task, final long sequence) {
+            _key = key;
+            _priority = priority;
+            _task = task;
+            _sequence = sequence;
+            _scheduleTime = System.nanoTime();
+        }
+
+        public void run() {
+            synchronized (LoadingScheduler.this) {
+                if (_cancelled) {
+                    _done = true;
+                    requestFinished(this);
+                    return;
+                }
+                _started = true;
+            }
+
+            final long startTime = System.nanoTime();
+            try {
+                _task.run();
+            } catch (RuntimeException e) {
+                __log.error("Background task " + _task + " failed", e);
+            } finally {
+                final long endTime = System.nanoTime();
+                if (_cancelled)
+                    _cancelledCount.incrementAndGet();
+                else
+                    recordCompletion(startTime - _scheduleTime, endTime - startTime);
+                _done = true;
+                requestFinished(this);
+            }
+        }
+
+        /**
+         * Cancels this request. If it is still queued, it will be discarded. If it is running and the task implements
+         * Cancellable, the task will be notified.
+         *
+         * @return false if the request had already finished or been cancelled.
+         */
+        public boolean cancel() {
+            synchronized (LoadingScheduler.this) {
+                if (_done || _cancelled)
+                    return false;
+
+                if (_key != null) {
+                    final KeyState state = _keyStates.get(_key);
+                    if (state != null && state._pending == this) {
+                        state._pending = null;
+                        markCancelled();
+                        return true;
+                    }
+                }
+
+                cancelInternal();
+                if (_executor.remove(this)) {
+                    _done = true;
+                    requestFinished(this);
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Marks a request which has never been submitted to the executor as cancelled.
+         */
+        protected void markCancelled() {
+            _cancelled = true;
+            _done = true;
+            _cancelledCount.incrementAndGet();
+        }
+
+        protected void cancelInternal() {
+            if (_cancelled)
+                return;
+            _cancelled = true;
+            if (!_started)
+                _cancelledCount.incrementAndGet();
+            else if (_task instanceof Cancellable)
+                ((Cancellable) _task).cancel();
+        }
+
+        public Object getKey() {
+            return _key;
+        }
+
+        public Priority getPriority() {
+            return _priority;
+        }
+
+        /**
+         * Returns whether this request has been cancelled or superseded by a newer request with the same key.
+         *
+         * @return whether this request has been cancelled.
+         */
+        public boolean isCancelled() {
+            return _cancelled;
+        }
+
+        /**
+         * Returns whether this request has finished, either because it completed or because it was cancelled.
+         *
+         * @return whether this request has finished.
+         */
+        public boolean isDone() {
+            return _done;
+        }
+
+        public int compareTo(final Request o) {
+            final int result = _priority.compareTo(o._priority);
+            if (result != 0)
+                return result;
+            return _sequence < o._sequence ? -1 : (_sequence == o._sequence ? 0 : 1);
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package net.sarcommand.swingextensions.utilities;
 
 import javax.swing.*;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.Semaphore;
 
 /**
  * The SearchTask class can be used to implement an incremental search function, realized using a background thread. It
@@ -14,6 +12,10 @@ import java.util.concurrent.Semaphore;
  * This implementation is reuseable. If you cancel() a search, you can start a new one using the search(T) function at
  * any time.
  * <p/>
+ * Searches are performed on the worker threads of a LoadingScheduler, by default the shared instance, using the task
+ * itself as the request key. Searches of the same task never run concurrently, a new search will start as soon as the
+ * cancelled one has returned. Implementations of performSearch(T) should check isCancelled() regularly to return early.
+ * <p/>
  * <hr/> Copyright 2006-2012 Torsten Heup
  * <p/>
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
@@ -26,89 +28,77 @@ import java.util.concurrent.Semaphore;
  * specific language governing permissions and limitations under the License.
  */
 public abstract class SearchTask<T, V> implements Runnable {
-    protected Semaphore _semaphore;
-    protected Thread _thread;
-    protected volatile boolean _cancelled;
-    protected LinkedBlockingQueue<T> _queue;
-
-    protected volatile boolean _running;
+    protected final LoadingScheduler _scheduler;
+    protected final ThreadLocal<SearchRequest> _workerRequest;
+    protected volatile SearchRequest _currentRequest;
 
     public SearchTask() {
-        _semaphore = new Semaphore(1);
-        _queue = new LinkedBlockingQueue<T>(1);
+        this(LoadingScheduler.getSharedInstance());
+    }
+
+    /**
+     * Creates a new task performing its searches on the given scheduler.
+     *
+     * @param scheduler the scheduler to use.
+     */
+    public SearchTask(final LoadingScheduler scheduler) {
+        if (scheduler == null)
+            throw new IllegalArgumentException("Parameter 'scheduler' must not be null!");
+        _scheduler = scheduler;
+        _workerRequest = new ThreadLocal<SearchRequest>();
     }
 
     /**
      * Searches for the given token. When this method is invoked, it will interrupt the currently running search (if
-     * applicable) and invoke a new one, reusing the same background thread.
+     * applicable) and invoke a new one.
      *
      * @param searchToken object being searched for.
      */
     public void search(final T searchToken) {
-        if (_thread == null || _thread.isInterrupted()) {
-            _thread = new Thread(this);
-            _thread.setName("SearchThread");
-            _thread.setPriority(Thread.NORM_PRIORITY);
-            _thread.start();
-        }
-
-        _cancelled = true;
-        _semaphore.acquireUninterruptibly();
-        _cancelled = false;
-        try {
-            _queue.put(searchToken);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        final SearchRequest previous = _currentRequest;
+        final SearchRequest request = new SearchRequest(searchToken);
+        _currentRequest = request;
+        if (previous != null)
+            previous._cancelled = true;
+        _scheduler.schedule(this, LoadingScheduler.Priority.VISIBLE, request);
     }
 
     /**
-     * Do not invoke manually.
+     * Cancels the currently running search, if there is one. The result of the cancelled search will not be delivered
+     * to done(V).
      */
-    public void run() {
-        try {
-            while (true) {
-                final T searchToken;
-                searchToken = _queue.take();
-                _running = true;
-                final V result = performSearch(searchToken);
-                if (!isCancelled()) {
-                    SwingUtilities.invokeLater(new Runnable() {
-                        public void run() {
-                            done(result);
-                        }
-                    });
-                }
-                _running = false;
-                _semaphore.release();
-            }
-        } catch (final Exception e) {
-            SwingUtilities.invokeLater(new Runnable() {
-                public void run() {
-                    throw new RuntimeException(e);
-                }
-            });
+    public void cancel() {
+        final SearchRequest request = _currentRequest;
+        if (request != null) {
+            request._cancelled = true;
+            _scheduler.cancel(this);
         }
     }
 
     /**
-     * Cancels the currently running search, if there is one. This method will block until the search has ended.
+     * Performs the most recent search on the calling thread, unless it has already been started or cancelled. Searches
+     * are executed by the LoadingScheduler, so there is no need to invoke this method.
+     *
+     * @deprecated use search(T), which schedules the search itself.
      */
-    public void cancel() {
-        if (_running) {
-            _cancelled = true;
-            _semaphore.acquireUninterruptibly();
-            _semaphore.release();
-        }
+    @Deprecated
+    public void run() {
+        final SearchRequest request = _currentRequest;
+        if (request != null)
+            request.run();
     }
 
     /**
-     * Returns whether the search has been cancelled.
+     * Returns whether the search has been cancelled. When invoked from within performSearch(T), this method refers to
+     * the search being performed, otherwise to the most recent one.
      *
      * @return whether the search has been cancelled.
      */
     public boolean isCancelled() {
-        return _cancelled;
+        SearchRequest request = _workerRequest.get();
+        if (request == null)
+            request = _currentRequest;
+        return request != null && request._cancelled;
     }
 
     /**
@@ -126,4 +116,42 @@ public abstract class SearchTask<T, V> implements Runnable {
      * @return The search result.
      */
     protected abstract V performSearch(final T searchToken);
+
+    /**
+     * A single search, executed by the scheduler.
+     */
+    protected class SearchRequest implements Runnable {
+        protected final T _searchToken;
+        protected volatile boolean _cancelled;
+        protected boolean _started;
+
+        public SearchRequest(final T searchToken) {
+            _searchToken = searchToken;
+        }
+
+        public void run() {
+            synchronized (this) {
+                if (_cancelled || _started)
+                    return;
+                _started = true;
+            }
+
+            final V result;
+            _workerRequest.set(this);
+            try {
+                result = performSearch(_searchToken);
+            } finally {
+                _workerRequest.remove();
+            }
+
+            if (!_cancelled) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (_currentRequest == SearchRequest.this && !_cancelled)
+                            done(result);
+                    }
+                });
+            }
+        }
+    }
 }
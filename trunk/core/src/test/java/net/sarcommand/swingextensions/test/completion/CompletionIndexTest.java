@@ -0,0 +1,83 @@
+package net.sarcommand.swingextensions.test.completion;
+
+import junit.framework.TestCase;
+import net.sarcommand.swingextensions.completion.CompletionIndex;
+import net.sarcommand.swingextensions.completion.SimpleCompletionModel;
+
+import java.util.*;
+
+/**
+ * Test class for the CompletionIndex.
+ */
+public class CompletionIndexTest extends TestCase {
+    /**
+     * Lookups should return the same matches as a linear scan over a sorted set, in the same order.
+     */
+    public void testCaseSensitiveLookupMatchesLinearScan() {
+        final List<String> tokens = createRandomTokens(20000, 42);
+        final CompletionIndex index = CompletionIndex.build(tokens, true);
+        final TreeSet<String> sorted = new TreeSet<String>(tokens);
+        assertEquals(sorted.size(), index.size());
+
+        for (String prefix : new String[]{"", "a", "ab", "Ab", "abc", "zz", "q"}) {
+            final List<String> expected = new ArrayList<String>();
+            for (String token : sorted)
+                if (token.startsWith(prefix))
+                    expected.add(token);
+            assertEquals(expected.size(), index.getCompletionCount(prefix));
+            assertEquals(expected, index.getCompletions(prefix, Integer.MAX_VALUE));
+            assertEquals(expected.subList(0, Math.min(10, expected.size())), index.getCompletions(prefix, 10));
+        }
+    }
+
+    /**
+     * Case insensitive lookups should ignore case and accents.
+     */
+    public void testCaseInsensitiveLookup() {
+        final CompletionIndex index = CompletionIndex.build(Arrays.asList("Apple", "apricot", "Äpfel", "banana",
+                "APPLE"), false);
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList("Äpfel", "APPLE"), index.getCompletions("ap", 10).subList(0, 2));
+        assertEquals(3, index.getCompletionCount("AP"));
+        assertEquals(1, index.getCompletionCount("äpf"));
+        assertEquals(0, index.getCompletionCount("c"));
+    }
+
+    /**
+     * Adding and removing tokens should give the same result as building a new index.
+     */
+    public void testMerge() {
+        final List<String> tokens = createRandomTokens(5000, 1);
+        final List<String> added = createRandomTokens(500, 2);
+        final List<String> removed = tokens.subList(0, 1000);
+
+        final CompletionIndex index = CompletionIndex.build(tokens, true).withTokens(added).withoutTokens(removed);
+        final TreeSet<String> expected = new TreeSet<String>(tokens);
+        expected.addAll(added);
+        expected.removeAll(removed);
+        assertEquals(new ArrayList<String>(expected), index.getTokens());
+    }
+
+    /**
+     * The model should limit the number of completions returned.
+     */
+    public void testModelLimitsCompletions() {
+        final SimpleCompletionModel model = new SimpleCompletionModel(false, createRandomTokens(20000, 3));
+        model.setMaximumCompletions(5);
+        assertEquals(5, model.getPossibleCompletions(null, "A").size());
+        for (String completion : model.getPossibleCompletions(null, "A"))
+            assertTrue(completion.toLowerCase(Locale.ROOT).startsWith("a"));
+    }
+
+    protected List<String> createRandomTokens(final int count, final long seed) {
+        final Random random = new Random(seed);
+        final List<String> tokens = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            final char[] chars = new char[1 + random.nextInt(8)];
+            for (int j = 0; j < chars.length; j++)
+                chars[j] = (char) ((random.nextBoolean() ? 'a' : 'A') + random.nextInt(26));
+            tokens.add(new String(chars));
+        }
+        return tokens;
+    }
+}
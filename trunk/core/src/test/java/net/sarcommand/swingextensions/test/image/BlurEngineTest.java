@@ -0,0 +1,87 @@
+package net.sarcommand.swingextensions.test.image;
+
+import junit.framework.TestCase;
+import net.sarcommand.swingextensions.image.BlurEngine;
+import net.sarcommand.swingextensions.image.ImageUtilities;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.util.Random;
+
+/**
+ * Test class for the BlurEngine.
+ */
+public class BlurEngineTest extends TestCase {
+    /**
+     * The exact blur should match two ConvolveOp passes on an opaque image, apart from rounding.
+     */
+    public void testExactBlurMatchesConvolveOp() {
+        final int width = 300;
+        final int height = 250;
+        final int radius = 5;
+        final BufferedImage image = createRandomImage(width, height);
+
+        final float[] kernel = BlurEngine.createGaussianKernel(radius, 1f);
+        final BufferedImage horizontal = new ConvolveOp(new Kernel(kernel.length, 1, kernel), ConvolveOp.EDGE_NO_OP,
+                null).filter(image, null);
+        final BufferedImage expected = new ConvolveOp(new Kernel(1, kernel.length, kernel), ConvolveOp.EDGE_NO_OP,
+                null).filter(horizontal, null);
+
+        ImageUtilities.applyGaussianBlur(image, radius, 1f, true, ImageUtilities.BlurMode.EXACT);
+        assertTrue("Blurred image differs from ConvolveOp result", maximumDifference(expected, image, 0) <= 2);
+    }
+
+    /**
+     * The box approximation should stay close to the exact blur, including the alpha factor applied by both passes.
+     */
+    public void testBoxApproximationIsCloseToExactBlur() {
+        final int width = 300;
+        final int height = 250;
+        final int radius = 24;
+        for (float alphaFactor : new float[]{1f, 0.5f}) {
+            final BufferedImage exact = createRandomImage(width, height);
+            final BufferedImage approximated = createRandomImage(width, height);
+
+            ImageUtilities.applyGaussianBlur(exact, radius, alphaFactor, true, ImageUtilities.BlurMode.EXACT);
+            ImageUtilities.applyGaussianBlur(approximated, radius, alphaFactor, true,
+                    ImageUtilities.BlurMode.BOX_APPROXIMATION);
+            assertTrue("Box approximation deviates too much for alpha factor " + alphaFactor,
+                    maximumDifference(exact, approximated, radius) <= 8);
+        }
+    }
+
+    /**
+     * A padded blur should enlarge the image and leave the outer border transparent.
+     */
+    public void testPaddedBlur() {
+        final BufferedImage image = createRandomImage(40, 30);
+        final BufferedImage blurred = ImageUtilities.applyGaussianBlur(image, 3, 1f, false);
+        assertEquals(52, blurred.getWidth());
+        assertEquals(42, blurred.getHeight());
+        assertEquals(0, blurred.getRGB(0, 0));
+        assertTrue("Center should be opaque", blurred.getRGB(26, 21) >>> 24 > 250);
+    }
+
+    protected BufferedImage createRandomImage(final int width, final int height) {
+        final Random random = new Random(width * 31 + height);
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                image.setRGB(x, y, 0xFF000000 | random.nextInt(0x1000000));
+        return image;
+    }
+
+    protected int maximumDifference(final BufferedImage a, final BufferedImage b, final int border) {
+        int max = 0;
+        for (int y = border; y < a.getHeight() - border; y++) {
+            for (int x = border; x < a.getWidth() - border; x++) {
+                final int p = a.getRGB(x, y);
+                final int q = b.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8)
+                    max = Math.max(max, Math.abs(((p >> shift) & 0xFF) - ((q >> shift) & 0xFF)));
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,78 @@
+package net.sarcommand.swingextensions.test.progress;
+
+import junit.framework.TestCase;
+import net.sarcommand.swingextensions.progress.ProgressNode;
+
+/**
+ * Test class for the ProgressNode.
+ */
+public class ProgressNodeTest extends TestCase {
+    /**
+     * Children should contribute to their parent's progress according to their relative weights.
+     */
+    public void testWeightedCompletion() {
+        final ProgressNode root = new ProgressNode("root");
+        final ProgressNode light = root.createChild("light", 1);
+        final ProgressNode heavy = root.createChild("heavy", 3);
+        heavy.setTotalWork(10);
+
+        light.complete();
+        assertEquals(0.25f, root.getCompletionPercentage(), 1e-6f);
+        heavy.worked(5);
+        assertEquals(0.625f, root.getCompletionPercentage(), 1e-6f);
+        heavy.worked(5);
+        assertEquals(1f, root.getCompletionPercentage(), 0f);
+        assertTrue(root.isComplete());
+    }
+
+    /**
+     * Weights summing up far beyond the fixed point range of a long must not overflow the contributions.
+     */
+    public void testLargeWeights() {
+        final ProgressNode root = new ProgressNode("root");
+        final ProgressNode[] children = new ProgressNode[100];
+        for (int i = 0; i < children.length; i++)
+            children[i] = root.createChild(null, ProgressNode.MAXIMUM_WEIGHT);
+
+        for (int i = 0; i < children.length / 2; i++)
+            children[i].complete();
+        assertEquals(0.5f, root.getCompletionPercentage(), 1e-6f);
+
+        for (int i = children.length / 2; i < children.length; i++)
+            children[i].setCompletionPercentage(1);
+        assertEquals(1f, root.getCompletionPercentage(), 0f);
+        assertTrue(root.isComplete());
+    }
+
+    /**
+     * Repeated small updates should not leave a completed hierarchy short of completion.
+     */
+    public void testManyUpdates() {
+        final ProgressNode root = new ProgressNode("root");
+        final ProgressNode child = root.createChild("child", 7.3);
+        final ProgressNode grandChild = child.createChild("grandChild", 0.1);
+        root.createChild("other", 2.9).complete();
+        grandChild.setTotalWork(100000);
+        for (int i = 0; i < 100000; i++)
+            grandChild.worked(1);
+        assertEquals(1f, root.getCompletionPercentage(), 0f);
+        assertTrue(root.isComplete());
+    }
+
+    /**
+     * Weights which are not positive or exceed MAXIMUM_WEIGHT should be rejected.
+     */
+    public void testInvalidWeights() {
+        final ProgressNode root = new ProgressNode("root");
+        for (double weight : new double[]{0, -1, Double.NaN, Double.POSITIVE_INFINITY,
+                ProgressNode.MAXIMUM_WEIGHT * 2}) {
+            try {
+                root.createChild(null, weight);
+                fail("Accepted weight " + weight);
+            } catch (IllegalArgumentException e) {
+                /* expected */
+            }
+        }
+        assertTrue(root.getChildren().isEmpty());
+    }
+}